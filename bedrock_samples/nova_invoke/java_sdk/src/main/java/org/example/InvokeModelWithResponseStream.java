@@ -6,34 +6,44 @@ package org.example;
 // Use the native inference API to send a text message to Amazon Nova
 // and print the response stream.
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
-import static software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler.Visitor;
-
 public class InvokeModelWithResponseStream {
+    private static final Logger logger = LoggerFactory.getLogger(InvokeModelWithResponseStream.class);
 
-    public static String invokeModelWithResponseStream() {
-        // Create a Bedrock Runtime client in the AWS Region you want to use.
-        BedrockRuntimeAsyncClient client = null;
-        
-        try {
-            client = BedrockRuntimeAsyncClient.builder()
-                    .credentialsProvider(DefaultCredentialsProvider.create())
-                    .region(Region.US_EAST_1)
-                    .build();
+    // One streaming service for the whole JVM; building a client per call would pay for
+    // event loop startup, DNS and TLS on every request.
+    private static final class ServiceHolder {
+        private static final HdrMetricsSink METRICS = new HdrMetricsSink(true);
+        private static final NovaStreamingService SERVICE = NovaStreamingService.builder()
+                .metricsSink(METRICS)
+                .admissionController(AdmissionController.builder().build())
+                .build();
+        // Tokens are printed from the event loop; the sink queues them and writes on its own thread.
+        private static final AsyncOutputSink OUTPUT = AsyncOutputSink.toConsole(65_536);
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                SERVICE.close();
+                OUTPUT.close();
+            }, "nova-streaming-shutdown"));
+        }
+    }
+
+    public static NovaStreamingService streamingService() {
+        return ServiceHolder.SERVICE;
+    }
 
-            // Set the model ID for Nova
-            String modelId = "us.amazon.nova-lite-v1:0";
+    public static OutputSink output() {
+        return ServiceHolder.OUTPUT;
+    }
 
+    public static String invokeModelWithResponseStream() {
+        try {
             // The InvokeModelWithResponseStream API uses the model's native payload.
             // Nova uses the messages format with a specific schema version
             var nativeRequest = """
@@ -57,115 +67,81 @@ public class InvokeModelWithResponseStream {
                         ]
                     }""";
 
-            // Create a request with the model ID and the model's native request payload.
-            var request = InvokeModelWithResponseStreamRequest.builder()
-                    .body(SdkBytes.fromUtf8String(nativeRequest))
-                    .modelId(modelId)
-                    .build();
-
             // Prepare a buffer to accumulate the generated response text.
             var completeResponseTextBuffer = new StringBuilder();
 
-            // Prepare a handler to extract, accumulate, and print the response text in real-time.
-            var responseStreamHandler = InvokeModelWithResponseStreamResponseHandler.builder()
-                    .subscriber(Visitor.builder().onChunk(chunk -> {
-                        try {
-                            // Get the raw response for parsing
-                            String rawResponse = chunk.bytes().asUtf8String();
-                            // System.out.println("Raw response chunk: " + rawResponse);
-                            
-                            var response = new JSONObject(rawResponse);
-                            
-                            // Parse contentBlockDelta format
-                            if (response.has("contentBlockDelta")) {
-                                JSONObject contentBlockDelta = response.getJSONObject("contentBlockDelta");
-                                if (contentBlockDelta.has("delta") && contentBlockDelta.getJSONObject("delta").has("text")) {
-                                    String text = contentBlockDelta.getJSONObject("delta").getString("text");
-                                    System.out.print(text);  // Print in real-time
-                                    completeResponseTextBuffer.append(text);
-                                }
-                            }
-                            // Parse metadata information
-                            else if (response.has("metadata")) {
-                                System.out.println("\n\n=== METADATA INFORMATION ===");
-                                
-                                // Parse usage information
-                                if (response.getJSONObject("metadata").has("usage")) {
-                                    JSONObject usage = response.getJSONObject("metadata").getJSONObject("usage");
-                                    System.out.println("Usage Information:");
-                                    System.out.println("- Input Tokens: " + usage.getInt("inputTokens"));
-                                    System.out.println("- Output Tokens: " + usage.getInt("outputTokens"));
-                                    System.out.println("- Cache Read Input Tokens: " + usage.getInt("cacheReadInputTokenCount"));
-                                    System.out.println("- Cache Write Input Tokens: " + usage.getInt("cacheWriteInputTokenCount"));
-                                }
-                                
-                                // Parse invocation metrics if available
-                                if (response.has("amazon-bedrock-invocationMetrics")) {
-                                    JSONObject metrics = response.getJSONObject("amazon-bedrock-invocationMetrics");
-                                    System.out.println("\nInvocation Metrics:");
-                                    System.out.println("- Input Token Count: " + metrics.getInt("inputTokenCount"));
-                                    System.out.println("- Output Token Count: " + metrics.getInt("outputTokenCount"));
-                                    System.out.println("- Invocation Latency: " + metrics.getInt("invocationLatency") + "ms");
-                                    System.out.println("- First Byte Latency: " + metrics.getInt("firstByteLatency") + "ms");
-                                    System.out.println("- Cache Read Input Token Count: " + metrics.getInt("cacheReadInputTokenCount"));
-                                    System.out.println("- Cache Write Input Token Count: " + metrics.getInt("cacheWriteInputTokenCount"));
-                                }
-                                
-                                // Parse any additional metrics if present
-                                if (response.getJSONObject("metadata").has("metrics") && 
-                                    !response.getJSONObject("metadata").getJSONObject("metrics").isEmpty()) {
-                                    System.out.println("\nAdditional Metrics:");
-                                    JSONObject additionalMetrics = response.getJSONObject("metadata").getJSONObject("metrics");
-                                    for (String key : additionalMetrics.keySet()) {
-                                        System.out.println("- " + key + ": " + additionalMetrics.get(key));
-                                    }
-                                }
-                                
-                                // Parse trace information if present
-                                if (response.getJSONObject("metadata").has("trace") && 
-                                    !response.getJSONObject("metadata").getJSONObject("trace").isEmpty()) {
-                                    System.out.println("\nTrace Information:");
-                                    JSONObject trace = response.getJSONObject("metadata").getJSONObject("trace");
-                                    for (String key : trace.keySet()) {
-                                        System.out.println("- " + key + ": " + trace.get(key));
-                                    }
-                                }
-                                
-                                System.out.println("===========================");
-                            }
-                            // You can add additional parsing for messageStart, messageStop, etc. if needed
-                            
-                        } catch (Exception e) {
-                            System.err.println("Error processing response chunk: " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                    }).build()).build();
-
-            // Send the request and wait for the handler to process the response.
-            client.invokeModelWithResponseStream(request, responseStreamHandler).get();
-            
-            System.out.println("\n--- Complete response received ---");
+            // Extract, accumulate, and print the response text in real-time.
+            var output = output();
+            streamingService().invoke(nativeRequest, new NovaChunkDecoder.Listener() {
+                @Override
+                public void onText(String text) {
+                    output.write(text);  // Print in real-time
+                    completeResponseTextBuffer.append(text);
+                }
+
+                // Parse metadata information
+                @Override
+                public void onUsage(NovaChunkDecoder.Usage usage) {
+                    output.write("\n");
+                    output.event("usage",
+                            "inputTokens", usage.inputTokens(),
+                            "outputTokens", usage.outputTokens(),
+                            "cacheReadInputTokens", usage.cacheReadInputTokenCount(),
+                            "cacheWriteInputTokens", usage.cacheWriteInputTokenCount());
+                }
+
+                // Parse any additional metrics and trace information if present
+                @Override
+                public void onMetadataEntry(String section, String key, String value) {
+                    output.event(section, "key", key, "value", value);
+                }
+
+                // Parse invocation metrics if available
+                @Override
+                public void onInvocationMetrics(NovaChunkDecoder.InvocationMetrics metrics) {
+                    output.event("invocationMetrics",
+                            "inputTokenCount", metrics.inputTokenCount(),
+                            "outputTokenCount", metrics.outputTokenCount(),
+                            "invocationLatencyMillis", metrics.invocationLatency(),
+                            "firstByteLatencyMillis", metrics.firstByteLatency(),
+                            "cacheReadInputTokenCount", metrics.cacheReadInputTokenCount(),
+                            "cacheWriteInputTokenCount", metrics.cacheWriteInputTokenCount());
+                }
+            }).get();
+
+            output.write("--- Complete response received ---\n");
             
             // Return the complete response text.
             return completeResponseTextBuffer.toString();
 
         } catch (ExecutionException | InterruptedException e) {
-            System.err.println("Can't invoke model: " + e.getCause().getMessage());
+            logger.error("Can't invoke model: {}", e.getCause() != null ? e.getCause().getMessage() : e.toString());
             throw new RuntimeException(e);
-        } finally {
-            if (client != null) {
-                client.close();
-            }
         }
     }
 
     public static void main(String[] args) {
+        var output = output();
         try {
             String result = invokeModelWithResponseStream();
-            System.out.println("\nFinal result: " + result);
+            output.write("\nFinal result: " + result + "\n");
+
+            // Several prompts can share the same service and stream concurrently.
+            var prompts = List.of("Name one use of a linked list.", "Name one use of a hash map.");
+            var futures = prompts.stream()
+                    .map(prompt -> streamingService().stream(prompt, delta -> { }))
+                    .toList();
+            for (int i = 0; i < prompts.size(); i++) {
+                output.write(prompts.get(i) + " -> " + futures.get(i).join() + "\n");
+            }
+
+            // Client-observed latencies next to the ones Bedrock reported.
+            ServiceHolder.METRICS.snapshot()
+                    .forEach((modelId, stats) -> output.write("\nLatency for " + modelId + ": " + stats + "\n"));
         } catch (Exception e) {
-            System.err.println("Error in main: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error in main", e);
+        } finally {
+            output.flush();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package org.example;
+
+// Decodes Amazon Nova stream chunks in a single pass over the chunk bytes, without copying
+// them into a String or building a JSON tree. Only the delta text itself is materialized.
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public final class NovaChunkDecoder {
+
+    // Thread-safe once configured; it also keeps the canonicalized field name table.
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private NovaChunkDecoder() {
+    }
+
+    /**
+     * Receives the parts of a chunk that callers usually need. All methods are optional.
+     */
+    public interface Listener {
+        default void onText(String text) {
+        }
+
+        default void onMessageStop(String stopReason) {
+        }
+
+        default void onUsage(Usage usage) {
+        }
+
+        default void onInvocationMetrics(InvocationMetrics metrics) {
+        }
+
+        /**
+         * Scalar entries of {@code metadata.metrics} and {@code metadata.trace}.
+         */
+        default void onMetadataEntry(String section, String key, String value) {
+        }
+    }
+
+    public record Usage(int inputTokens, int outputTokens, int cacheReadInputTokenCount,
+                        int cacheWriteInputTokenCount) {
+    }
+
+    public record InvocationMetrics(int inputTokenCount, int outputTokenCount, long invocationLatency,
+                                    long firstByteLatency, int cacheReadInputTokenCount,
+                                    int cacheWriteInputTokenCount) {
+    }
+
+    /**
+     * @return the delta text of a {@code contentBlockDelta} chunk, or {@code null} for other chunks
+     */
+    public static String deltaText(SdkBytes chunk) {
+        var text = new String[1];
+        decode(chunk, new Listener() {
+            @Override
+            public void onText(String delta) {
+                text[0] = delta;
+            }
+        });
+        return text[0];
+    }
+
+    public static void decode(SdkBytes chunk, Listener listener) {
+        var bytes = chunk.asByteArrayUnsafe();
+        decode(bytes, 0, bytes.length, listener);
+    }
+
+    public static void decode(byte[] bytes, int offset, int length, Listener listener) {
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "contentBlockDelta" -> decodeContentBlockDelta(parser, listener);
+                    case "messageStop" -> decodeMessageStop(parser, listener);
+                    case "metadata" -> decodeMetadata(parser, listener);
+                    case "amazon-bedrock-invocationMetrics" -> decodeInvocationMetrics(parser, listener);
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Nova stream chunk", e);
+        }
+    }
+
+    private static void decodeContentBlockDelta(JsonParser parser, Listener listener) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            if ("delta".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var deltaField = parser.currentName();
+                    var token = parser.nextToken();
+                    if ("text".equals(deltaField) && token == JsonToken.VALUE_STRING) {
+                        listener.onText(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void decodeMessageStop(JsonParser parser, Listener listener) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        String stopReason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var token = parser.nextToken();
+            if ("stopReason".equals(field) && token == JsonToken.VALUE_STRING) {
+                stopReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        listener.onMessageStop(stopReason);
+    }
+
+    private static void decodeMetadata(JsonParser parser, Listener listener) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "usage" -> decodeUsage(parser, listener);
+                case "metrics", "trace" -> decodeMetadataSection(parser, field, listener);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static void decodeUsage(JsonParser parser, Listener listener) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        int inputTokens = 0;
+        int outputTokens = 0;
+        int cacheRead = 0;
+        int cacheWrite = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "inputTokens" -> inputTokens = parser.getValueAsInt();
+                case "outputTokens" -> outputTokens = parser.getValueAsInt();
+                case "cacheReadInputTokenCount" -> cacheRead = parser.getValueAsInt();
+                case "cacheWriteInputTokenCount" -> cacheWrite = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        listener.onUsage(new Usage(inputTokens, outputTokens, cacheRead, cacheWrite));
+    }
+
+    private static void decodeInvocationMetrics(JsonParser parser, Listener listener) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        int inputTokenCount = 0;
+        int outputTokenCount = 0;
+        long invocationLatency = 0;
+        long firstByteLatency = 0;
+        int cacheRead = 0;
+        int cacheWrite = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "inputTokenCount" -> inputTokenCount = parser.getValueAsInt();
+                case "outputTokenCount" -> outputTokenCount = parser.getValueAsInt();
+                case "invocationLatency" -> invocationLatency = parser.getValueAsLong();
+                case "firstByteLatency" -> firstByteLatency = parser.getValueAsLong();
+                case "cacheReadInputTokenCount" -> cacheRead = parser.getValueAsInt();
+                case "cacheWriteInputTokenCount" -> cacheWrite = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        listener.onInvocationMetrics(new InvocationMetrics(inputTokenCount, outputTokenCount, invocationLatency,
+                firstByteLatency, cacheRead, cacheWrite));
+    }
+
+    private static void decodeMetadataSection(JsonParser parser, String section, Listener listener)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.currentName();
+            var token = parser.nextToken();
+            if (token.isScalarValue()) {
+                listener.onMetadataEntry(section, key, parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package org.example;
+
+// A long-lived service that streams Amazon Nova responses for many concurrent prompts
+// over one shared Bedrock Runtime async client.
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.reactivestreams.FlowAdapters;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.providers.DefaultAwsRegionProviderChain;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler.Visitor;
+
+public class NovaStreamingService implements AutoCloseable {
+
+    public static final String DEFAULT_MODEL_ID = "us.amazon.nova-lite-v1:0";
+
+    private final BedrockRuntimeAsyncClient client;
+    private final AdmissionController admissionController;
+    private final SdkAsyncHttpClient httpClient;
+    private final String modelId;
+    private final MetricsSink metricsSink;
+
+    private NovaStreamingService(Builder builder) {
+        var eventLoopGroup = SdkEventLoopGroup.builder();
+        if (builder.eventLoopThreads > 0) {
+            eventLoopGroup.numberOfThreads(builder.eventLoopThreads);
+        }
+        // The HTTP client is built here rather than handed to the SDK as a builder so that
+        // close() can release the event loop threads together with the client.
+        this.httpClient = NettyNioAsyncHttpClient.builder()
+                .eventLoopGroupBuilder(eventLoopGroup)
+                .maxConcurrency(builder.maxConcurrency)
+                .maxPendingConnectionAcquires(builder.maxPendingConnectionAcquires)
+                .connectionAcquisitionTimeout(builder.connectionAcquisitionTimeout)
+                .tcpKeepAlive(true)
+                .build();
+        var clientBuilder = BedrockRuntimeAsyncClient.builder()
+                .credentialsProvider(builder.credentialsProvider)
+                .region(builder.region)
+                .httpClient(httpClient);
+        if (builder.endpointOverride != null) {
+            clientBuilder.endpointOverride(builder.endpointOverride);
+        }
+        if (builder.admissionController != null) {
+            clientBuilder.overrideConfiguration(builder.admissionController.asyncOverrideConfiguration());
+        }
+        this.client = clientBuilder.build();
+        this.admissionController = builder.admissionController;
+        this.modelId = builder.modelId;
+        this.metricsSink = builder.metricsSink;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Streams the answer to a single-turn prompt without blocking the caller.
+     * The delta callback runs on an SDK event loop thread and must not block.
+     *
+     * @return a future completed with the full response text when the stream ends
+     */
+    public CompletableFuture<String> stream(String prompt, Consumer<String> onDelta) {
+        var completeResponseTextBuffer = new StringBuilder();
+        return invoke(nativeRequest(prompt), new NovaChunkDecoder.Listener() {
+            @Override
+            public void onText(String text) {
+                completeResponseTextBuffer.append(text);
+                onDelta.accept(text);
+            }
+        }).thenApply(ignored -> completeResponseTextBuffer.toString());
+    }
+
+    /**
+     * Returns a publisher of text deltas for a single-turn prompt. Each subscription sends one
+     * request, and demand from the subscriber is propagated to the response stream.
+     */
+    public Flow.Publisher<String> publish(String prompt) {
+        var request = request(nativeRequest(prompt));
+        return subscriber -> {
+            var subscribed = new AtomicBoolean();
+            Consumer<Throwable> failBeforeSubscribe = t -> {
+                if (subscribed.compareAndSet(false, true)) {
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    });
+                    subscriber.onError(t);
+                }
+            };
+            var timer = StreamTimer.start(metricsSink, modelId);
+            var lastText = new String[1];
+            var listener = new TimedListener(timer, new NovaChunkDecoder.Listener() {
+                @Override
+                public void onText(String text) {
+                    lastText[0] = text;
+                }
+            });
+            var responseStreamHandler = InvokeModelWithResponseStreamResponseHandler.builder()
+                    .onEventStream(events -> {
+                        subscribed.set(true);
+                        SdkPublisher<String> texts = events
+                                .filter(PayloadPart.class)
+                                .flatMapIterable(part -> {
+                                    timer.onChunk();
+                                    lastText[0] = null;
+                                    NovaChunkDecoder.decode(part.bytes(), listener);
+                                    return lastText[0] == null ? List.<String>of() : List.of(lastText[0]);
+                                })
+                                .doAfterOnComplete(() -> timer.finish(listener.outputTokens))
+                                .doAfterOnError(timer::fail);
+                        FlowAdapters.toFlowPublisher(texts).subscribe(subscriber);
+                    })
+                    .onError(t -> {
+                        timer.fail(t);
+                        failBeforeSubscribe.accept(t);
+                    })
+                    .build();
+            send(request, responseStreamHandler)
+                    .exceptionally(t -> {
+                        failBeforeSubscribe.accept(t);
+                        return null;
+                    });
+        };
+    }
+
+    /**
+     * Sends a native Nova request and decodes every chunk into {@code listener}.
+     * The listener runs on an SDK event loop thread and must not block.
+     */
+    public CompletableFuture<Void> invoke(String nativeRequest, NovaChunkDecoder.Listener listener) {
+        var timer = StreamTimer.start(metricsSink, modelId);
+        var timedListener = new TimedListener(timer, listener);
+        var responseStreamHandler = InvokeModelWithResponseStreamResponseHandler.builder()
+                .subscriber(Visitor.builder()
+                        .onChunk(chunk -> {
+                            timer.onChunk();
+                            NovaChunkDecoder.decode(chunk.bytes(), timedListener);
+                        })
+                        .build())
+                .build();
+        return send(request(nativeRequest), responseStreamHandler)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        timer.fail(error);
+                    } else {
+                        timer.finish(timedListener.outputTokens);
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> send(InvokeModelWithResponseStreamRequest request,
+                                         InvokeModelWithResponseStreamResponseHandler responseStreamHandler) {
+        if (admissionController == null) {
+            return client.invokeModelWithResponseStream(request, responseStreamHandler);
+        }
+        // Admission waits without a thread, so the caller and the event loop are never blocked.
+        return admissionController.admitAsync(request,
+                () -> client.invokeModelWithResponseStream(request, responseStreamHandler));
+    }
+
+    /**
+     * Builds the messages-v1 payload for a single user prompt.
+     */
+    public static String nativeRequest(String prompt) {
+        return new JSONObject()
+                .put("schemaVersion", "messages-v1")
+                .put("inferenceConfig", new JSONObject()
+                        .put("maxTokens", 500)
+                        .put("temperature", 0.7)
+                        .put("topP", 0.9)
+                        .put("topK", 20))
+                .put("messages", new JSONArray()
+                        .put(new JSONObject()
+                                .put("role", "user")
+                                .put("content", new JSONArray().put(new JSONObject().put("text", prompt)))))
+                .toString();
+    }
+
+    private InvokeModelWithResponseStreamRequest request(String nativeRequest) {
+        return InvokeModelWithResponseStreamRequest.builder()
+                .body(SdkBytes.fromUtf8String(nativeRequest))
+                .modelId(modelId)
+                .build();
+    }
+
+    /**
+     * Forwards decoded chunks and feeds usage and server-reported latencies to the stream timer.
+     */
+    private static final class TimedListener implements NovaChunkDecoder.Listener {
+        private final StreamTimer timer;
+        private final NovaChunkDecoder.Listener delegate;
+        private volatile long outputTokens = -1;
+
+        TimedListener(StreamTimer timer, NovaChunkDecoder.Listener delegate) {
+            this.timer = timer;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onText(String text) {
+            delegate.onText(text);
+        }
+
+        @Override
+        public void onMessageStop(String stopReason) {
+            delegate.onMessageStop(stopReason);
+        }
+
+        @Override
+        public void onUsage(NovaChunkDecoder.Usage usage) {
+            outputTokens = usage.outputTokens();
+            delegate.onUsage(usage);
+        }
+
+        @Override
+        public void onInvocationMetrics(NovaChunkDecoder.InvocationMetrics metrics) {
+            timer.onServerLatency(metrics.invocationLatency(), metrics.firstByteLatency());
+            delegate.onInvocationMetrics(metrics);
+        }
+
+        @Override
+        public void onMetadataEntry(String section, String key, String value) {
+            delegate.onMetadataEntry(section, key, value);
+        }
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        httpClient.close();
+    }
+
+    public static class Builder {
+        private Region region;
+        private AwsCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
+        private String modelId = DEFAULT_MODEL_ID;
+        private int eventLoopThreads;
+        private int maxConcurrency = 500;
+        private int maxPendingConnectionAcquires = 10_000;
+        private Duration connectionAcquisitionTimeout = Duration.ofSeconds(30);
+        private MetricsSink metricsSink = MetricsSink.NONE;
+        private AdmissionController admissionController;
+        private URI endpointOverride;
+
+        private Builder() {
+        }
+
+        /**
+         * Defaults to the region of the environment ({@code AWS_REGION}, the {@code aws.region}
+         * system property or the profile), or us-east-1 if none is set.
+         */
+        public Builder region(Region region) {
+            this.region = region;
+            return this;
+        }
+
+        public Builder credentialsProvider(AwsCredentialsProvider credentialsProvider) {
+            this.credentialsProvider = credentialsProvider;
+            return this;
+        }
+
+        /**
+         * Calls this endpoint instead of the regional one, e.g. a local stub server.
+         */
+        public Builder endpointOverride(URI endpointOverride) {
+            this.endpointOverride = endpointOverride;
+            return this;
+        }
+
+        public Builder modelId(String modelId) {
+            this.modelId = modelId;
+            return this;
+        }
+
+        /**
+         * Number of Netty event loop threads; 0 keeps the SDK default (twice the CPU count).
+         */
+        public Builder eventLoopThreads(int eventLoopThreads) {
+            this.eventLoopThreads = eventLoopThreads;
+            return this;
+        }
+
+        /**
+         * Maximum number of concurrent streams, i.e. open HTTP connections.
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public Builder maxPendingConnectionAcquires(int maxPendingConnectionAcquires) {
+            this.maxPendingConnectionAcquires = maxPendingConnectionAcquires;
+            return this;
+        }
+
+        public Builder connectionAcquisitionTimeout(Duration connectionAcquisitionTimeout) {
+            this.connectionAcquisitionTimeout = connectionAcquisitionTimeout;
+            return this;
+        }
+
+        /**
+         * Receives time to first token, inter-chunk gaps and durations of every stream.
+         */
+        public Builder metricsSink(MetricsSink metricsSink) {
+            this.metricsSink = metricsSink;
+            return this;
+        }
+
+        /**
+         * Rate-limits streams per model ID and retries throttled requests within the SDK's retry
+         * token bucket; without it the SDK's default retry strategy applies.
+         */
+        public Builder admissionController(AdmissionController admissionController) {
+            this.admissionController = admissionController;
+            return this;
+        }
+
+        public NovaStreamingService build() {
+            if (region == null) {
+                region = defaultRegion();
+            }
+            return new NovaStreamingService(this);
+        }
+
+        private static Region defaultRegion() {
+            try {
+                return DefaultAwsRegionProviderChain.builder().build().getRegion();
+            } catch (SdkClientException e) {
+                return Region.US_EAST_1;
+            }
+        }
+    }
+}
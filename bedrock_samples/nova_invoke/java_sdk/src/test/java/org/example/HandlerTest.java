@@ -1,7 +0,0 @@
-package org.example;
-
-import org.junit.jupiter.api.Test;
-
-public class HandlerTest {
-    //TODO add tests here
-}
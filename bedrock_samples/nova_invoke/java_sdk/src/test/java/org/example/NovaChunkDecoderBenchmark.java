@@ -0,0 +1,104 @@
+package org.example;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the org.json chunk handling that the sample used originally with {@link NovaChunkDecoder}
+ * over a recorded Nova response stream. Each invocation decodes the whole stream once.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.example.NovaChunkDecoderBenchmark"}; the GC profiler reports
+ * allocated bytes per operation next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NovaChunkDecoderBenchmark {
+
+    private byte[][] chunks;
+
+    @Setup
+    public void loadChunks() throws IOException {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("nova-stream-chunks.jsonl")) {
+            if (input == null) {
+                throw new IllegalStateException("Unable to find nova-stream-chunks.jsonl");
+            }
+            chunks = new String(input.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .filter(line -> !line.isBlank())
+                    .map(line -> line.getBytes(StandardCharsets.UTF_8))
+                    .toArray(byte[][]::new);
+        }
+    }
+
+    @Benchmark
+    public void orgJson(Blackhole blackhole) {
+        for (byte[] chunk : chunks) {
+            var response = new JSONObject(new String(chunk, StandardCharsets.UTF_8));
+            if (response.has("contentBlockDelta")) {
+                JSONObject contentBlockDelta = response.getJSONObject("contentBlockDelta");
+                if (contentBlockDelta.has("delta") && contentBlockDelta.getJSONObject("delta").has("text")) {
+                    blackhole.consume(contentBlockDelta.getJSONObject("delta").getString("text"));
+                }
+            } else if (response.has("messageStop")) {
+                blackhole.consume(response.getJSONObject("messageStop").optString("stopReason"));
+            } else if (response.has("metadata") && response.getJSONObject("metadata").has("usage")) {
+                JSONObject usage = response.getJSONObject("metadata").getJSONObject("usage");
+                blackhole.consume(usage.getInt("inputTokens"));
+                blackhole.consume(usage.getInt("outputTokens"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void streamingDecoder(Blackhole blackhole) {
+        var listener = new NovaChunkDecoder.Listener() {
+            @Override
+            public void onText(String text) {
+                blackhole.consume(text);
+            }
+
+            @Override
+            public void onMessageStop(String stopReason) {
+                blackhole.consume(stopReason);
+            }
+
+            @Override
+            public void onUsage(NovaChunkDecoder.Usage usage) {
+                blackhole.consume(usage);
+            }
+        };
+        for (byte[] chunk : chunks) {
+            NovaChunkDecoder.decode(chunk, 0, chunk.length, listener);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NovaChunkDecoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
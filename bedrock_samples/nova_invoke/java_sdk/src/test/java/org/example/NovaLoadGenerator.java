@@ -0,0 +1,101 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a fixed number of Nova streams open against a {@link StubRuntimeServer}, once per client
+ * configuration, and prints throughput with time-to-first-token and duration percentiles for each.
+ * Unlike {@link NovaStreamingBenchmark} the stub can pace its chunks and throttle, so the numbers
+ * include retries and admission control.
+ * <p>
+ * Arguments are {@code key=value} pairs, all optional:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="org.example.NovaLoadGenerator" \
+ *     -Dexec.args="configurations=0,2,0+noadmission concurrency=256 seconds=30 maxConcurrent=128"
+ * </pre>
+ * Each entry of {@code configurations} is a Netty event loop size (0 for the SDK default),
+ * optionally suffixed with {@code +noadmission}.
+ */
+public class NovaLoadGenerator {
+
+    public static void main(String... args) throws Exception {
+        var options = new HashMap<String, String>();
+        for (var arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        var warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmupSeconds", "5")));
+        var duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("seconds", "20")));
+
+        System.out.printf("%-20s %10s %8s %10s %10s %10s %10s %10s%n", "configuration", "streams/s", "failed",
+                "throttled", "ttft p50", "ttft p99", "dur p50", "dur p99");
+        for (var configuration : options.getOrDefault("configurations", "0,0+noadmission").split(",")) {
+            try (var server = StubRuntimeServer.builder()
+                    .latency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latencyMillis", "200"))))
+                    .chunkCount(Integer.parseInt(options.getOrDefault("chunks", "50")))
+                    .chunkInterval(Duration.ofMillis(Long.parseLong(options.getOrDefault("chunkIntervalMillis", "20"))))
+                    .throttleRate(Double.parseDouble(options.getOrDefault("throttleRate", "0")))
+                    .maxConcurrentRequests(Integer.parseInt(options.getOrDefault("maxConcurrent", "0")))
+                    .start()) {
+                int eventLoopThreads = Integer.parseInt(configuration.replace("+noadmission", ""));
+                boolean admission = !configuration.endsWith("+noadmission");
+
+                try (var service = server.service(eventLoopThreads, admission, MetricsSink.NONE)) {
+                    run(service, concurrency, warmup);
+                }
+
+                var metricsSink = new HdrMetricsSink(false);
+                long throttledBefore = server.throttled();
+                try (var service = server.service(eventLoopThreads, admission, metricsSink)) {
+                    run(service, concurrency, duration);
+                }
+                var stats = metricsSink.snapshot().get(NovaStreamingService.DEFAULT_MODEL_ID);
+                if (stats == null) {
+                    System.out.printf("%-20s no streams completed%n", configuration);
+                    continue;
+                }
+                System.out.printf("%-20s %10.1f %8d %10d %10.1f %10.1f %10.1f %10.1f%n",
+                        configuration,
+                        stats.getCompletions() / (double) duration.getSeconds(),
+                        stats.getFailures(),
+                        server.throttled() - throttledBefore,
+                        stats.getTimeToFirstTokenP50Millis(),
+                        stats.getTimeToFirstTokenP99Millis(),
+                        stats.getDurationP50Millis(),
+                        stats.getDurationP99Millis());
+            }
+        }
+    }
+
+    /**
+     * Starts a new stream whenever one finishes until {@code duration} has passed, then waits for
+     * the open streams.
+     */
+    private static void run(NovaStreamingService service, int concurrency, Duration duration)
+            throws InterruptedException {
+        var permits = new Semaphore(concurrency);
+        long deadline = System.nanoTime() + duration.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            CompletableFuture<String> stream;
+            try {
+                stream = service.stream("What is the capital of France?", text -> { });
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            stream.whenComplete((text, error) -> permits.release());
+        }
+        permits.acquire(concurrency);
+    }
+}
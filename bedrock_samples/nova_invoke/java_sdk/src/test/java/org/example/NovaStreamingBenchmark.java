@@ -0,0 +1,83 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client-side cost of one InvokeModelWithResponseStream call through
+ * {@link NovaStreamingService}, against a {@link StubRuntimeServer} that streams its chunks
+ * without delay. Throughput and the p50/p99 of the sampled stream durations are reported for
+ * each event loop size, with and without the admission controller.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.example.NovaStreamingBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class NovaStreamingBenchmark {
+
+    @Param({"0", "2"})
+    public int eventLoopThreads;
+
+    @Param({"true", "false"})
+    public boolean admission;
+
+    @Param({"20"})
+    public int chunks;
+
+    private StubRuntimeServer server;
+    private NovaStreamingService service;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = StubRuntimeServer.builder()
+                .latency(Duration.ZERO)
+                .chunkCount(chunks)
+                .chunkInterval(Duration.ZERO)
+                .start();
+        service = server.service(eventLoopThreads, admission, MetricsSink.NONE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        service.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String stream() {
+        return service.stream("What is the capital of France?", text -> { }).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NovaStreamingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
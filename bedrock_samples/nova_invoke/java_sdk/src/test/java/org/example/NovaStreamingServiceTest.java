@@ -0,0 +1,104 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Streams from a {@link StubRuntimeServer} through the real async client, so the event-stream
+ * frames and the base64 Nova chunks inside them are decoded end to end.
+ */
+public class NovaStreamingServiceTest {
+    private static final int CHUNKS = 25;
+
+    @Test
+    void streamDeliversEveryDeltaAndTheFullText() throws Exception {
+        try (var server = stub(0).start();
+             var service = server.service(1, false, MetricsSink.NONE)) {
+            List<String> deltas = Collections.synchronizedList(new ArrayList<>());
+
+            var text = service.stream("hello", deltas::add).get(10, TimeUnit.SECONDS);
+
+            assertEquals(StubRuntimeServer.text(CHUNKS), text);
+            assertEquals(CHUNKS, deltas.size());
+            assertEquals(text, String.join("", deltas));
+        }
+    }
+
+    @Test
+    void publishDeliversEveryDeltaOnDemand() throws Exception {
+        try (var server = stub(0).start();
+             var service = server.service(1, true, MetricsSink.NONE)) {
+            var done = new CompletableFuture<List<String>>();
+
+            service.publish("hello").subscribe(new Flow.Subscriber<>() {
+                private final List<String> deltas = new ArrayList<>();
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(String delta) {
+                    deltas.add(delta);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    done.complete(deltas);
+                }
+            });
+
+            var deltas = done.get(10, TimeUnit.SECONDS);
+            assertEquals(CHUNKS, deltas.size());
+            assertEquals(StubRuntimeServer.text(CHUNKS), String.join("", deltas));
+        }
+    }
+
+    @Test
+    void throttledStreamFailsWithTheServiceException() throws Exception {
+        try (var server = stub(1.0).start();
+             var service = server.service(1, false, MetricsSink.NONE)) {
+            var failure = assertThrows(ExecutionException.class,
+                    () -> service.stream("hello", delta -> { }).get(30, TimeUnit.SECONDS));
+
+            AwsServiceException serviceException = null;
+            for (var cause = failure.getCause(); cause != null && serviceException == null; cause = cause.getCause()) {
+                if (cause instanceof AwsServiceException e) {
+                    serviceException = e;
+                }
+            }
+            assertNotNull(serviceException, () -> "no AwsServiceException in " + failure);
+            assertEquals(429, serviceException.statusCode());
+        }
+    }
+
+    private static StubRuntimeServer.Builder stub(double throttleRate) {
+        return StubRuntimeServer.builder()
+                .latency(Duration.ZERO)
+                .chunkCount(CHUNKS)
+                .chunkInterval(Duration.ZERO)
+                .throttleRate(throttleRate);
+    }
+}
@@ -0,0 +1,170 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.StopReason;
+import software.amazon.awssdk.services.bedrockruntime.model.SystemContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs a Converse conversation until the model stops asking for tools.
+ * <p>
+ * When the model requests several tools in one turn, they are all submitted to the tool executor
+ * at once and their results are sent back together in a single user message. Each tool is bounded
+ * by its own timeout, measured from the moment it was submitted; a tool that fails
+ * or times out is reported to the model as an error result instead of aborting the loop.
+ */
+public class AgentLoop {
+    private static final Logger logger = LoggerFactory.getLogger(AgentLoop.class);
+
+    private final BedrockRuntimeClient bedrockRuntimeClient;
+    private final ToolRegistry toolRegistry;
+    private final ExecutorService toolExecutor;
+    private final MetricsSink metricsSink;
+    private final int maxTurns;
+
+    public AgentLoop(BedrockRuntimeClient bedrockRuntimeClient, ToolRegistry toolRegistry,
+                     ExecutorService toolExecutor, MetricsSink metricsSink, int maxTurns) {
+        this.bedrockRuntimeClient = bedrockRuntimeClient;
+        this.toolRegistry = toolRegistry;
+        this.toolExecutor = toolExecutor;
+        this.metricsSink = metricsSink;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Sends {@code history} and keeps answering tool calls until the model ends its turn.
+     *
+     * @throws IllegalStateException if the model still asks for tools after {@code maxTurns} requests
+     */
+    public AgentResult run(String modelId, List<Message> history, InferenceConfiguration inferenceConfig) {
+        return run(modelId, Collections.emptyList(), history, inferenceConfig);
+    }
+
+    /**
+     * Like {@link #run(String, List, InferenceConfiguration)} with a system prompt, which is sent
+     * unchanged with every request of the run.
+     */
+    public AgentResult run(String modelId, List<SystemContentBlock> system, List<Message> history,
+                           InferenceConfiguration inferenceConfig) {
+        List<Message> messages = new ArrayList<>(history);
+        List<TokenUsage> usages = new ArrayList<>();
+        for (int turn = 1; turn <= maxTurns; turn++) {
+            ConverseResponse response = converse(modelId, system, messages, inferenceConfig);
+            if (response.usage() != null) {
+                usages.add(response.usage());
+            }
+            Message assistantMessage = response.output().message();
+            messages.add(assistantMessage);
+
+            List<ToolUseBlock> toolUses = ToolCalls.toolUses(assistantMessage.content());
+            if (response.stopReason() != StopReason.TOOL_USE || toolUses.isEmpty()) {
+                return new AgentResult(ToolCalls.text(assistantMessage.content()), messages, response.stopReason(),
+                        turn, usages);
+            }
+
+            logger.debug("Turn {}: running {} tool calls", turn, toolUses.size());
+            messages.add(Message.builder()
+                    .role(ConversationRole.USER)
+                    .content(runTools(toolUses))
+                    .build());
+        }
+        throw new IllegalStateException("Agent loop did not finish within " + maxTurns + " turns");
+    }
+
+    private ConverseResponse converse(String modelId, List<SystemContentBlock> system, List<Message> messages,
+                                      InferenceConfiguration inferenceConfig) {
+        StreamTimer timer = StreamTimer.start(metricsSink, modelId);
+        ConverseResponse response;
+        try {
+            response = bedrockRuntimeClient.converse(request -> {
+                request.modelId(modelId)
+                        .messages(messages)
+                        .inferenceConfig(inferenceConfig);
+                if (!system.isEmpty()) {
+                    request.system(system);
+                }
+                if (!toolRegistry.isEmpty()) {
+                    request.toolConfig(toolRegistry.toolConfiguration());
+                }
+            });
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+        timer.onChunk();
+        if (response.metrics() != null && response.metrics().latencyMs() != null) {
+            timer.onServerLatency(response.metrics().latencyMs(), -1);
+        }
+        timer.finish(response.usage() != null && response.usage().outputTokens() != null
+                ? response.usage().outputTokens() : -1);
+        return response;
+    }
+
+    private List<ContentBlock> runTools(List<ToolUseBlock> toolUses) {
+        List<ToolCalls.Pending> calls = new ArrayList<>(toolUses.size());
+        for (ToolUseBlock toolUse : toolUses) {
+            calls.add(ToolCalls.submit(toolRegistry, toolExecutor, toolUse));
+        }
+        return ToolCalls.await(calls);
+    }
+
+    /**
+     * The final answer of an agent run together with the full conversation.
+     */
+    public static final class AgentResult {
+        private final String text;
+        private final List<Message> messages;
+        private final StopReason stopReason;
+        private final int turns;
+        private final List<TokenUsage> usages;
+
+        AgentResult(String text, List<Message> messages, StopReason stopReason, int turns) {
+            this(text, messages, stopReason, turns, Collections.emptyList());
+        }
+
+        AgentResult(String text, List<Message> messages, StopReason stopReason, int turns, List<TokenUsage> usages) {
+            this.text = text;
+            this.messages = Collections.unmodifiableList(messages);
+            this.stopReason = stopReason;
+            this.turns = turns;
+            this.usages = Collections.unmodifiableList(usages);
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public List<Message> messages() {
+            return messages;
+        }
+
+        public StopReason stopReason() {
+            return stopReason;
+        }
+
+        /** @return the number of Converse requests the run needed */
+        public int turns() {
+            return turns;
+        }
+
+        /**
+         * @return the token usage of each request, in order; empty if the service reported none
+         */
+        public List<TokenUsage> usages() {
+            return usages;
+        }
+    }
+}
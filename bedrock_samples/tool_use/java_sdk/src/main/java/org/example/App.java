@@ -10,6 +10,12 @@ public class App {
 
         Handler handler = new Handler();
         handler.sendRequest();
+        handler.sendStreamingRequest();
+        logger.info("Response cache: {}", handler.responseCache().stats());
+
+        handler.chat("demo", "查询今天的天气");
+        handler.chat("demo", "明天呢？");
+        logger.info("Conversations: {}", handler.conversationStore().stats());
 
         logger.info("Application ends");
     }
@@ -0,0 +1,54 @@
+package org.example;
+
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the blocking {@link Handler} calls on an executor and hands back futures, so a
+ * request-serving tier can keep many conversations outstanding without dedicating a platform
+ * thread to each for the whole model latency.
+ * <p>
+ * By default every call gets its own virtual thread, which leaves its carrier thread while the
+ * SDK waits on the socket. A virtual thread still occupies its carrier while it holds a monitor
+ * or waits in native code, so this mode is paired with {@code http.client=urlconnection} unless
+ * another client is set; with {@code apache}, size {@code http.maxConnections} to the expected concurrency.
+ */
+public class AsyncHandler {
+    private final Handler handler;
+    private final ExecutorService executor;
+
+    /**
+     * Uses the shared executor configured by {@code execution.threads}.
+     */
+    public AsyncHandler(Handler handler) {
+        this(handler, DependencyFactory.handlerExecutor());
+    }
+
+    public AsyncHandler(Handler handler, ExecutorService executor) {
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    /**
+     * @see Handler#converse(BedrockRuntimeClient)
+     */
+    public CompletableFuture<String> converse() {
+        return CompletableFuture.supplyAsync(() -> handler.converse(DependencyFactory.bedrockRuntimeClient()), executor);
+    }
+
+    /**
+     * @see Handler#converseStream()
+     */
+    public CompletableFuture<String> converseStream() {
+        return CompletableFuture.supplyAsync(handler::converseStream, executor);
+    }
+
+    /**
+     * @see Handler#chat(String, String)
+     */
+    public CompletableFuture<String> chat(String sessionId, String inputText) {
+        return CompletableFuture.supplyAsync(() -> handler.chat(sessionId, inputText), executor);
+    }
+}
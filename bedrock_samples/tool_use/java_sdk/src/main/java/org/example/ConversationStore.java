@@ -0,0 +1,877 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.CachePointBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.CachePointType;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.SystemContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultContentBlock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the history of multi-turn conversations and shapes each request so that Bedrock's prompt
+ * cache serves the part of the prompt that has not changed.
+ * <p>
+ * Every request of a session carries up to three cache checkpoints: after the tools and system
+ * prompt, at the end of the previous request (read back from the cache) and at the end of this
+ * one (written for the next turn). Checkpoints are only placed once the prefix reaches
+ * {@code minCacheTokens}, below which the service does not cache. The stored messages never
+ * contain checkpoints.
+ * <p>
+ * When the estimated prompt outgrows {@code tokenBudget}, whole turns are dropped from the oldest
+ * until it is back under {@code compactTargetPercent} of the budget; compacting well below the
+ * budget keeps the new prefix stable, and thus cached, for many turns. A tool use is never
+ * separated from its result. With a {@link Summarizer}, the dropped turns are folded into a
+ * summary that is sent in the system prompt. Token counts are estimated at four characters per
+ * token and corrected with the prompt size the service reports.
+ * <p>
+ * Sessions idle for {@code spillAfter} are serialized to deflated JSON in a direct buffer or a
+ * file and read back on their next turn; sessions idle for {@code sessionTtl} are removed.
+ */
+public final class ConversationStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationStore.class);
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final ContentBlock CACHE_POINT =
+            ContentBlock.fromCachePoint(CachePointBlock.builder().type(CachePointType.DEFAULT).build());
+    private static final SystemContentBlock SYSTEM_CACHE_POINT =
+            SystemContentBlock.fromCachePoint(CachePointBlock.builder().type(CachePointType.DEFAULT).build());
+
+    /**
+     * Condenses turns that no longer fit the token budget.
+     */
+    @FunctionalInterface
+    public interface Summarizer {
+        /**
+         * @param previousSummary the summary of turns dropped before, or {@code null}
+         * @param dropped         the messages being dropped, oldest first
+         * @return the new summary, replacing {@code previousSummary}
+         */
+        String summarize(String previousSummary, List<Message> dropped);
+    }
+
+    /**
+     * Where idle sessions are moved.
+     */
+    public enum Spill {
+        NONE,
+        OFF_HEAP,
+        FILE
+    }
+
+    private final int tokenBudget;
+    private final int compactTargetPercent;
+    private final int minCacheTokens;
+    private final boolean promptCache;
+    private final Spill spill;
+    private final Path spillDirectory;
+    private final Duration spillAfter;
+    private final Duration sessionTtl;
+    private final Summarizer summarizer;
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    private ConversationStore(Builder builder) {
+        this.tokenBudget = builder.tokenBudget;
+        this.compactTargetPercent = builder.compactTargetPercent;
+        this.minCacheTokens = builder.minCacheTokens;
+        this.promptCache = builder.promptCache;
+        this.spill = builder.spill;
+        this.spillAfter = builder.spillAfter;
+        this.sessionTtl = builder.sessionTtl;
+        this.summarizer = builder.summarizer;
+        if (spill == Spill.FILE) {
+            if (builder.spillDirectory == null) {
+                throw new IllegalArgumentException("A spill directory is required to spill sessions to files");
+            }
+            try {
+                this.spillDirectory = Files.createDirectories(builder.spillDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create spill directory " + builder.spillDirectory, e);
+            }
+        } else {
+            this.spillDirectory = null;
+        }
+        long periodMillis = Math.max(1_000, Math.min(spillAfter.toMillis(), sessionTtl.toMillis()) / 2);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("conversation-sweeper").daemon(true).factory());
+        sweeper.scheduleWithFixedDelay(this::sweep, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads the {@code conversation.*} settings.
+     *
+     * @param summarizer used when {@code conversation.summarize=true}
+     */
+    public static ConversationStore fromProperties(Properties properties, Summarizer summarizer) {
+        String spill = properties.getProperty("conversation.spill", "offheap").trim();
+        String spillDirectory = properties.getProperty("conversation.spillDirectory", "").trim();
+        Builder builder = builder()
+                .tokenBudget(intProperty(properties, "conversation.tokenBudget", 100_000))
+                .compactTargetPercent(intProperty(properties, "conversation.compactTargetPercent", 60))
+                .minCacheTokens(intProperty(properties, "conversation.minCacheTokens", 1024))
+                .promptCache(Boolean.parseBoolean(properties.getProperty("conversation.promptCache", "true").trim()))
+                .spillAfter(Duration.ofSeconds(intProperty(properties, "conversation.spillAfterSeconds", 300)))
+                .sessionTtl(Duration.ofMinutes(intProperty(properties, "conversation.sessionTtlMinutes", 1440)))
+                .spillDirectory(spillDirectory.isEmpty()
+                        ? Paths.get(System.getProperty("java.io.tmpdir"), "conversations")
+                        : Paths.get(spillDirectory));
+        if ("none".equalsIgnoreCase(spill)) {
+            builder.spill(Spill.NONE);
+        } else if ("offheap".equalsIgnoreCase(spill)) {
+            builder.spill(Spill.OFF_HEAP);
+        } else if ("file".equalsIgnoreCase(spill)) {
+            builder.spill(Spill.FILE);
+        } else {
+            throw new IllegalStateException("Invalid conversation.spill in config.properties: " + spill);
+        }
+        if (Boolean.parseBoolean(properties.getProperty("conversation.summarize", "false").trim())) {
+            builder.summarizer(summarizer);
+        }
+        return builder.build();
+    }
+
+    /**
+     * A summarizer that asks {@code modelId} for a short summary of the dropped turns.
+     */
+    public static Summarizer modelSummarizer(BedrockRuntimeClient bedrockRuntimeClient, String modelId) {
+        return (previousSummary, dropped) -> {
+            StringBuilder transcript = new StringBuilder();
+            if (previousSummary != null) {
+                transcript.append("Summary so far:\n").append(previousSummary).append("\n\n");
+            }
+            for (Message message : dropped) {
+                for (ContentBlock block : message.content()) {
+                    if (block.text() != null) {
+                        transcript.append(message.roleAsString()).append(": ").append(block.text()).append('\n');
+                    } else if (block.toolUse() != null) {
+                        transcript.append("assistant called ").append(block.toolUse().name())
+                                .append(' ').append(block.toolUse().input()).append('\n');
+                    } else if (block.toolResult() != null) {
+                        for (ToolResultContentBlock result : block.toolResult().content()) {
+                            String text = result.text() != null ? result.text() : String.valueOf(result.json());
+                            transcript.append("tool result: ").append(text).append('\n');
+                        }
+                    }
+                }
+            }
+            ConverseResponse response = bedrockRuntimeClient.converse(request -> request
+                    .modelId(modelId)
+                    .system(SystemContentBlock.fromText("Summarize the conversation below in a few sentences."
+                            + " Keep the facts, names, numbers and decisions that later turns may refer to."))
+                    .messages(Message.builder()
+                            .role(ConversationRole.USER)
+                            .content(ContentBlock.fromText(transcript.toString()))
+                            .build())
+                    .inferenceConfig(config -> config.maxTokens(512).temperature(0F)));
+            return ToolCalls.text(response.output().message().content());
+        };
+    }
+
+    /**
+     * @return the session {@code id}, created empty if it does not exist. Looking a session up
+     * counts as using it, so the sweeper does not remove it before its next turn begins.
+     */
+    public Session session(String id) {
+        return sessions.compute(id, (key, existing) -> {
+            Session session = existing != null ? existing : new Session(key);
+            session.lastUsedNanos = System.nanoTime();
+            return session;
+        });
+    }
+
+    /**
+     * Forgets a session and frees its spilled copy.
+     */
+    public void remove(String id) {
+        Session session = sessions.remove(id);
+        if (session != null) {
+            session.lock.lock();
+            try {
+                session.removed = true;
+                session.release();
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the statistics of every session, by session ID
+     */
+    public Map<String, Stats> stats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (Session session : sessions.values()) {
+            stats.put(session.id, session.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the sweeper and deletes every spilled session.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        for (String id : new ArrayList<>(sessions.keySet())) {
+            remove(id);
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            long idleNanos = now - session.lastUsedNanos;
+            if (idleNanos > sessionTtl.toNanos()) {
+                // A session that is in use again is kept. The idle time is checked again atomically
+                // with the removal, so that a concurrent session(id) either keeps it or gets a new one.
+                if (session.lock.tryLock()) {
+                    try {
+                        sessions.computeIfPresent(session.id, (id, current) -> {
+                            if (current == session
+                                    && System.nanoTime() - session.lastUsedNanos > sessionTtl.toNanos()) {
+                                session.removed = true;
+                                return null;
+                            }
+                            return current;
+                        });
+                        if (session.removed) {
+                            session.release();
+                        }
+                    } finally {
+                        session.lock.unlock();
+                    }
+                }
+            } else if (spill != Spill.NONE && idleNanos > spillAfter.toNanos() && session.lock.tryLock()) {
+                try {
+                    session.spill();
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to spill session {}", session.id, e);
+                } finally {
+                    session.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + key + " in config.properties: " + value, e);
+        }
+    }
+
+    private static int estimateTokens(Message message) {
+        long chars = 0;
+        for (ContentBlock block : message.content()) {
+            if (block.text() != null) {
+                chars += block.text().length();
+            } else if (block.toolUse() != null) {
+                chars += block.toolUse().name().length() + chars(block.toolUse().input());
+            } else if (block.toolResult() != null) {
+                for (ToolResultContentBlock result : block.toolResult().content()) {
+                    chars += result.text() != null ? result.text().length() : chars(result.json());
+                }
+            }
+        }
+        return (int) ((chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+    }
+
+    private static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * @return the approximate length of {@code document} as JSON
+     */
+    private static long chars(Document document) {
+        if (document == null || document.isNull()) {
+            return 4;
+        }
+        if (document.isMap()) {
+            long chars = 2;
+            for (Map.Entry<String, Document> field : document.asMap().entrySet()) {
+                chars += field.getKey().length() + 4 + chars(field.getValue());
+            }
+            return chars;
+        }
+        if (document.isList()) {
+            long chars = 2;
+            for (Document element : document.asList()) {
+                chars += chars(element) + 1;
+            }
+            return chars;
+        }
+        if (document.isString()) {
+            return document.asString().length() + 2;
+        }
+        return document.isBoolean() ? 5 : document.asNumber().stringValue().length();
+    }
+
+    private static long tokens(Integer count) {
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * The history of one conversation. Turns of a session run one at a time: {@link #begin} waits
+     * until the previous turn is closed.
+     */
+    public final class Session {
+        private final String id;
+        private final ReentrantLock lock = new ReentrantLock();
+        private List<SystemContentBlock> system = Collections.emptyList();
+        private int systemTokens;
+        private String summary;
+        // null while spilled; tokens.get(i) is the estimate of messages.get(i)
+        private List<Message> messages = new ArrayList<>();
+        private List<Integer> tokens = new ArrayList<>();
+        // Tools, framing and estimation error, learned from the reported prompt size
+        private int overheadTokens;
+        // Messages covered by the checkpoint the previous request wrote
+        private int cachedMessages;
+        private boolean unspillable;
+        // Set once the session has left the store, under both the lock and the map entry
+        private boolean removed;
+        private ByteBuffer offHeap;
+        private Path file;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private long requests;
+        private long inputTokens;
+        private long outputTokens;
+        private long cacheReadInputTokens;
+        private long cacheWriteInputTokens;
+        private long compactions;
+        private long droppedMessages;
+        private long spills;
+
+        private Session(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Sets the system prompt sent with every turn. Changing it invalidates the cached prefix.
+         */
+        public void system(String prompt) {
+            lock.lock();
+            try {
+                system = prompt == null || prompt.isEmpty()
+                        ? Collections.<SystemContentBlock>emptyList()
+                        : Collections.singletonList(SystemContentBlock.fromText(prompt));
+                systemTokens = estimateTokens(prompt);
+                cachedMessages = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Adds {@code userMessage} to the history, compacting it if needed, and prepares the next
+         * request. The session stays locked until the returned turn is closed; a turn closed without
+         * {@link Turn#complete} takes the message back out.
+         *
+         * @throws IllegalStateException if the session was removed or expired; look it up again
+         */
+        public Turn begin(Message userMessage) {
+            lock.lock();
+            boolean added = false;
+            try {
+                if (removed) {
+                    throw new IllegalStateException("Session " + id + " was removed from the store");
+                }
+                restore();
+                messages.add(userMessage);
+                tokens.add(estimateTokens(userMessage));
+                added = true;
+                unspillable = false;
+                lastUsedNanos = System.nanoTime();
+                if (promptTokens(0) > tokenBudget) {
+                    compact();
+                }
+                return new Turn(this, systemBlocks(), requestMessages());
+            } catch (RuntimeException | Error e) {
+                if (added) {
+                    rollBack(messages.size());
+                }
+                lock.unlock();
+                throw e;
+            }
+        }
+
+        /**
+         * @return a copy of the history, without cache checkpoints
+         */
+        public List<Message> history() {
+            lock.lock();
+            try {
+                restore();
+                return new ArrayList<>(messages);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the summary of the turns dropped so far, or {@code null}
+         */
+        public String summary() {
+            lock.lock();
+            try {
+                return summary;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public Stats stats() {
+            lock.lock();
+            try {
+                return new Stats(requests, inputTokens, outputTokens, cacheReadInputTokens, cacheWriteInputTokens,
+                        compactions, droppedMessages, spills);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the estimated prompt size of the messages from {@code from} on, with tools and system prompt
+         */
+        private long promptTokens(int from) {
+            long total = overheadTokens + systemTokens + estimateTokens(summary);
+            for (int i = from; i < tokens.size(); i++) {
+                total += tokens.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * Drops the oldest turns until the prompt is under the compaction target. Cuts are made only
+         * before a user message that starts a turn, so the history still starts with a user message
+         * and every tool result follows its tool use.
+         */
+        private void compact() {
+            long target = (long) tokenBudget * compactTargetPercent / 100;
+            int last = messages.size() - 1;
+            int cut = last;
+            for (int i = 1; i < last; i++) {
+                if (startsTurn(messages.get(i)) && promptTokens(i) <= target) {
+                    cut = i;
+                    break;
+                }
+            }
+            List<Message> dropped = new ArrayList<>(messages.subList(0, cut));
+            if (summarizer != null) {
+                summary = summarizer.summarize(summary, Collections.unmodifiableList(dropped));
+            }
+            messages.subList(0, cut).clear();
+            tokens.subList(0, cut).clear();
+            cachedMessages = 0;
+            compactions++;
+            droppedMessages += cut;
+            logger.debug("Session {}: dropped {} messages, about {} prompt tokens left", id, cut, promptTokens(0));
+            if (promptTokens(0) > tokenBudget) {
+                logger.warn("Session {}: the last message alone exceeds the token budget of {}", id, tokenBudget);
+            }
+        }
+
+        private boolean startsTurn(Message message) {
+            if (message.role() != ConversationRole.USER) {
+                return false;
+            }
+            for (ContentBlock block : message.content()) {
+                if (block.toolResult() != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private List<SystemContentBlock> systemBlocks() {
+            List<SystemContentBlock> blocks = new ArrayList<>(system.size() + 2);
+            blocks.addAll(system);
+            if (summary != null) {
+                blocks.add(SystemContentBlock.fromText("Summary of the earlier conversation:\n" + summary));
+            }
+            if (promptCache && !blocks.isEmpty()
+                    && overheadTokens + systemTokens + estimateTokens(summary) >= minCacheTokens) {
+                blocks.add(SYSTEM_CACHE_POINT);
+            }
+            return blocks;
+        }
+
+        private List<Message> requestMessages() {
+            List<Message> request = new ArrayList<>(messages);
+            if (!promptCache) {
+                return request;
+            }
+            int last = request.size() - 1;
+            long prefixTokens = overheadTokens + systemTokens + estimateTokens(summary);
+            for (int i = 0; i <= last; i++) {
+                prefixTokens += tokens.get(i);
+                boolean previousEnd = i == cachedMessages - 1 && i < last;
+                if ((previousEnd || i == last) && prefixTokens >= minCacheTokens) {
+                    request.set(i, withCachePoint(request.get(i)));
+                }
+            }
+            return request;
+        }
+
+        private Message withCachePoint(Message message) {
+            List<ContentBlock> content = new ArrayList<>(message.content().size() + 1);
+            content.addAll(message.content());
+            content.add(CACHE_POINT);
+            return message.toBuilder().content(content).build();
+        }
+
+        private void complete(int requestSize, AgentLoop.AgentResult result) {
+            List<Message> replies = result.messages().subList(requestSize, result.messages().size());
+            for (Message reply : replies) {
+                messages.add(reply);
+                tokens.add(estimateTokens(reply));
+            }
+            List<TokenUsage> usages = result.usages();
+            for (int i = 0; i < usages.size(); i++) {
+                TokenUsage usage = usages.get(i);
+                long read = tokens(usage.cacheReadInputTokens());
+                long write = tokens(usage.cacheWriteInputTokens());
+                requests++;
+                inputTokens += tokens(usage.inputTokens());
+                outputTokens += tokens(usage.outputTokens());
+                cacheReadInputTokens += read;
+                cacheWriteInputTokens += write;
+                if (i == 0) {
+                    // The first request of the turn sent exactly the history up to the new user message.
+                    long reported = tokens(usage.inputTokens()) + read + write;
+                    long estimated = promptTokens(0) - overheadTokens;
+                    for (int j = requestSize; j < tokens.size(); j++) {
+                        estimated -= tokens.get(j);
+                    }
+                    overheadTokens = (int) Math.max(0, reported - estimated);
+                }
+            }
+            cachedMessages = requestSize;
+            lastUsedNanos = System.nanoTime();
+        }
+
+        private void rollBack(int requestSize) {
+            messages.subList(requestSize - 1, messages.size()).clear();
+            tokens.subList(requestSize - 1, tokens.size()).clear();
+            lastUsedNanos = System.nanoTime();
+        }
+
+        private void spill() {
+            if (messages == null || messages.isEmpty() || unspillable) {
+                return;
+            }
+            byte[] encoded;
+            try {
+                encoded = MessageCodec.encode(messages);
+            } catch (IllegalArgumentException e) {
+                logger.debug("Session {} stays in heap: {}", id, e.getMessage());
+                unspillable = true;
+                return;
+            }
+            if (spill == Spill.FILE) {
+                try {
+                    file = Files.createTempFile(spillDirectory, "session-", ".json.deflate");
+                    Files.write(file, encoded);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                offHeap = ByteBuffer.allocateDirect(encoded.length).put(encoded).flip();
+            }
+            messages = null;
+            tokens = null;
+            spills++;
+            logger.debug("Session {}: spilled {} bytes", id, encoded.length);
+        }
+
+        private void restore() {
+            if (messages != null) {
+                return;
+            }
+            try (InputStream in = file != null
+                    ? Files.newInputStream(file)
+                    : new ByteBufferBackedInputStream(offHeap.duplicate())) {
+                messages = MessageCodec.decode(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read spilled session " + id, e);
+            }
+            tokens = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                tokens.add(estimateTokens(message));
+            }
+            release();
+        }
+
+        private void release() {
+            offHeap = null;
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete {}", file, e);
+                }
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * One request/response exchange of a session, holding the session's lock until closed.
+     */
+    public static final class Turn implements AutoCloseable {
+        private final Session session;
+        private final List<SystemContentBlock> system;
+        private final List<Message> messages;
+        private boolean completed;
+
+        private Turn(Session session, List<SystemContentBlock> system, List<Message> messages) {
+            this.session = session;
+            this.system = Collections.unmodifiableList(system);
+            this.messages = Collections.unmodifiableList(messages);
+        }
+
+        /**
+         * @return the system prompt to send, with a cache checkpoint
+         */
+        public List<SystemContentBlock> system() {
+            return system;
+        }
+
+        /**
+         * @return the history to send, ending with the new user message, with cache checkpoints
+         */
+        public List<Message> messages() {
+            return messages;
+        }
+
+        /**
+         * Stores the model's replies and the token usage of the run.
+         *
+         * @param result the run that was started with {@link #system()} and {@link #messages()}
+         */
+        public void complete(AgentLoop.AgentResult result) {
+            if (completed) {
+                throw new IllegalStateException("Turn already completed");
+            }
+            session.complete(messages.size(), result);
+            completed = true;
+        }
+
+        @Override
+        public void close() {
+            if (!session.lock.isHeldByCurrentThread()) {
+                return;
+            }
+            try {
+                if (!completed) {
+                    session.rollBack(messages.size());
+                }
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Token counts of a session as reported by the service.
+     */
+    public static final class Stats {
+        private final long requests;
+        private final long inputTokens;
+        private final long outputTokens;
+        private final long cacheReadInputTokens;
+        private final long cacheWriteInputTokens;
+        private final long compactions;
+        private final long droppedMessages;
+        private final long spills;
+
+        Stats(long requests, long inputTokens, long outputTokens, long cacheReadInputTokens,
+              long cacheWriteInputTokens, long compactions, long droppedMessages, long spills) {
+            this.requests = requests;
+            this.inputTokens = inputTokens;
+            this.outputTokens = outputTokens;
+            this.cacheReadInputTokens = cacheReadInputTokens;
+            this.cacheWriteInputTokens = cacheWriteInputTokens;
+            this.compactions = compactions;
+            this.droppedMessages = droppedMessages;
+            this.spills = spills;
+        }
+
+        public long requests() {
+            return requests;
+        }
+
+        /** @return prompt tokens that were neither read from nor written to the cache */
+        public long inputTokens() {
+            return inputTokens;
+        }
+
+        public long outputTokens() {
+            return outputTokens;
+        }
+
+        public long cacheReadInputTokens() {
+            return cacheReadInputTokens;
+        }
+
+        public long cacheWriteInputTokens() {
+            return cacheWriteInputTokens;
+        }
+
+        public long compactions() {
+            return compactions;
+        }
+
+        public long droppedMessages() {
+            return droppedMessages;
+        }
+
+        public long spills() {
+            return spills;
+        }
+
+        /**
+         * @return the share of prompt tokens read from the cache, between 0 and 1
+         */
+        public double cacheHitRate() {
+            long prompt = inputTokens + cacheReadInputTokens + cacheWriteInputTokens;
+            return prompt == 0 ? 0 : (double) cacheReadInputTokens / prompt;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d inputTokens=%d outputTokens=%d cacheReadInputTokens=%d"
+                            + " cacheWriteInputTokens=%d cacheHitRate=%.1f%% compactions=%d droppedMessages=%d"
+                            + " spills=%d",
+                    requests, inputTokens, outputTokens, cacheReadInputTokens, cacheWriteInputTokens,
+                    cacheHitRate() * 100, compactions, droppedMessages, spills);
+        }
+    }
+
+    public static final class Builder {
+        private int tokenBudget = 100_000;
+        private int compactTargetPercent = 60;
+        private int minCacheTokens = 1024;
+        private boolean promptCache = true;
+        private Spill spill = Spill.OFF_HEAP;
+        private Path spillDirectory;
+        private Duration spillAfter = Duration.ofMinutes(5);
+        private Duration sessionTtl = Duration.ofDays(1);
+        private Summarizer summarizer;
+
+        private Builder() {
+        }
+
+        /**
+         * Estimated prompt tokens above which old turns are dropped.
+         */
+        public Builder tokenBudget(int tokenBudget) {
+            this.tokenBudget = tokenBudget;
+            return this;
+        }
+
+        /**
+         * Share of the budget the prompt is compacted down to.
+         */
+        public Builder compactTargetPercent(int compactTargetPercent) {
+            this.compactTargetPercent = compactTargetPercent;
+            return this;
+        }
+
+        /**
+         * Smallest prefix, in tokens, worth a cache checkpoint; 1024 for most Claude models, 2048
+         * for Claude 3.5 Haiku.
+         */
+        public Builder minCacheTokens(int minCacheTokens) {
+            this.minCacheTokens = minCacheTokens;
+            return this;
+        }
+
+        /**
+         * Whether to send cache checkpoints; turn off for models without prompt caching.
+         */
+        public Builder promptCache(boolean promptCache) {
+            this.promptCache = promptCache;
+            return this;
+        }
+
+        public Builder spill(Spill spill) {
+            this.spill = spill;
+            return this;
+        }
+
+        /**
+         * Directory of the files written with {@link Spill#FILE}.
+         */
+        public Builder spillDirectory(Path spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        public Builder spillAfter(Duration spillAfter) {
+            this.spillAfter = spillAfter;
+            return this;
+        }
+
+        public Builder sessionTtl(Duration sessionTtl) {
+            this.sessionTtl = sessionTtl;
+            return this;
+        }
+
+        /**
+         * Summarizes dropped turns; without one they are discarded.
+         */
+        public Builder summarizer(Summarizer summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        public ConversationStore build() {
+            return new ConversationStore(this);
+        }
+    }
+}
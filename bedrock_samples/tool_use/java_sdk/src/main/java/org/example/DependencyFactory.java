@@ -1,22 +1,343 @@
 
 package org.example;
 
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
 import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtHttpClient;
+import software.amazon.awssdk.http.crt.TcpKeepAliveConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
 /**
  * The module containing all dependencies required by the {@link Handler}.
+ * <p>
+ * {@code config.properties} is read once and a single sync and async client are shared by every
+ * handler in the JVM; they are closed by a shutdown hook.
  */
 public class DependencyFactory {
 
+    private static final Properties CONFIG = loadProperties();
+
+    private static SdkHttpClient httpClient;
+    private static BedrockRuntimeClient bedrockRuntimeClient;
+    private static BedrockRuntimeAsyncClient bedrockRuntimeAsyncClient;
+    private static MetricsSink metricsSink;
+    private static ExecutorService toolExecutor;
+    private static ExecutorService handlerExecutor;
+    private static AdmissionController admissionController;
+    private static ResponseCache responseCache;
+    private static ConversationStore conversationStore;
+    private static OutputSink outputSink;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(DependencyFactory::close, "sdk-client-shutdown"));
+    }
+
     private DependencyFactory() {}
 
     /**
-     * @return an instance of BedrockRuntimeClient
+     * @return the shared instance of BedrockRuntimeClient
+     */
+    public static synchronized BedrockRuntimeClient bedrockRuntimeClient() {
+        if (bedrockRuntimeClient == null) {
+            httpClient = buildHttpClient();
+            bedrockRuntimeClient = BedrockRuntimeClient.builder()
+                           .httpClient(httpClient)
+                           .overrideConfiguration(overrideConfiguration())
+                           .build();
+        }
+        return bedrockRuntimeClient;
+    }
+
+    /**
+     * @return the shared instance of BedrockRuntimeAsyncClient, used for ConverseStream
+     */
+    public static synchronized BedrockRuntimeAsyncClient bedrockRuntimeAsyncClient() {
+        if (bedrockRuntimeAsyncClient == null) {
+            bedrockRuntimeAsyncClient = BedrockRuntimeAsyncClient.builder()
+                           .httpClientBuilder(asyncHttpClientBuilder())
+                           .overrideConfiguration(asyncOverrideConfiguration())
+                           .build();
+        }
+        return bedrockRuntimeAsyncClient;
+    }
+
+    /**
+     * @return the shared sink that receives invocation latencies
+     */
+    public static synchronized MetricsSink metricsSink() {
+        if (metricsSink == null) {
+            metricsSink = new HdrMetricsSink(
+                    Boolean.parseBoolean(CONFIG.getProperty("metrics.jmx", "true").trim()));
+        }
+        return metricsSink;
+    }
+
+    /**
+     * @return the admission controller shared by the sync and async clients
+     */
+    public static synchronized AdmissionController admissionController() {
+        if (admissionController == null) {
+            admissionController = AdmissionController.fromProperties(CONFIG);
+        }
+        return admissionController;
+    }
+
+    /**
+     * @return the controller that admits calls on {@link #bedrockRuntimeAsyncClient()}, or
+     *         {@code null} when {@code throttle.enabled} is off. The async client does not admit
+     *         calls itself; callers start them through {@link AdmissionController#admitAsync}.
+     */
+    public static AdmissionController asyncAdmissionController() {
+        return throttleEnabled() ? admissionController() : null;
+    }
+
+    /**
+     * @return the shared cache of model answers
+     */
+    public static synchronized ResponseCache responseCache() {
+        if (responseCache == null) {
+            responseCache = ResponseCache.fromProperties(CONFIG, "tool_use");
+        }
+        return responseCache;
+    }
+
+    /**
+     * @return the shared store of multi-turn conversations
      */
-    public static BedrockRuntimeClient bedrockRuntimeClient() {
-        return BedrockRuntimeClient.builder()
-                       .httpClientBuilder(ApacheHttpClient.builder())
-                       .build();
+    public static synchronized ConversationStore conversationStore() {
+        if (conversationStore == null) {
+            String summaryModelId = CONFIG.getProperty("conversation.summaryModelId",
+                    "anthropic.claude-3-haiku-20240307-v1:0").trim();
+            conversationStore = ConversationStore.fromProperties(CONFIG,
+                    ConversationStore.modelSummarizer(bedrockRuntimeClient(), summaryModelId));
+        }
+        return conversationStore;
+    }
+
+    /**
+     * @return where streamed text and conversation events go, as configured by {@code output.sink}
+     */
+    public static synchronized OutputSink outputSink() {
+        if (outputSink == null) {
+            String sink = CONFIG.getProperty("output.sink", "console").trim();
+            int capacity = intProperty("output.queueCapacity", 65_536);
+            if ("console".equalsIgnoreCase(sink)) {
+                outputSink = AsyncOutputSink.toConsole(capacity);
+            } else if ("file".equalsIgnoreCase(sink)) {
+                String file = CONFIG.getProperty("output.file", "output.log").trim();
+                try {
+                    outputSink = AsyncOutputSink.toFile(Paths.get(file), capacity);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot open output.file " + file, e);
+                }
+            } else if ("none".equalsIgnoreCase(sink)) {
+                outputSink = OutputSink.NONE;
+            } else {
+                throw new IllegalStateException("Invalid output.sink in config.properties: " + sink);
+            }
+        }
+        return outputSink;
+    }
+
+    /**
+     * @return which model outputs are logged, as configured by {@code log.payload.*}
+     */
+    public static PayloadLog payloadLog() {
+        return PayloadLog.fromProperties(CONFIG);
+    }
+
+    /**
+     * @return the shared executor that runs tool calls concurrently
+     */
+    public static synchronized ExecutorService toolExecutor() {
+        if (toolExecutor == null) {
+            toolExecutor = executor("tool-executor-", Executors::newCachedThreadPool);
+        }
+        return toolExecutor;
+    }
+
+    /**
+     * @return the shared executor that runs {@link AsyncHandler} calls
+     */
+    public static synchronized ExecutorService handlerExecutor() {
+        if (handlerExecutor == null) {
+            int platformThreads = intProperty("execution.platformThreads", 200);
+            handlerExecutor = executor("handler-", factory -> Executors.newFixedThreadPool(platformThreads, factory));
+        }
+        return handlerExecutor;
+    }
+
+    /**
+     * Closes the shared clients; the next call to {@link #bedrockRuntimeClient()} or
+     * {@link #bedrockRuntimeAsyncClient()} builds a new one.
+     */
+    public static synchronized void close() {
+        if (conversationStore != null) {
+            conversationStore.close();
+            conversationStore = null;
+        }
+        if (bedrockRuntimeAsyncClient != null) {
+            bedrockRuntimeAsyncClient.close();
+            bedrockRuntimeAsyncClient = null;
+        }
+        if (bedrockRuntimeClient != null) {
+            bedrockRuntimeClient.close();
+            bedrockRuntimeClient = null;
+        }
+        // The client does not close an HTTP client it was given.
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
+        // Streams have ended or been cut off with their clients; write out what they produced.
+        if (outputSink != null) {
+            outputSink.close();
+            outputSink = null;
+        }
+    }
+
+    /**
+     * A virtual thread per task, or with {@code execution.threads=platform} the given pool of
+     * daemon platform threads.
+     */
+    private static ExecutorService executor(String namePrefix, Function<ThreadFactory, ExecutorService> platformPool) {
+        String threads = CONFIG.getProperty("execution.threads", "virtual").trim();
+        if ("platform".equalsIgnoreCase(threads)) {
+            return platformPool.apply(Thread.ofPlatform().name(namePrefix, 1).daemon(true).factory());
+        }
+        if ("virtual".equalsIgnoreCase(threads)) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+        }
+        throw new IllegalStateException("Invalid execution.threads in config.properties: " + threads);
+    }
+
+    private static ClientOverrideConfiguration overrideConfiguration() {
+        if (!throttleEnabled()) {
+            return ClientOverrideConfiguration.builder().build();
+        }
+        return admissionController().overrideConfiguration();
+    }
+
+    private static ClientOverrideConfiguration asyncOverrideConfiguration() {
+        if (!throttleEnabled()) {
+            return ClientOverrideConfiguration.builder().build();
+        }
+        return admissionController().asyncOverrideConfiguration();
+    }
+
+    private static boolean throttleEnabled() {
+        return Boolean.parseBoolean(CONFIG.getProperty("throttle.enabled", "true").trim());
+    }
+
+    private static SdkHttpClient buildHttpClient() {
+        int maxConnections = intProperty("http.maxConnections", 50);
+        int connectionTtlMillis = intProperty("http.connectionTtlMillis", 0);
+        Duration connectionMaxIdle = Duration.ofMillis(intProperty("http.connectionMaxIdleMillis", 60_000));
+        boolean tcpKeepAlive = Boolean.parseBoolean(CONFIG.getProperty("http.tcpKeepAlive", "true").trim());
+
+        String client = CONFIG.getProperty("http.client", "").trim();
+        if (client.isEmpty()) {
+            boolean virtualThreads = "virtual".equalsIgnoreCase(CONFIG.getProperty("execution.threads", "virtual").trim());
+            client = virtualThreads ? "urlconnection" : "apache";
+        }
+        if ("urlconnection".equalsIgnoreCase(client)) {
+            // Connection reuse is governed by the JDK's http.keepAlive and http.maxConnections system properties.
+            return UrlConnectionHttpClient.builder()
+                    .connectionTimeout(Duration.ofMillis(intProperty("http.connectionTimeoutMillis", 2_000)))
+                    .socketTimeout(Duration.ofMillis(intProperty("http.socketTimeoutMillis", 30_000)))
+                    .build();
+        }
+        if ("crt".equalsIgnoreCase(client)) {
+            // The CRT client has no connection TTL; idle connections are still reaped.
+            AwsCrtHttpClient.Builder builder = AwsCrtHttpClient.builder()
+                    .maxConcurrency(maxConnections)
+                    .connectionMaxIdleTime(connectionMaxIdle);
+            if (tcpKeepAlive) {
+                builder.tcpKeepAliveConfiguration(crtKeepAlive());
+            }
+            return builder.build();
+        }
+        ApacheHttpClient.Builder builder = ApacheHttpClient.builder()
+                .maxConnections(maxConnections)
+                .connectionMaxIdleTime(connectionMaxIdle)
+                .tcpKeepAlive(tcpKeepAlive);
+        if (connectionTtlMillis > 0) {
+            builder.connectionTimeToLive(Duration.ofMillis(connectionTtlMillis));
+        }
+        return builder.build();
+    }
+
+    private static SdkAsyncHttpClient.Builder<?> asyncHttpClientBuilder() {
+        int maxConcurrency = intProperty("http.async.maxConcurrency", 50);
+        int connectionTtlMillis = intProperty("http.connectionTtlMillis", 0);
+        Duration connectionMaxIdle = Duration.ofMillis(intProperty("http.connectionMaxIdleMillis", 60_000));
+        boolean tcpKeepAlive = Boolean.parseBoolean(CONFIG.getProperty("http.tcpKeepAlive", "true").trim());
+
+        if ("crt".equalsIgnoreCase(CONFIG.getProperty("http.client", "apache").trim())) {
+            AwsCrtAsyncHttpClient.Builder builder = AwsCrtAsyncHttpClient.builder()
+                    .maxConcurrency(maxConcurrency)
+                    .connectionMaxIdleTime(connectionMaxIdle);
+            if (tcpKeepAlive) {
+                builder.tcpKeepAliveConfiguration(crtKeepAlive());
+            }
+            return builder;
+        }
+        NettyNioAsyncHttpClient.Builder builder = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConcurrency)
+                .connectionMaxIdleTime(connectionMaxIdle)
+                .tcpKeepAlive(tcpKeepAlive);
+        if (connectionTtlMillis > 0) {
+            builder.connectionTimeToLive(Duration.ofMillis(connectionTtlMillis));
+        }
+        return builder;
+    }
+
+    private static TcpKeepAliveConfiguration crtKeepAlive() {
+        return TcpKeepAliveConfiguration.builder()
+                .keepAliveInterval(Duration.ofSeconds(intProperty("http.tcpKeepAliveIntervalSeconds", 30)))
+                .keepAliveTimeout(Duration.ofSeconds(intProperty("http.tcpKeepAliveTimeoutSeconds", 10)))
+                .build();
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = CONFIG.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + key + " in config.properties: " + value, e);
+        }
+    }
+
+    private static Properties loadProperties() {
+        Properties prop = new Properties();
+        try (InputStream input = DependencyFactory.class.getClassLoader().getResourceAsStream("config.properties")) {
+            // The file is optional; without it the client uses the defaults above.
+            if (input != null) {
+                prop.load(input);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load config.properties", e);
+        }
+        return prop;
     }
 }
@@ -1,13 +1,12 @@
 package org.example;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
 // package com.example.bedrockruntime.models.anthropicClaude;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 //import com.google.gson.Gson;
 //import com.google.gson.JsonObject;
@@ -17,36 +16,37 @@ import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
 import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
-import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
 import software.amazon.awssdk.services.bedrockruntime.model.Message;
-import software.amazon.awssdk.services.bedrockruntime.model.ToolSpecification;
-import software.amazon.awssdk.services.bedrockruntime.model.ToolInputSchema;
-import software.amazon.awssdk.services.bedrockruntime.model.ToolConfiguration;
-import software.amazon.awssdk.services.bedrockruntime.model.Tool;
-import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultContentBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 public class Handler {
+    private static final Logger logger = LoggerFactory.getLogger(Handler.class);
+    private static final int MAX_AGENT_TURNS = 8;
+    // A model with prompt caching; see conversation.promptCache in config.properties.
+    private static final String CHAT_MODEL_ID = "us.anthropic.claude-3-5-haiku-20241022-v1:0";
+
     private final BedrockRuntimeClient bedrockRuntimeClient;
+    private final MetricsSink metricsSink;
+    private final ToolRegistry toolRegistry;
+    private final ResponseCache responseCache;
+    private final ConversationStore conversationStore;
+    private final OutputSink outputSink;
+    private final PayloadLog payloadLog;
 
     public Handler() {
         bedrockRuntimeClient = DependencyFactory.bedrockRuntimeClient();
+        metricsSink = DependencyFactory.metricsSink();
+        toolRegistry = ToolCatalog.registerAnnotated(new ToolRegistry(), new WeatherTools());
+        responseCache = DependencyFactory.responseCache();
+        conversationStore = DependencyFactory.conversationStore();
+        outputSink = DependencyFactory.outputSink();
+        payloadLog = DependencyFactory.payloadLog();
     }
 
-	private Tool createWeatherQueryTool() throws JsonProcessingException {
-		String schema = "{\"type\":\"object\",\"properties\":{\"latitude\":{\"type\":\"string\",\"description\":\"纬度\"},\"longitude\":{\"type\":\"string\",\"description\":\"经度\"}},\"required\":[\"latitude\",\"longitude\"]}";
-		ObjectMapper objectMapper = new ObjectMapper();
-		Map<String, Object> schemaMap = objectMapper.readValue(schema, Map.class);
-
-		ToolSpecification toolSpec = ToolSpecification.builder()
-				.name("queryWeather")
-				.description("queryWeather")
-				.inputSchema(ToolInputSchema.builder().json(convertObjectToDocument(schemaMap)).build())
-				.build();
-
-		return Tool.fromToolSpec(toolSpec);
-	}
-
     public String converse(BedrockRuntimeClient bedrockRuntimeClient) {
 
         // Create a Bedrock Runtime client in the AWS Region you want to use.
@@ -64,77 +64,170 @@ public class Handler {
                 .role(ConversationRole.USER)
                 .build();
 
+        InferenceConfiguration inferenceConfig = InferenceConfiguration.builder()
+                .maxTokens(512)
+                .temperature(0.5F)
+                .topP(0.9F)
+                .build();
+
         try {
-			Tool tool = createWeatherQueryTool();
-            // Send the message with a basic inference configuration.
-            ConverseResponse response = bedrockRuntimeClient.converse(request -> request
-                    .modelId(modelId)
-                    .messages(message)
-                    .toolConfig(ToolConfiguration.builder().tools(tool).build())
-                    .inferenceConfig(config -> config
-                            .maxTokens(512)
-                            .temperature(0.5F)
-                            .topP(0.9F)));
-
-            // Retrieve the generated text from Bedrock's response object.
-            String responseText = response.output().message().content().get(0).text();
-			for(int i=0; i < response.output().message().content().size(); i++){
-				System.out.println(response.output().message().content().get(i).type());
-				System.out.println(response.output().message().content().get(i).toolUse());
-			}
-
-			System.out.println(responseText);
+            // Send the message with a basic inference configuration and answer tool calls
+            // until the model ends its turn. Repeated greedy (temperature 0) prompts are answered
+            // from the cache.
+            byte[] cached = cached(modelId, inputText, inferenceConfig, () -> {
+                AgentLoop agentLoop = new AgentLoop(bedrockRuntimeClient, toolRegistry,
+                        DependencyFactory.toolExecutor(), metricsSink, MAX_AGENT_TURNS);
+                AgentLoop.AgentResult result = agentLoop.run(modelId, Collections.singletonList(message),
+                        inferenceConfig);
+
+                if (payloadLog.sampled()) {
+                    logTurns(result.messages());
+                }
+				return result.text().getBytes(StandardCharsets.UTF_8);
+            });
+
+			String responseText = new String(cached, StandardCharsets.UTF_8);
+			outputSink.write(responseText + "\n");
 
             return responseText;
 
         } catch (SdkClientException e) {
-            System.err.printf("ERROR: Can't invoke '%s'. Reason: %s", modelId, e.getMessage());
+            logger.error("Can't invoke '{}'. Reason: {}", modelId, e.getMessage());
             throw new RuntimeException(e);
-        } catch (JsonProcessingException e) {
-			System.err.println("ERROR: Failed to create weather query tool");
-			throw new RuntimeException("Failed to create weather query tool", e);
-		}
+        }
     }
 
+    /**
+     * Same conversation as {@link #converse(BedrockRuntimeClient)} over ConverseStream: text is printed
+     * as it arrives and each tool starts as soon as the model has finished writing its input.
+     */
+    public String converseStream() {
+        String modelId = "anthropic.claude-3-haiku-20240307-v1:0";
+        String inputText = "查询今天的天气";
+        Message message = Message.builder()
+                .content(ContentBlock.fromText(inputText))
+                .role(ConversationRole.USER)
+                .build();
+        InferenceConfiguration inferenceConfig = InferenceConfiguration.builder()
+                .maxTokens(512)
+                .temperature(0.5F)
+                .topP(0.9F)
+                .build();
 
-    @SuppressWarnings("unchecked")
-	public static Document convertObjectToDocument(Object value) {
-		if (value == null) {
-			return Document.fromNull();
-		} else if (value instanceof String) {
-			return Document.fromString((String) value);
-		} else if (value instanceof Boolean) {
-			return Document.fromBoolean((Boolean) value);
-		} else if (value instanceof Integer) {
-			return Document.fromNumber((Integer) value);
-		} else if (value instanceof Long) {
-			return Document.fromNumber((Long) value);
-		} else if (value instanceof Float) {
-			return Document.fromNumber((Float) value);
-		} else if (value instanceof Double) {
-			return Document.fromNumber((Double) value);
-		} else if (value instanceof BigDecimal) {
-			return Document.fromNumber((BigDecimal) value);
-		} else if (value instanceof BigInteger) {
-			return Document.fromNumber((BigInteger) value);
-		} else if (value instanceof List) {
-			List<Document> documentList = ((List<?>) value).stream()
-					.map(Handler::convertObjectToDocument)
-					.collect(Collectors.toList());
-			return Document.fromList(documentList);
-		} else if (value instanceof Map) {
-			return convertMapToDocument((Map<String, Object>) value);
-		} else {
-			throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getSimpleName());
-		}
-	}
-	private static Document convertMapToDocument(Map<String, Object> value) {
-		Map<String, Document> attr = value.entrySet().stream()
-				.collect(Collectors.toMap(e -> e.getKey(), e -> convertObjectToDocument(e.getValue())));
-		return Document.fromMap(attr);
-	}
+        StreamingAgentLoop agentLoop = new StreamingAgentLoop(DependencyFactory.bedrockRuntimeAsyncClient(),
+                DependencyFactory.asyncAdmissionController(), toolRegistry, DependencyFactory.toolExecutor(), metricsSink, MAX_AGENT_TURNS);
+        try {
+            AtomicBoolean streamed = new AtomicBoolean();
+            byte[] cached = cached(modelId, inputText, inferenceConfig, () -> {
+                streamed.set(true);
+                // Deltas arrive on the event loop; the sink queues them without blocking it.
+                return agentLoop.run(modelId, Collections.singletonList(message), inferenceConfig, outputSink::write)
+                        .join().text().getBytes(StandardCharsets.UTF_8);
+            });
+            String responseText = new String(cached, StandardCharsets.UTF_8);
+            // A cached answer arrives in one piece.
+            outputSink.write(streamed.get() ? "\n" : responseText + "\n");
+            return responseText;
+        } catch (CompletionException e) {
+            logger.error("Can't invoke '{}'. Reason: {}", modelId, e.getCause().getMessage());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Answers {@code inputText} as the next turn of session {@code sessionId}. The whole history is
+     * resent with prompt-cache checkpoints, so the turns the model has already seen are read from the
+     * cache, and the oldest turns are dropped once the prompt outgrows {@code conversation.tokenBudget}.
+     * Turns of one session run one after the other.
+     */
+    public String chat(String sessionId, String inputText) {
+        Message message = Message.builder()
+                .content(ContentBlock.fromText(inputText))
+                .role(ConversationRole.USER)
+                .build();
+        InferenceConfiguration inferenceConfig = InferenceConfiguration.builder()
+                .maxTokens(512)
+                .temperature(0.5F)
+                .topP(0.9F)
+                .build();
+
+        AgentLoop agentLoop = new AgentLoop(bedrockRuntimeClient, toolRegistry,
+                DependencyFactory.toolExecutor(), metricsSink, MAX_AGENT_TURNS);
+        try (ConversationStore.Turn turn = conversationStore.session(sessionId).begin(message)) {
+            AgentLoop.AgentResult result = agentLoop.run(CHAT_MODEL_ID, turn.system(), turn.messages(),
+                    inferenceConfig);
+            turn.complete(result);
+            return result.text();
+        }
+    }
+
+    public ConversationStore conversationStore() {
+        return conversationStore;
+    }
+
+    public ResponseCache responseCache() {
+        return responseCache;
+    }
 
     public void sendRequest() {
         converse(bedrockRuntimeClient);
     }
+
+    public void sendStreamingRequest() {
+        converseStream();
+    }
+
+    /**
+     * Writes one event per content block of the conversation: its role, type and content, cut to
+     * {@code log.payload.maxChars}.
+     */
+    private void logTurns(List<Message> messages) {
+        for (Message turn : messages) {
+            for (ContentBlock block : turn.content()) {
+                String content;
+                if (block.text() != null) {
+                    content = block.text();
+                } else if (block.toolUse() != null) {
+                    content = block.toolUse().name() + " " + block.toolUse().input();
+                } else if (block.toolResult() != null) {
+                    StringBuilder result = new StringBuilder(block.toolResult().statusAsString());
+                    for (ToolResultContentBlock part : block.toolResult().content()) {
+                        String text = part.text() != null ? part.text() : String.valueOf(part.json());
+                        result.append(' ').append(text);
+                    }
+                    content = result.toString();
+                } else {
+                    content = "";
+                }
+                outputSink.event("block", "role", turn.role(), "type", block.type(),
+                        "content", payloadLog.abbreviate(content));
+            }
+        }
+    }
+
+    /**
+     * Answers from the response cache, unless the request samples with a temperature above zero:
+     * such an answer is one draw of many, and replaying it would hide the variation the caller
+     * asked for.
+     */
+    private byte[] cached(String modelId, String inputText, InferenceConfiguration inferenceConfig,
+                          Supplier<byte[]> loader) {
+        Float temperature = inferenceConfig.temperature();
+        if (temperature != null && temperature > 0) {
+            return loader.get();
+        }
+        return responseCache.get(cacheKey(modelId, inputText, inferenceConfig), loader);
+    }
+
+    /**
+     * Answers depend on the tools the model may call, so their names are part of the key.
+     */
+    private String cacheKey(String modelId, String inputText, InferenceConfiguration inferenceConfig) {
+        StringBuilder target = new StringBuilder(modelId);
+        for (ToolRegistry.RegisteredTool tool : toolRegistry.tools()) {
+            target.append('|').append(tool.spec().name());
+        }
+        return ResponseCache.key(target.toString(), inputText,
+                inferenceConfig.maxTokens(), inferenceConfig.temperature(), inferenceConfig.topP());
+    }
 }
@@ -0,0 +1,184 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultStatus;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Serializes conversation messages to deflated JSON, so that {@link ConversationStore} can move
+ * idle sessions out of the heap.
+ * <p>
+ * Text, tool use and tool result blocks (with text or JSON content) are supported, which covers
+ * every message an {@link AgentLoop} produces. Other block types, such as images, are rejected and
+ * such sessions stay in heap.
+ */
+final class MessageCodec {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(JSON_FACTORY);
+
+    private MessageCodec() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if a message holds a block type that is not supported
+     */
+    static byte[] encode(List<Message> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream out = new DeflaterOutputStream(bytes, deflater);
+             JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartArray();
+            for (Message message : messages) {
+                writeMessage(json, message);
+            }
+            json.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Message> decode(InputStream deflated) {
+        JsonNode tree;
+        try (InputStream in = new InflaterInputStream(deflated)) {
+            tree = OBJECT_MAPPER.readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Message> messages = new ArrayList<>(tree.size());
+        for (JsonNode message : tree) {
+            List<ContentBlock> content = new ArrayList<>(message.path("content").size());
+            for (JsonNode block : message.path("content")) {
+                content.add(readBlock(block));
+            }
+            messages.add(Message.builder()
+                    .role(ConversationRole.fromValue(message.path("role").asText()))
+                    .content(content)
+                    .build());
+        }
+        return messages;
+    }
+
+    private static void writeMessage(JsonGenerator json, Message message) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("role", message.roleAsString());
+        json.writeArrayFieldStart("content");
+        for (ContentBlock block : message.content()) {
+            json.writeStartObject();
+            if (block.text() != null) {
+                json.writeStringField("text", block.text());
+            } else if (block.toolUse() != null) {
+                ToolUseBlock toolUse = block.toolUse();
+                json.writeObjectFieldStart("toolUse");
+                json.writeStringField("toolUseId", toolUse.toolUseId());
+                json.writeStringField("name", toolUse.name());
+                json.writeFieldName("input");
+                writeDocument(json, toolUse.input());
+                json.writeEndObject();
+            } else if (block.toolResult() != null) {
+                ToolResultBlock toolResult = block.toolResult();
+                json.writeObjectFieldStart("toolResult");
+                json.writeStringField("toolUseId", toolResult.toolUseId());
+                if (toolResult.status() != null) {
+                    json.writeStringField("status", toolResult.statusAsString());
+                }
+                json.writeArrayFieldStart("content");
+                for (ToolResultContentBlock result : toolResult.content()) {
+                    json.writeStartObject();
+                    if (result.text() != null) {
+                        json.writeStringField("text", result.text());
+                    } else if (result.json() != null) {
+                        json.writeFieldName("json");
+                        writeDocument(json, result.json());
+                    } else {
+                        throw new IllegalArgumentException("Unsupported tool result content: " + result.type());
+                    }
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            } else {
+                throw new IllegalArgumentException("Unsupported content block: " + block.type());
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static ContentBlock readBlock(JsonNode block) {
+        if (block.has("text")) {
+            return ContentBlock.fromText(block.get("text").asText());
+        }
+        if (block.has("toolUse")) {
+            JsonNode toolUse = block.get("toolUse");
+            return ContentBlock.fromToolUse(ToolUseBlock.builder()
+                    .toolUseId(toolUse.path("toolUseId").asText())
+                    .name(toolUse.path("name").asText())
+                    .input(ToolCatalog.toDocument(toolUse.path("input")))
+                    .build());
+        }
+        JsonNode toolResult = block.path("toolResult");
+        List<ToolResultContentBlock> content = new ArrayList<>(toolResult.path("content").size());
+        for (JsonNode result : toolResult.path("content")) {
+            content.add(result.has("text")
+                    ? ToolResultContentBlock.fromText(result.get("text").asText())
+                    : ToolResultContentBlock.fromJson(ToolCatalog.toDocument(result.path("json"))));
+        }
+        ToolResultBlock.Builder builder = ToolResultBlock.builder()
+                .toolUseId(toolResult.path("toolUseId").asText())
+                .content(content);
+        if (toolResult.has("status")) {
+            builder.status(ToolResultStatus.fromValue(toolResult.get("status").asText()));
+        }
+        return ContentBlock.fromToolResult(builder.build());
+    }
+
+    private static void writeDocument(JsonGenerator json, Document document) throws IOException {
+        if (document == null || document.isNull()) {
+            json.writeNull();
+        } else if (document.isMap()) {
+            json.writeStartObject();
+            for (Map.Entry<String, Document> field : document.asMap().entrySet()) {
+                json.writeFieldName(field.getKey());
+                writeDocument(json, field.getValue());
+            }
+            json.writeEndObject();
+        } else if (document.isList()) {
+            json.writeStartArray();
+            for (Document element : document.asList()) {
+                writeDocument(json, element);
+            }
+            json.writeEndArray();
+        } else if (document.isString()) {
+            json.writeString(document.asString());
+        } else if (document.isBoolean()) {
+            json.writeBoolean(document.asBoolean());
+        } else {
+            json.writeNumber(document.asNumber().bigDecimalValue());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which model outputs are logged and how much of each. Printing every content
+ * block of every conversation costs console I/O per call; with {@code log.payload.sampleRate} and
+ * {@code log.payload.maxChars} only a share of them is logged, cut to a prefix.
+ */
+public final class PayloadLog {
+    /** Logs every payload in full. */
+    public static final PayloadLog ALL = new PayloadLog(1.0, Integer.MAX_VALUE);
+
+    private final double sampleRate;
+    private final int maxChars;
+
+    /**
+     * @param sampleRate share of payloads logged, from 0 (none) to 1 (all)
+     * @param maxChars   characters kept of a logged payload
+     */
+    public PayloadLog(double sampleRate, int maxChars) {
+        this.sampleRate = sampleRate;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Reads {@code log.payload.sampleRate} (default 1) and {@code log.payload.maxChars} (default 512).
+     */
+    public static PayloadLog fromProperties(Properties properties) {
+        String sampleRate = properties.getProperty("log.payload.sampleRate", "1").trim();
+        String maxChars = properties.getProperty("log.payload.maxChars", "512").trim();
+        try {
+            return new PayloadLog(Double.parseDouble(sampleRate), Integer.parseInt(maxChars));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid log.payload.* in config.properties: " + sampleRate
+                    + ", " + maxChars, e);
+        }
+    }
+
+    /**
+     * @return whether to log the current payload
+     */
+    public boolean sampled() {
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * @return {@code payload}, or its first {@code maxChars} characters and the length it had
+     */
+    public String abbreviate(String payload) {
+        if (payload == null || payload.length() <= maxChars) {
+            return payload;
+        }
+        return payload.substring(0, maxChars) + "... (" + payload.length() + " chars)";
+    }
+}
@@ -0,0 +1,253 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockDelta;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockDeltaEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockStartEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockStopEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamMetadataEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.MessageStopEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.StopReason;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlockStart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * The streaming counterpart of {@link AgentLoop}, built on ConverseStream.
+ * <p>
+ * Text deltas are pushed to the caller as they arrive. The input of a {@code toolUse} block is
+ * assembled from its {@code contentBlockDelta} fragments, and the tool is submitted as soon as
+ * the block's {@code contentBlockStop} arrives, so tools run while the model is still generating
+ * the rest of the turn. Once the turn ends, the loop waits for its tools and sends all the results
+ * back in a single user message, exactly like {@link AgentLoop}. With an
+ * {@link AdmissionController}, each turn waits for admission without holding a thread.
+ */
+public class StreamingAgentLoop {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingAgentLoop.class);
+
+    private final BedrockRuntimeAsyncClient bedrockRuntimeAsyncClient;
+    private final AdmissionController admissionController;
+    private final ToolRegistry toolRegistry;
+    private final ExecutorService toolExecutor;
+    private final MetricsSink metricsSink;
+    private final int maxTurns;
+
+    /**
+     * @param admissionController admits each turn, or {@code null} to send them unlimited
+     */
+    public StreamingAgentLoop(BedrockRuntimeAsyncClient bedrockRuntimeAsyncClient,
+                              AdmissionController admissionController, ToolRegistry toolRegistry,
+                              ExecutorService toolExecutor, MetricsSink metricsSink, int maxTurns) {
+        this.bedrockRuntimeAsyncClient = bedrockRuntimeAsyncClient;
+        this.admissionController = admissionController;
+        this.toolRegistry = toolRegistry;
+        this.toolExecutor = toolExecutor;
+        this.metricsSink = metricsSink;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Sends {@code history} and keeps answering tool calls until the model ends its turn.
+     *
+     * @param onText receives every text delta, on an SDK event thread
+     * @return completes with the final answer, or exceptionally with an {@link IllegalStateException}
+     *         if the model still asks for tools after {@code maxTurns} requests
+     */
+    public CompletableFuture<AgentLoop.AgentResult> run(String modelId, List<Message> history,
+                                                        InferenceConfiguration inferenceConfig,
+                                                        Consumer<String> onText) {
+        return turn(modelId, new ArrayList<>(history), inferenceConfig, onText, 1);
+    }
+
+    private CompletableFuture<AgentLoop.AgentResult> turn(String modelId, List<Message> messages,
+                                                          InferenceConfiguration inferenceConfig,
+                                                          Consumer<String> onText, int turn) {
+        if (turn > maxTurns) {
+            CompletableFuture<AgentLoop.AgentResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(
+                    new IllegalStateException("Agent loop did not finish within " + maxTurns + " turns"));
+            return failed;
+        }
+
+        TurnAssembler assembler = new TurnAssembler(modelId, onText);
+        ConverseStreamRequest.Builder request = ConverseStreamRequest.builder()
+                .modelId(modelId)
+                .messages(messages)
+                .inferenceConfig(inferenceConfig);
+        if (!toolRegistry.isEmpty()) {
+            request.toolConfig(toolRegistry.toolConfiguration());
+        }
+
+        ConverseStreamRequest streamRequest = request.build();
+        CompletableFuture<Void> stream = admissionController == null
+                ? bedrockRuntimeAsyncClient.converseStream(streamRequest, assembler.responseHandler())
+                : admissionController.admitAsync(streamRequest,
+                        () -> bedrockRuntimeAsyncClient.converseStream(streamRequest, assembler.responseHandler()),
+                        ignored -> assembler.totalTokens);
+        return stream
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        assembler.timer.fail(error);
+                        ToolCalls.cancel(assembler.toolCalls);
+                    } else {
+                        assembler.timer.finish(assembler.outputTokens);
+                    }
+                })
+                // Waiting for the tools blocks, so it must not run on an SDK event loop thread.
+                .thenComposeAsync(ignored -> {
+                    Message assistantMessage = assembler.message();
+                    messages.add(assistantMessage);
+                    if (assembler.stopReason != StopReason.TOOL_USE || assembler.toolCalls.isEmpty()) {
+                        return CompletableFuture.completedFuture(new AgentLoop.AgentResult(
+                                ToolCalls.text(assistantMessage.content()), messages, assembler.stopReason, turn));
+                    }
+
+                    logger.debug("Turn {}: waiting for {} tool calls", turn, assembler.toolCalls.size());
+                    messages.add(Message.builder()
+                            .role(ConversationRole.USER)
+                            .content(ToolCalls.await(assembler.toolCalls))
+                            .build());
+                    return turn(modelId, messages, inferenceConfig, onText, turn + 1);
+                }, toolExecutor);
+    }
+
+    /**
+     * Rebuilds one assistant message from its stream events. The SDK delivers the events of a
+     * stream one at a time, and the fields are read only after the stream completes.
+     */
+    private final class TurnAssembler {
+        private final Consumer<String> onText;
+        private final StreamTimer timer;
+        private final Map<Integer, BlockBuilder> blocks = new TreeMap<>();
+        private final List<ToolCalls.Pending> toolCalls = new ArrayList<>();
+        private StopReason stopReason;
+        private int outputTokens = -1;
+        private long totalTokens = -1;
+
+        TurnAssembler(String modelId, Consumer<String> onText) {
+            this.onText = onText;
+            this.timer = StreamTimer.start(metricsSink, modelId);
+        }
+
+        ConverseStreamResponseHandler responseHandler() {
+            return ConverseStreamResponseHandler.builder()
+                    .subscriber(ConverseStreamResponseHandler.Visitor.builder()
+                            .onContentBlockStart(this::onContentBlockStart)
+                            .onContentBlockDelta(this::onContentBlockDelta)
+                            .onContentBlockStop(this::onContentBlockStop)
+                            .onMessageStop(this::onMessageStop)
+                            .onMetadata(this::onMetadata)
+                            .build())
+                    .build();
+        }
+
+        private void onContentBlockStart(ContentBlockStartEvent event) {
+            ToolUseBlockStart toolUse = event.start() != null ? event.start().toolUse() : null;
+            if (toolUse != null) {
+                blocks.put(event.contentBlockIndex(), new BlockBuilder(toolUse.toolUseId(), toolUse.name()));
+            }
+        }
+
+        private void onContentBlockDelta(ContentBlockDeltaEvent event) {
+            timer.onChunk();
+            ContentBlockDelta delta = event.delta();
+            BlockBuilder block = blocks.get(event.contentBlockIndex());
+            if (delta.text() != null) {
+                if (block == null) {
+                    block = new BlockBuilder(null, null);
+                    blocks.put(event.contentBlockIndex(), block);
+                }
+                block.content.append(delta.text());
+                onText.accept(delta.text());
+            } else if (delta.toolUse() != null && block != null && block.isToolUse()) {
+                block.content.append(delta.toolUse().input());
+            }
+        }
+
+        private void onContentBlockStop(ContentBlockStopEvent event) {
+            BlockBuilder block = blocks.get(event.contentBlockIndex());
+            if (block == null || !block.isToolUse()) {
+                return;
+            }
+            ToolUseBlock.Builder toolUse = ToolUseBlock.builder()
+                    .toolUseId(block.toolUseId)
+                    .name(block.toolName);
+            try {
+                block.toolUse = toolUse.input(ToolCatalog.toDocument(block.content.toString())).build();
+                toolCalls.add(ToolCalls.submit(toolRegistry, toolExecutor, block.toolUse));
+            } catch (IllegalArgumentException e) {
+                block.toolUse = toolUse.input(ToolCatalog.toDocument("")).build();
+                toolCalls.add(ToolCalls.failed(toolRegistry, block.toolUse, e));
+            }
+        }
+
+        private void onMessageStop(MessageStopEvent event) {
+            stopReason = event.stopReason();
+        }
+
+        private void onMetadata(ConverseStreamMetadataEvent event) {
+            if (event.metrics() != null && event.metrics().latencyMs() != null) {
+                timer.onServerLatency(event.metrics().latencyMs(), -1);
+            }
+            if (event.usage() != null && event.usage().outputTokens() != null) {
+                outputTokens = event.usage().outputTokens();
+            }
+            if (event.usage() != null && event.usage().totalTokens() != null) {
+                totalTokens = event.usage().totalTokens();
+            }
+        }
+
+        Message message() {
+            List<ContentBlock> content = new ArrayList<>(blocks.size());
+            for (BlockBuilder block : blocks.values()) {
+                if (!block.isToolUse()) {
+                    content.add(ContentBlock.fromText(block.content.toString()));
+                } else if (block.toolUse != null) {
+                    content.add(ContentBlock.fromToolUse(block.toolUse));
+                } else {
+                    throw new CompletionException(new IllegalStateException(
+                            "Stream ended before toolUse block " + block.toolUseId + " was complete"));
+                }
+            }
+            return Message.builder()
+                    .role(ConversationRole.ASSISTANT)
+                    .content(content)
+                    .build();
+        }
+    }
+
+    /**
+     * Text of a text block, or the partial input JSON of a toolUse block.
+     */
+    private static final class BlockBuilder {
+        private final String toolUseId;
+        private final String toolName;
+        private final StringBuilder content = new StringBuilder();
+        private ToolUseBlock toolUse;
+
+        BlockBuilder(String toolUseId, String toolName) {
+            this.toolUseId = toolUseId;
+            this.toolName = toolName;
+        }
+
+        boolean isToolUse() {
+            return toolName != null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultStatus;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Submits tool calls to an executor and turns their outcomes into tool result blocks.
+ * Shared by {@link AgentLoop} and {@link StreamingAgentLoop}.
+ */
+final class ToolCalls {
+    private static final Logger logger = LoggerFactory.getLogger(ToolCalls.class);
+
+    private ToolCalls() {
+    }
+
+    /**
+     * A submitted tool call. Its timeout runs from {@link #submittedAtNanos}.
+     */
+    static final class Pending {
+        final ToolUseBlock toolUse;
+        final ToolRegistry.RegisteredTool tool;
+        final Future<Document> future;
+        final long submittedAtNanos;
+
+        Pending(ToolUseBlock toolUse, ToolRegistry.RegisteredTool tool, Future<Document> future, long submittedAtNanos) {
+            this.toolUse = toolUse;
+            this.tool = tool;
+            this.future = future;
+            this.submittedAtNanos = submittedAtNanos;
+        }
+    }
+
+    static Pending submit(ToolRegistry toolRegistry, ExecutorService toolExecutor, ToolUseBlock toolUse) {
+        ToolRegistry.RegisteredTool tool = toolRegistry.get(toolUse.name());
+        long submittedAtNanos = System.nanoTime();
+        Future<Document> future = tool == null ? null : toolExecutor.submit(() -> tool.executor().execute(toolUse.input()));
+        return new Pending(toolUse, tool, future, submittedAtNanos);
+    }
+
+    /**
+     * Records a call that could not be started, e.g. because its input was malformed; it is
+     * reported to the model as a failed tool.
+     */
+    static Pending failed(ToolRegistry toolRegistry, ToolUseBlock toolUse, Throwable error) {
+        CompletableFuture<Document> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return new Pending(toolUse, toolRegistry.get(toolUse.name()), future, System.nanoTime());
+    }
+
+    /**
+     * Waits for every call and returns their results in the same order. A failed, unknown or
+     * timed-out tool becomes an error result.
+     */
+    static List<ContentBlock> await(List<Pending> calls) {
+        List<ContentBlock> results = new ArrayList<>(calls.size());
+        for (Pending call : calls) {
+            ToolUseBlock toolUse = call.toolUse;
+            if (call.tool == null) {
+                results.add(errorResult(toolUse, "Unknown tool: " + toolUse.name()));
+                continue;
+            }
+            long timeoutNanos = call.tool.timeout().toNanos();
+            long remainingNanos = Math.max(0, timeoutNanos - (System.nanoTime() - call.submittedAtNanos));
+            try {
+                results.add(successResult(toolUse, call.future.get(remainingNanos, TimeUnit.NANOSECONDS)));
+            } catch (TimeoutException e) {
+                call.future.cancel(true);
+                results.add(errorResult(toolUse, "Tool " + toolUse.name() + " timed out"));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.warn("Tool {} failed", toolUse.name(), cause);
+                results.add(errorResult(toolUse, "Tool " + toolUse.name() + " failed: " + cause.getMessage()));
+            } catch (InterruptedException e) {
+                cancel(calls);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tool results", e);
+            }
+        }
+        return results;
+    }
+
+    static void cancel(List<Pending> calls) {
+        for (Pending call : calls) {
+            if (call.future != null) {
+                call.future.cancel(true);
+            }
+        }
+    }
+
+    static List<ToolUseBlock> toolUses(List<ContentBlock> content) {
+        List<ToolUseBlock> toolUses = new ArrayList<>();
+        for (ContentBlock block : content) {
+            if (block.toolUse() != null) {
+                toolUses.add(block.toolUse());
+            }
+        }
+        return toolUses;
+    }
+
+    static String text(List<ContentBlock> content) {
+        StringBuilder text = new StringBuilder();
+        for (ContentBlock block : content) {
+            if (block.text() != null) {
+                text.append(block.text());
+            }
+        }
+        return text.toString();
+    }
+
+    private static ContentBlock successResult(ToolUseBlock toolUse, Document output) {
+        // Tool result JSON must be an object.
+        Document json = output != null && output.isMap()
+                ? output
+                : Document.mapBuilder().putDocument("result", output == null ? Document.fromNull() : output).build();
+        return ContentBlock.fromToolResult(ToolResultBlock.builder()
+                .toolUseId(toolUse.toolUseId())
+                .content(ToolResultContentBlock.fromJson(json))
+                .status(ToolResultStatus.SUCCESS)
+                .build());
+    }
+
+    private static ContentBlock errorResult(ToolUseBlock toolUse, String message) {
+        return ContentBlock.fromToolResult(ToolResultBlock.builder()
+                .toolUseId(toolUse.toolUseId())
+                .content(ToolResultContentBlock.fromText(message))
+                .status(ToolResultStatus.ERROR)
+                .build());
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolInputSchema;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolSpecification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds {@link ToolSpecification}s from tool definition files and caches them for the life of the JVM.
+ * <p>
+ * A definition file is a JSON object with {@code name}, {@code description} and {@code inputSchema}
+ * (a JSON schema). Each file is parsed once; the schema goes straight from the Jackson tree to a
+ * {@link Document}, so no request ever re-parses a schema.
+ */
+public final class ToolCatalog {
+
+    // Thread-safe once configured.
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ConcurrentMap<String, ToolSpecification> SPECIFICATIONS = new ConcurrentHashMap<>();
+
+    private ToolCatalog() {
+    }
+
+    /**
+     * @param resource classpath resource holding the tool definition
+     * @return the cached specification, parsed on first use
+     * @throws IllegalArgumentException if the resource is missing or not a valid tool definition
+     */
+    public static ToolSpecification specification(String resource) {
+        return SPECIFICATIONS.computeIfAbsent(resource, ToolCatalog::load);
+    }
+
+    /**
+     * Registers every {@link ToolFunction} method of {@code target} with {@code registry}.
+     *
+     * @throws IllegalArgumentException if an annotated method does not take and return a {@link Document}
+     */
+    public static ToolRegistry registerAnnotated(ToolRegistry registry, Object target) {
+        for (Method method : target.getClass().getMethods()) {
+            ToolFunction function = method.getAnnotation(ToolFunction.class);
+            if (function == null) {
+                continue;
+            }
+            if (method.getParameterCount() != 1 || method.getParameterTypes()[0] != Document.class
+                    || method.getReturnType() != Document.class) {
+                throw new IllegalArgumentException("@ToolFunction method " + method
+                        + " must take and return a software.amazon.awssdk.core.document.Document");
+            }
+
+            ToolSpecification spec = specification(function.schema());
+            String name = !function.name().isEmpty() ? function.name()
+                    : spec.name() != null ? spec.name() : method.getName();
+            if (!name.equals(spec.name()) || !function.description().isEmpty()) {
+                spec = spec.toBuilder()
+                        .name(name)
+                        .description(function.description().isEmpty() ? spec.description() : function.description())
+                        .build();
+            }
+
+            Object receiver = Modifier.isStatic(method.getModifiers()) ? null : target;
+            registry.register(spec, input -> invoke(method, receiver, input),
+                    Duration.ofMillis(function.timeoutMillis()));
+        }
+        return registry;
+    }
+
+    /**
+     * Converts a Jackson tree to a {@link Document} in a single walk, keeping the field order.
+     */
+    public static Document toDocument(JsonNode node) {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                Document.MapBuilder map = Document.mapBuilder();
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    map.putDocument(field.getKey(), toDocument(field.getValue()));
+                }
+                return map.build();
+            case ARRAY:
+                Document.ListBuilder list = Document.listBuilder();
+                for (JsonNode element : node) {
+                    list.addDocument(toDocument(element));
+                }
+                return list.build();
+            case STRING:
+                return Document.fromString(node.textValue());
+            case BOOLEAN:
+                return Document.fromBoolean(node.booleanValue());
+            case NUMBER:
+                if (node.isInt()) {
+                    return Document.fromNumber(node.intValue());
+                } else if (node.isLong()) {
+                    return Document.fromNumber(node.longValue());
+                } else if (node.isBigInteger()) {
+                    return Document.fromNumber(node.bigIntegerValue());
+                } else if (node.isBigDecimal()) {
+                    return Document.fromNumber(node.decimalValue());
+                }
+                return Document.fromNumber(node.doubleValue());
+            case NULL:
+            case MISSING:
+                return Document.fromNull();
+            default:
+                throw new IllegalArgumentException("Unsupported JSON node type: " + node.getNodeType());
+        }
+    }
+
+    /**
+     * Parses a JSON object such as a streamed {@code toolUse.input}; blank input is an empty object.
+     */
+    public static Document toDocument(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return Document.mapBuilder().build();
+        }
+        try {
+            return toDocument(OBJECT_MAPPER.readTree(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Parses a tool definition without caching it.
+     */
+    static ToolSpecification parse(JsonNode definition, String source) {
+        JsonNode inputSchema = definition.get("inputSchema");
+        if (inputSchema == null || !inputSchema.isObject()) {
+            throw new IllegalArgumentException("Tool definition " + source + " has no inputSchema object");
+        }
+        return ToolSpecification.builder()
+                .name(definition.path("name").textValue())
+                .description(definition.path("description").textValue())
+                .inputSchema(ToolInputSchema.fromJson(toDocument(inputSchema)))
+                .build();
+    }
+
+    private static ToolSpecification load(String resource) {
+        try (InputStream input = ToolCatalog.class.getClassLoader().getResourceAsStream(resource)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Unable to find tool definition " + resource);
+            }
+            return parse(OBJECT_MAPPER.readTree(input), resource);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read tool definition " + resource, e);
+        }
+    }
+
+    private static Document invoke(Method method, Object receiver, Document input) throws Exception {
+        try {
+            return (Document) method.invoke(receiver, input);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.example;
+
+import software.amazon.awssdk.core.document.Document;
+
+/**
+ * Runs one tool call requested by the model.
+ */
+@FunctionalInterface
+public interface ToolExecutor {
+
+    /**
+     * @param input the {@code toolUse.input} document sent by the model
+     * @return the tool output; it is sent back as the JSON content of the tool result
+     * @throws Exception if the tool fails; the message is reported to the model as an error result
+     */
+    Document execute(Document input) throws Exception;
+}
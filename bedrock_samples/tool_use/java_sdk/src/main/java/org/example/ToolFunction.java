@@ -0,0 +1,36 @@
+package org.example;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as the implementation of a tool, for {@link ToolCatalog#registerAnnotated}.
+ * <p>
+ * The method takes the tool input as a {@code Document} and returns the tool result as a
+ * {@code Document}. Its specification is read from the {@link #schema()} resource once per JVM.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ToolFunction {
+
+    /**
+     * @return classpath resource holding the tool definition, e.g. {@code tools/queryWeather.json}
+     */
+    String schema();
+
+    /**
+     * @return the tool name; defaults to the name in the schema file, then to the method name
+     */
+    String name() default "";
+
+    /**
+     * @return the tool description; defaults to the description in the schema file
+     */
+    String description() default "";
+
+    long timeoutMillis() default 30_000;
+}
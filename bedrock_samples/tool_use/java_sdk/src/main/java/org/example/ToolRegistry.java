@@ -0,0 +1,92 @@
+package org.example;
+
+import software.amazon.awssdk.services.bedrockruntime.model.Tool;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolSpecification;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tools an {@link AgentLoop} may call, keyed by {@link ToolSpecification#name()}.
+ * <p>
+ * The {@link ToolConfiguration} sent with every Converse request is built once per change to the
+ * registry rather than once per request.
+ */
+public class ToolRegistry {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Map<String, RegisteredTool> tools = new LinkedHashMap<>();
+    private volatile ToolConfiguration toolConfiguration;
+
+    public synchronized ToolRegistry register(ToolSpecification spec, ToolExecutor executor) {
+        return register(spec, executor, DEFAULT_TIMEOUT);
+    }
+
+    public synchronized ToolRegistry register(ToolSpecification spec, ToolExecutor executor, Duration timeout) {
+        tools.put(spec.name(), new RegisteredTool(spec, executor, timeout));
+        toolConfiguration = null;
+        return this;
+    }
+
+    /**
+     * @return the registered tool, or {@code null} if the model asked for an unknown tool
+     */
+    public synchronized RegisteredTool get(String name) {
+        return tools.get(name);
+    }
+
+    public synchronized boolean isEmpty() {
+        return tools.isEmpty();
+    }
+
+    public ToolConfiguration toolConfiguration() {
+        ToolConfiguration configuration = toolConfiguration;
+        if (configuration == null) {
+            synchronized (this) {
+                if (toolConfiguration == null) {
+                    List<Tool> specs = new ArrayList<>(tools.size());
+                    for (RegisteredTool tool : tools.values()) {
+                        specs.add(Tool.fromToolSpec(tool.spec()));
+                    }
+                    toolConfiguration = ToolConfiguration.builder().tools(specs).build();
+                }
+                configuration = toolConfiguration;
+            }
+        }
+        return configuration;
+    }
+
+    public synchronized List<RegisteredTool> tools() {
+        return Collections.unmodifiableList(new ArrayList<>(tools.values()));
+    }
+
+    public static final class RegisteredTool {
+        private final ToolSpecification spec;
+        private final ToolExecutor executor;
+        private final Duration timeout;
+
+        RegisteredTool(ToolSpecification spec, ToolExecutor executor, Duration timeout) {
+            this.spec = spec;
+            this.executor = executor;
+            this.timeout = timeout;
+        }
+
+        public ToolSpecification spec() {
+            return spec;
+        }
+
+        public ToolExecutor executor() {
+            return executor;
+        }
+
+        public Duration timeout() {
+            return timeout;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.example;
+
+import software.amazon.awssdk.core.document.Document;
+
+import java.util.Map;
+
+/**
+ * Tools offered to the model by {@link Handler}.
+ */
+public class WeatherTools {
+
+    /**
+     * Demo implementation; replace it with a call to a real weather service.
+     */
+    @ToolFunction(schema = "tools/queryWeather.json", timeoutMillis = 10_000)
+    public Document queryWeather(Document input) {
+        Map<String, Document> arguments = input.asMap();
+        return Document.mapBuilder()
+                .putString("latitude", arguments.get("latitude").asString())
+                .putString("longitude", arguments.get("longitude").asString())
+                .putString("condition", "sunny")
+                .putNumber("temperatureCelsius", 22)
+                .build();
+    }
+}
@@ -0,0 +1,251 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.StopReason;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultStatus;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversationStoreTest {
+    // 80 characters, estimated at 20 tokens
+    private static final String TWENTY_TOKENS = "0123456789012345678901234567890123456789"
+            + "0123456789012345678901234567890123456789";
+
+    private ConversationStore store;
+
+    @TempDir
+    Path spillDirectory;
+
+    @AfterEach
+    void close() {
+        store.close();
+    }
+
+    @Test
+    void compactionDropsWholeTurnsDownToTheTarget() {
+        // Every turn adds 40 tokens; the fourth user message takes the prompt to 140.
+        store = builder().tokenBudget(100).compactTargetPercent(60).build();
+        ConversationStore.Session session = store.session("compaction");
+        for (int turn = 1; turn <= 3; turn++) {
+            answer(session, user("question " + turn), assistant("answer " + turn));
+        }
+        assertEquals(0, session.stats().compactions());
+
+        try (ConversationStore.Turn turn = session.begin(user("question 4"))) {
+            // The oldest two turns go; the third turn and the new question are 60 tokens.
+            assertEquals(3, turn.messages().size());
+            assertEquals(text("question 3"), turn.messages().get(0).content().get(0).text());
+            turn.complete(result(turn.messages(), assistant("answer 4")));
+        }
+
+        assertEquals(1, session.stats().compactions());
+        assertEquals(4, session.stats().droppedMessages());
+        assertEquals(4, session.history().size());
+        assertNull(session.summary());
+    }
+
+    @Test
+    void droppedTurnsAreSummarizedIntoTheSystemPrompt() {
+        List<Integer> droppedCounts = new ArrayList<>();
+        store = builder().tokenBudget(100).compactTargetPercent(60)
+                .summarizer((previousSummary, dropped) -> {
+                    droppedCounts.add(dropped.size());
+                    return "summary of " + dropped.size() + " messages";
+                })
+                .build();
+        ConversationStore.Session session = store.session("summary");
+        for (int turn = 1; turn <= 3; turn++) {
+            answer(session, user("question " + turn), assistant("answer " + turn));
+        }
+
+        try (ConversationStore.Turn turn = session.begin(user("question 4"))) {
+            assertEquals("Summary of the earlier conversation:\nsummary of 4 messages",
+                    turn.system().get(turn.system().size() - 1).text());
+        }
+
+        assertEquals(Arrays.asList(4), droppedCounts);
+        assertEquals("summary of 4 messages", session.summary());
+    }
+
+    @Test
+    void compactionNeverSeparatesAToolUseFromItsResult() {
+        store = builder().tokenBudget(100).compactTargetPercent(60).build();
+        ConversationStore.Session session = store.session("tools");
+        for (int turn = 1; turn <= 6; turn++) {
+            try (ConversationStore.Turn request = session.begin(user("question " + turn))) {
+                List<Message> messages = new ArrayList<>(request.messages());
+                messages.add(toolUse("tool-" + turn));
+                messages.add(toolResult("tool-" + turn));
+                messages.add(assistant("answer " + turn));
+                request.complete(new AgentLoop.AgentResult("answer " + turn, messages, StopReason.END_TURN, 2));
+            }
+
+            List<Message> history = session.history();
+            Message first = history.get(0);
+            assertEquals(ConversationRole.USER, first.role());
+            assertNull(first.content().get(0).toolResult());
+        }
+        assertTrue(session.stats().compactions() > 0);
+    }
+
+    @Test
+    void aTurnClosedWithoutCompletingTakesTheMessageBackOut() {
+        store = builder().build();
+        ConversationStore.Session session = store.session("rollback");
+        answer(session, user("question 1"), assistant("answer 1"));
+
+        try (ConversationStore.Turn turn = session.begin(user("question 2"))) {
+            assertEquals(3, turn.messages().size());
+        }
+
+        assertEquals(2, session.history().size());
+    }
+
+    @Test
+    void sessionSpilledOffHeapIsRestoredUnchanged() throws InterruptedException {
+        spilledSessionIsRestoredUnchanged(ConversationStore.Spill.OFF_HEAP);
+    }
+
+    @Test
+    void sessionSpilledToAFileIsRestoredUnchanged() throws InterruptedException {
+        spilledSessionIsRestoredUnchanged(ConversationStore.Spill.FILE);
+    }
+
+    private void spilledSessionIsRestoredUnchanged(ConversationStore.Spill spill) throws InterruptedException {
+        store = builder().spill(spill).spillDirectory(spillDirectory).spillAfter(Duration.ofMillis(1)).build();
+        ConversationStore.Session session = store.session("spill");
+        answer(session, user("question 1"), assistant("answer 1"));
+        try (ConversationStore.Turn request = session.begin(user("question 2"))) {
+            List<Message> messages = new ArrayList<>(request.messages());
+            messages.add(jsonToolUse("tool-1"));
+            messages.add(jsonToolResult("tool-1"));
+            messages.add(assistant("answer 2"));
+            request.complete(new AgentLoop.AgentResult("answer 2", messages, StopReason.END_TURN, 2));
+        }
+        List<Message> history = session.history();
+        List<Message> nextTurn;
+        try (ConversationStore.Turn turn = session.begin(user("question 3"))) {
+            nextTurn = turn.messages();
+        }
+
+        // The sweeper runs at most once a second.
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (session.stats().spills() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, session.stats().spills());
+
+        try (ConversationStore.Turn turn = session.begin(user("question 3"))) {
+            assertEquals(nextTurn, turn.messages());
+        }
+        assertEquals(history, session.history());
+    }
+
+    private static ConversationStore.Builder builder() {
+        return ConversationStore.builder()
+                .promptCache(false)
+                .spill(ConversationStore.Spill.NONE);
+    }
+
+    private static void answer(ConversationStore.Session session, Message question, Message answer) {
+        try (ConversationStore.Turn turn = session.begin(question)) {
+            turn.complete(result(turn.messages(), answer));
+        }
+    }
+
+    private static AgentLoop.AgentResult result(List<Message> request, Message answer) {
+        List<Message> messages = new ArrayList<>(request);
+        messages.add(answer);
+        return new AgentLoop.AgentResult(answer.content().get(0).text(), messages, StopReason.END_TURN, 1);
+    }
+
+    /**
+     * @return {@code label} padded to 20 tokens
+     */
+    private static String text(String label) {
+        return label + TWENTY_TOKENS.substring(label.length());
+    }
+
+    private static Message user(String label) {
+        return Message.builder().role(ConversationRole.USER).content(ContentBlock.fromText(text(label))).build();
+    }
+
+    private static Message assistant(String label) {
+        return Message.builder().role(ConversationRole.ASSISTANT).content(ContentBlock.fromText(text(label))).build();
+    }
+
+    private static Message toolUse(String toolUseId) {
+        return Message.builder()
+                .role(ConversationRole.ASSISTANT)
+                .content(ContentBlock.fromToolUse(ToolUseBlock.builder()
+                        .toolUseId(toolUseId)
+                        .name("queryWeather")
+                        .input(Document.mapBuilder().putString("city", TWENTY_TOKENS).build())
+                        .build()))
+                .build();
+    }
+
+    private static Message toolResult(String toolUseId) {
+        return Message.builder()
+                .role(ConversationRole.USER)
+                .content(ContentBlock.fromToolResult(ToolResultBlock.builder()
+                        .toolUseId(toolUseId)
+                        .content(ToolResultContentBlock.fromText(TWENTY_TOKENS))
+                        .build()))
+                .build();
+    }
+
+    private static Message jsonToolUse(String toolUseId) {
+        return Message.builder()
+                .role(ConversationRole.ASSISTANT)
+                .content(ContentBlock.fromText(text("checking")), ContentBlock.fromToolUse(ToolUseBlock.builder()
+                        .toolUseId(toolUseId)
+                        .name("queryWeather")
+                        .input(Document.mapBuilder()
+                                .putString("city", "Zürich")
+                                .putNumber("days", 3)
+                                .putBoolean("metric", true)
+                                .putNull("units")
+                                .putList("fields", Arrays.asList(Document.fromString("wind"),
+                                        Document.fromNumber(22.5)))
+                                .putDocument("location", Document.mapBuilder()
+                                        .putNumber("latitude", 47.37)
+                                        .putNumber("longitude", 8.54)
+                                        .build())
+                                .build())
+                        .build()))
+                .build();
+    }
+
+    private static Message jsonToolResult(String toolUseId) {
+        return Message.builder()
+                .role(ConversationRole.USER)
+                .content(ContentBlock.fromToolResult(ToolResultBlock.builder()
+                        .toolUseId(toolUseId)
+                        .status(ToolResultStatus.ERROR)
+                        .content(ToolResultContentBlock.fromJson(Document.mapBuilder()
+                                        .putString("error", "Station offline")
+                                        .putNumber("retryAfterSeconds", 60)
+                                        .build()),
+                                ToolResultContentBlock.fromText("Try another station"))
+                        .build()))
+                .build();
+    }
+}
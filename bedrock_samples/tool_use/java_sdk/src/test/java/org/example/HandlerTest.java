@@ -1,7 +1,111 @@
 package org.example;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link Handler#converse} against a local Converse stub that first asks for
+ * {@code queryWeather} and answers once it has the tool result.
+ */
 public class HandlerTest {
-    //TODO add tests here
+    private static final String ANSWER = "今天天气晴朗，22 度。";
+    private static final String TOOL_USE_RESPONSE = "{\"output\":{\"message\":{\"role\":\"assistant\",\"content\":["
+            + "{\"toolUse\":{\"toolUseId\":\"tooluse-1\",\"name\":\"queryWeather\","
+            + "\"input\":{\"latitude\":\"39.9\",\"longitude\":\"116.4\"}}}]}},\"stopReason\":\"tool_use\","
+            + "\"usage\":{\"inputTokens\":20,\"outputTokens\":10,\"totalTokens\":30},\"metrics\":{\"latencyMs\":1}}";
+    private static final String ANSWER_RESPONSE = "{\"output\":{\"message\":{\"role\":\"assistant\",\"content\":["
+            + "{\"text\":\"" + ANSWER + "\"}]}},\"stopReason\":\"end_turn\","
+            + "\"usage\":{\"inputTokens\":40,\"outputTokens\":10,\"totalTokens\":50},\"metrics\":{\"latencyMs\":1}}";
+
+    private static final List<String> requests = new CopyOnWriteArrayList<>();
+    private static HttpServer server;
+    private static BedrockRuntimeClient bedrockRuntimeClient;
+    private static Handler handler;
+
+    @BeforeAll
+    static void start() throws IOException {
+        // The handler builds its own clients from the default chains; it never calls them here.
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "test");
+        System.setProperty("aws.secretAccessKey", "test");
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", HandlerTest::converse);
+        server.start();
+        bedrockRuntimeClient = BedrockRuntimeClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .httpClient(ApacheHttpClient.builder().build())
+                .build();
+        handler = new Handler();
+    }
+
+    @AfterAll
+    static void stop() {
+        bedrockRuntimeClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    void converseAnswersTheToolCallAndReturnsTheFinalText() {
+        requests.clear();
+
+        String answer = handler.converse(bedrockRuntimeClient);
+
+        assertEquals(ANSWER, answer);
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("\"toolUseId\":\"tooluse-1\""), requests.get(1));
+        assertTrue(requests.get(1).contains("\"condition\":\"sunny\""), requests.get(1));
+    }
+
+    private static void converse(HttpExchange exchange) throws IOException {
+        try {
+            String body = new String(readFully(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            requests.add(body);
+            boolean converse = exchange.getRequestURI().getRawPath().endsWith("/converse");
+            byte[] response = (!converse ? "{\"message\":\"No stub\"}"
+                    : body.contains("toolResult") ? ANSWER_RESPONSE : TOOL_USE_RESPONSE)
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(converse ? 200 : 404, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
 }
@@ -0,0 +1,127 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.Tool;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolInputSchema;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolSpecification;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the per-request tool construction that {@code Handler} used originally with the cached
+ * {@link ToolCatalog} specifications. Each invocation produces the {@link ToolConfiguration} for one request.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.example.ToolCatalogBenchmark"}; the GC profiler reports
+ * allocated bytes per operation next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolCatalogBenchmark {
+
+    private static final String SCHEMA = "{\"type\":\"object\",\"properties\":{\"latitude\":{\"type\":\"string\",\"description\":\"纬度\"},\"longitude\":{\"type\":\"string\",\"description\":\"经度\"}},\"required\":[\"latitude\",\"longitude\"]}";
+
+    private ToolRegistry registry;
+    private JsonNode schemaTree;
+
+    @Setup
+    public void setUp() throws IOException {
+        registry = ToolCatalog.registerAnnotated(new ToolRegistry(), new WeatherTools());
+        schemaTree = new ObjectMapper().readTree(SCHEMA);
+    }
+
+    /**
+     * New ObjectMapper, schema string to raw Map, then stream collectors to Document, on every request.
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public ToolConfiguration perRequestMapConversion() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Object> schemaMap = objectMapper.readValue(SCHEMA, Map.class);
+        ToolSpecification toolSpec = ToolSpecification.builder()
+                .name("queryWeather")
+                .description("queryWeather")
+                .inputSchema(ToolInputSchema.builder().json(convertObjectToDocument(schemaMap)).build())
+                .build();
+        return ToolConfiguration.builder().tools(Tool.fromToolSpec(toolSpec)).build();
+    }
+
+    /**
+     * The direct JsonNode walk alone, for a schema that is already parsed.
+     */
+    @Benchmark
+    public Document jsonNodeConversion() {
+        return ToolCatalog.toDocument(schemaTree);
+    }
+
+    @Benchmark
+    public ToolConfiguration cachedCatalog() {
+        return registry.toolConfiguration();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Document convertObjectToDocument(Object value) {
+        if (value == null) {
+            return Document.fromNull();
+        } else if (value instanceof String) {
+            return Document.fromString((String) value);
+        } else if (value instanceof Boolean) {
+            return Document.fromBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            return Document.fromNumber((Integer) value);
+        } else if (value instanceof Long) {
+            return Document.fromNumber((Long) value);
+        } else if (value instanceof Float) {
+            return Document.fromNumber((Float) value);
+        } else if (value instanceof Double) {
+            return Document.fromNumber((Double) value);
+        } else if (value instanceof BigDecimal) {
+            return Document.fromNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            return Document.fromNumber((BigInteger) value);
+        } else if (value instanceof List) {
+            return Document.fromList(((List<?>) value).stream()
+                    .map(ToolCatalogBenchmark::convertObjectToDocument)
+                    .collect(Collectors.toList()));
+        } else if (value instanceof Map) {
+            Map<String, Document> attr = ((Map<String, Object>) value).entrySet().stream()
+                    .collect(Collectors.toMap(e -> e.getKey(), e -> convertObjectToDocument(e.getValue())));
+            return Document.fromMap(attr);
+        }
+        throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getSimpleName());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ToolCatalogBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,667 @@
+package org.example;
+
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.retries.api.RetryStrategy;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Client-side admission control for model IDs and SageMaker endpoints.
+ * <p>
+ * Every call is admitted by the limiter of its model ID or endpoint name, which combines
+ * <ul>
+ *     <li>a requests-per-minute and a tokens-per-minute token bucket. Tokens are estimated from the
+ *     request size and {@code maxTokens} when the call is admitted, then corrected with the usage
+ *     reported by the response when there is one;</li>
+ *     <li>an AIMD concurrency limit: it grows by one call per limit's worth of successful calls and
+ *     halves, at most once per second, when the service throttles.</li>
+ * </ul>
+ * Callers wait for admission for at most {@code maxWait}. Throttled calls are retried with full
+ * jitter, and retries draw on the SDK's retry token bucket so that a throttling service does not
+ * see a retry storm.
+ * <p>
+ * Sync clients are admitted by an interceptor that blocks the calling thread, installed with
+ * {@link #overrideConfiguration()}. Async clients must not block the thread that starts a call,
+ * which may be an SDK completion thread, so they use {@link #asyncOverrideConfiguration()} and
+ * callers start each call through {@link #admitAsync}, which queues it without a thread.
+ */
+public final class AdmissionController {
+    // Rough size of a token in request bytes, used until the response reports the real usage.
+    private static final int BYTES_PER_TOKEN = 4;
+
+    // Wakes async waiters for rate limits and deadlines, and starts their calls, so that a call
+    // is never started on the thread that released the previous one.
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "admission-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Limits defaultLimits;
+    private final Map<String, Limits> limitsByKey;
+    private final int initialConcurrency;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final Duration maxWait;
+    private final int maxRetries;
+    private final Duration baseDelay;
+    private final Duration throttlingBaseDelay;
+    private final Duration maxBackoff;
+    private final ConcurrentMap<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    private AdmissionController(Builder builder) {
+        this.defaultLimits = builder.defaultLimits;
+        this.limitsByKey = new HashMap<>(builder.limitsByKey);
+        this.initialConcurrency = builder.initialConcurrency;
+        this.minConcurrency = builder.minConcurrency;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.maxWait = builder.maxWait;
+        this.maxRetries = builder.maxRetries;
+        this.baseDelay = builder.baseDelay;
+        this.throttlingBaseDelay = builder.throttlingBaseDelay;
+        this.maxBackoff = builder.maxBackoff;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads the {@code throttle.*} and {@code retry.*} settings. Limits for a single model ID or
+     * endpoint are set with {@code throttle.limit.<key>.requestsPerMinute} and
+     * {@code throttle.limit.<key>.tokensPerMinute}; escape {@code :} in model IDs as {@code \:}.
+     */
+    public static AdmissionController fromProperties(Properties properties) {
+        Builder builder = builder()
+                .defaultLimits(Limits.of(
+                        doubleProperty(properties, "throttle.requestsPerMinute", 0),
+                        doubleProperty(properties, "throttle.tokensPerMinute", 0)))
+                .initialConcurrency((int) doubleProperty(properties, "throttle.initialConcurrency", 16))
+                .minConcurrency((int) doubleProperty(properties, "throttle.minConcurrency", 1))
+                .maxConcurrency((int) doubleProperty(properties, "throttle.maxConcurrency", 256))
+                .maxWait(Duration.ofMillis((long) doubleProperty(properties, "throttle.maxWaitMillis", 30_000)))
+                .maxRetries((int) doubleProperty(properties, "retry.maxRetries", 3))
+                .baseDelay(Duration.ofMillis((long) doubleProperty(properties, "retry.baseDelayMillis", 100)))
+                .throttlingBaseDelay(Duration.ofMillis(
+                        (long) doubleProperty(properties, "retry.throttlingBaseDelayMillis", 500)))
+                .maxBackoff(Duration.ofMillis((long) doubleProperty(properties, "retry.maxBackoffMillis", 20_000)));
+
+        String prefix = "throttle.limit.";
+        String rpmSuffix = ".requestsPerMinute";
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix) && name.endsWith(rpmSuffix)) {
+                String key = name.substring(prefix.length(), name.length() - rpmSuffix.length());
+                builder.limits(key, Limits.of(
+                        doubleProperty(properties, name, 0),
+                        doubleProperty(properties, prefix + key + ".tokensPerMinute", 0)));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return override configuration for a sync client, with the blocking admission interceptor
+     *         and the retry strategy; each call creates a fresh retry token bucket, so use one per
+     *         client
+     */
+    public ClientOverrideConfiguration overrideConfiguration() {
+        return ClientOverrideConfiguration.builder()
+                .addExecutionInterceptor(new AdmissionInterceptor(this, true))
+                .retryStrategy(retryStrategy())
+                .build();
+    }
+
+    /**
+     * @return override configuration for an async client: the retry strategy and an interceptor
+     *         that only reports throttling. Calls are admitted by {@link #admitAsync}.
+     */
+    public ClientOverrideConfiguration asyncOverrideConfiguration() {
+        return ClientOverrideConfiguration.builder()
+                .addExecutionInterceptor(new AdmissionInterceptor(this, false))
+                .retryStrategy(retryStrategy())
+                .build();
+    }
+
+    /**
+     * Starts {@code call} once {@code request} is admitted, without blocking the calling thread,
+     * and releases the admission when the call's future completes. Requests without a model ID
+     * or endpoint name are started at once.
+     *
+     * @return the call's future, or one failed with an {@link SdkClientException} if the call is
+     *         not admitted within {@code maxWait}
+     */
+    public <T> CompletableFuture<T> admitAsync(SdkRequest request, Supplier<CompletableFuture<T>> call) {
+        return admitAsync(request, call, result -> -1);
+    }
+
+    /**
+     * Like {@link #admitAsync(SdkRequest, Supplier)}, correcting the token estimate with the usage
+     * that {@code usedTokens} reads from the result, or -1 if it has none.
+     */
+    public <T> CompletableFuture<T> admitAsync(SdkRequest request, Supplier<CompletableFuture<T>> call,
+                                               ToLongFunction<? super T> usedTokens) {
+        String key = key(request);
+        if (key == null) {
+            return call.get();
+        }
+        return acquireAsync(key, estimatedTokens(request, 0)).thenCompose(permit -> {
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException | Error e) {
+                permit.release(false, -1);
+                throw e;
+            }
+            return future.whenComplete((result, error) ->
+                    permit.release(error == null, error == null ? usedTokens.applyAsLong(result) : -1));
+        });
+    }
+
+    /**
+     * @return how long a call waits for admission at most
+     */
+    public Duration maxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @return the current AIMD concurrency limit of {@code key}
+     */
+    public int concurrencyLimit(String key) {
+        return (int) limiter(key).concurrencyLimit();
+    }
+
+    /**
+     * Waits until {@code key} may start a call.
+     *
+     * @throws SdkClientException if the call is not admitted within {@code maxWait}
+     */
+    Permit acquire(String key, long estimatedTokens) {
+        Limiter limiter = limiter(key);
+        try {
+            limiter.acquire(estimatedTokens, System.nanoTime() + maxWait.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SdkClientException.create("Interrupted while waiting for admission of " + key, e);
+        }
+        return new Permit(limiter, estimatedTokens);
+    }
+
+    /**
+     * Queues for admission of {@code key} without blocking.
+     *
+     * @return a future completed with the permit, or failed with an {@link SdkClientException}
+     *         if the call is not admitted within {@code maxWait}
+     */
+    CompletableFuture<Permit> acquireAsync(String key, long estimatedTokens) {
+        return limiter(key).acquireAsync(estimatedTokens, System.nanoTime() + maxWait.toNanos());
+    }
+
+    /**
+     * Halves the concurrency limit of {@code key}, at most once per second.
+     */
+    void onThrottled(String key) {
+        limiter(key).onThrottled();
+    }
+
+    /**
+     * @return the request's {@code modelId} (Bedrock) or {@code EndpointName} (SageMaker), or
+     *         {@code null} for calls that are not limited
+     */
+    static String key(SdkRequest request) {
+        Optional<String> modelId = request.getValueForField("modelId", String.class);
+        return modelId.isPresent() ? modelId.get() : request.getValueForField("EndpointName", String.class).orElse(null);
+    }
+
+    /**
+     * @param bodyBytes size of the marshalled body, or 0 to use the request's {@code Body} if it has one
+     * @return the tokens charged when the call is admitted: a quarter of the body size plus
+     *         {@code maxTokens}
+     */
+    static long estimatedTokens(SdkRequest request, long bodyBytes) {
+        if (bodyBytes <= 0) {
+            Optional<SdkBytes> body = request.getValueForField("Body", SdkBytes.class);
+            if (!body.isPresent()) {
+                body = request.getValueForField("body", SdkBytes.class);
+            }
+            bodyBytes = body.map(bytes -> (long) bytes.asByteBufferUnsafe().remaining()).orElse(0L);
+        }
+        long maxTokens = request.getValueForField("inferenceConfig", InferenceConfiguration.class)
+                .map(InferenceConfiguration::maxTokens)
+                .map(Integer::longValue)
+                .orElse(0L);
+        return bodyBytes / BYTES_PER_TOKEN + maxTokens;
+    }
+
+    private Limiter limiter(String key) {
+        return limiters.computeIfAbsent(key, k -> new Limiter(
+                k, limitsByKey.getOrDefault(k, defaultLimits), initialConcurrency, minConcurrency, maxConcurrency));
+    }
+
+    private RetryStrategy retryStrategy() {
+        // The standard strategy's token bucket charges every retry and is refilled by successes;
+        // once a throttling episode has drained it, calls fail instead of retrying.
+        return AwsRetryStrategy.standardRetryStrategy().toBuilder()
+                .maxAttempts(maxRetries + 1)
+                .backoffStrategy(BackoffStrategy.exponentialDelay(baseDelay, maxBackoff))
+                .throttlingBackoffStrategy(BackoffStrategy.exponentialDelay(throttlingBaseDelay, maxBackoff))
+                .circuitBreakerEnabled(true)
+                .build();
+    }
+
+    private static double doubleProperty(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid number for " + key + " in config.properties: " + value, e);
+        }
+    }
+
+    /**
+     * Request and token rates for one model ID or endpoint; zero or less means unlimited.
+     */
+    public static final class Limits {
+        public static final Limits UNLIMITED = new Limits(0, 0);
+
+        private final double requestsPerMinute;
+        private final double tokensPerMinute;
+
+        private Limits(double requestsPerMinute, double tokensPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            this.tokensPerMinute = tokensPerMinute;
+        }
+
+        public static Limits of(double requestsPerMinute, double tokensPerMinute) {
+            return new Limits(requestsPerMinute, tokensPerMinute);
+        }
+    }
+
+    /**
+     * An admitted call. It must be released exactly once; later releases are ignored.
+     */
+    static final class Permit {
+        private final Limiter limiter;
+        private final long estimatedTokens;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Limiter limiter, long estimatedTokens) {
+            this.limiter = limiter;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        /**
+         * @param actualTokens tokens reported by the response, or a negative value to keep the estimate
+         */
+        void release(boolean success, long actualTokens) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(success, actualTokens < 0 ? 0 : estimatedTokens - actualTokens);
+            }
+        }
+    }
+
+    private static final class Limiter {
+        private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+        private final String key;
+        private final double requestsPerNano;
+        private final double tokensPerNano;
+        // Allows a burst of up to ten seconds' worth of the rate.
+        private final double requestCapacity;
+        private final double tokenCapacity;
+        private final int minConcurrency;
+        private final int maxConcurrency;
+
+        private double requests;
+        private double tokens;
+        private long refilledAtNanos = System.nanoTime();
+        private double concurrencyLimit;
+        private int inFlight;
+        private long decreasedAtNanos = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+        // A lock rather than a monitor: a virtual thread waiting on a monitor pins its carrier thread.
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        // Async callers, admitted in order by drainWaiters.
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private ScheduledFuture<?> wakeUp;
+        private long wakeUpAtNanos;
+
+        Limiter(String key, Limits limits, int initialConcurrency, int minConcurrency, int maxConcurrency) {
+            this.key = key;
+            this.requestsPerNano = limits.requestsPerMinute / NANOS_PER_MINUTE;
+            this.tokensPerNano = limits.tokensPerMinute / NANOS_PER_MINUTE;
+            this.requestCapacity = Math.max(1, limits.requestsPerMinute / 6);
+            this.tokenCapacity = Math.max(1, limits.tokensPerMinute / 6);
+            this.requests = requestCapacity;
+            this.tokens = tokenCapacity;
+            this.minConcurrency = Math.max(1, minConcurrency);
+            this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+            this.concurrencyLimit = Math.min(this.maxConcurrency, Math.max(this.minConcurrency, initialConcurrency));
+        }
+
+        double concurrencyLimit() {
+            lock.lock();
+            try {
+                return concurrencyLimit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void acquire(long estimatedTokens, long deadlineNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long rateWaitNanos = tryAdmit(estimatedTokens, now);
+                    if (rateWaitNanos == 0) {
+                        return;
+                    }
+                    long remainingNanos = deadlineNanos - now;
+                    if (remainingNanos <= 0) {
+                        throw timedOut();
+                    }
+                    changed.awaitNanos(Math.min(remainingNanos, rateWaitNanos));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        CompletableFuture<Permit> acquireAsync(long estimatedTokens, long deadlineNanos) {
+            Waiter waiter = new Waiter(estimatedTokens, deadlineNanos);
+            List<Waiter> ready;
+            lock.lock();
+            try {
+                waiters.addLast(waiter);
+                ready = drainWaiters();
+            } finally {
+                lock.unlock();
+            }
+            // The caller is about to start its call anyway, so it may as well start it here.
+            Waiter.completeAll(ready);
+            return waiter.future;
+        }
+
+        /**
+         * Admits the call if the limits allow it.
+         *
+         * @return 0 if admitted; otherwise how long until the rate limits could admit it, or
+         *         {@code Long.MAX_VALUE} if it waits for a call in flight to finish
+         */
+        private long tryAdmit(long estimatedTokens, long now) {
+            refill(now);
+            boolean concurrencyAvailable = inFlight < (int) concurrencyLimit;
+            boolean requestAvailable = requestsPerNano <= 0 || requests >= 1;
+            // Tokens may go negative: a large call is admitted once the bucket is not in deficit.
+            boolean tokensAvailable = tokensPerNano <= 0 || tokens > 0;
+            if (concurrencyAvailable && requestAvailable && tokensAvailable) {
+                inFlight++;
+                if (requestsPerNano > 0) {
+                    requests -= 1;
+                }
+                if (tokensPerNano > 0) {
+                    tokens -= estimatedTokens;
+                }
+                return 0;
+            }
+            long waitNanos = Long.MAX_VALUE;
+            if (concurrencyAvailable && !requestAvailable) {
+                waitNanos = Math.min(waitNanos, (long) ((1 - requests) / requestsPerNano) + 1);
+            }
+            if (concurrencyAvailable && !tokensAvailable) {
+                waitNanos = Math.min(waitNanos, (long) (-tokens / tokensPerNano) + 1);
+            }
+            return waitNanos;
+        }
+
+        /**
+         * Admits queued async callers in order and expires those past their deadline; the
+         * caller completes the returned waiters once the lock is released. Schedules a wake-up
+         * for the next rate refill or deadline.
+         */
+        private List<Waiter> drainWaiters() {
+            List<Waiter> ready = new ArrayList<>();
+            long now = System.nanoTime();
+            long rateWaitNanos = Long.MAX_VALUE;
+            boolean blocked = false;
+            for (Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext(); ) {
+                Waiter waiter = iterator.next();
+                if (waiter.future.isDone()) {
+                    iterator.remove();
+                    continue;
+                }
+                if (!blocked) {
+                    rateWaitNanos = tryAdmit(waiter.estimatedTokens, now);
+                    if (rateWaitNanos == 0) {
+                        waiter.permit = new Permit(this, waiter.estimatedTokens);
+                        ready.add(waiter);
+                        iterator.remove();
+                        continue;
+                    }
+                }
+                if (waiter.deadlineNanos - now <= 0) {
+                    waiter.failure = timedOut();
+                    ready.add(waiter);
+                    iterator.remove();
+                } else {
+                    // Later callers wait behind the first one that is not admitted.
+                    blocked = true;
+                }
+            }
+            if (waiters.isEmpty()) {
+                return ready;
+            }
+            long delayNanos = rateWaitNanos;
+            for (Waiter waiter : waiters) {
+                delayNanos = Math.min(delayNanos, waiter.deadlineNanos - now);
+            }
+            if (wakeUp == null || now + delayNanos - wakeUpAtNanos < 0) {
+                if (wakeUp != null) {
+                    wakeUp.cancel(false);
+                }
+                wakeUpAtNanos = now + delayNanos;
+                wakeUp = SCHEDULER.schedule(this::wakeUp, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+            }
+            return ready;
+        }
+
+        private void wakeUp() {
+            List<Waiter> ready;
+            lock.lock();
+            try {
+                wakeUp = null;
+                ready = drainWaiters();
+            } finally {
+                lock.unlock();
+            }
+            Waiter.completeAll(ready);
+        }
+
+        private SdkClientException timedOut() {
+            return SdkClientException.create("Client-side admission for " + key + " timed out: "
+                    + inFlight + " calls in flight, concurrency limit " + (int) concurrencyLimit);
+        }
+
+        void release(boolean success, long refundedTokens) {
+            List<Waiter> ready;
+            lock.lock();
+            try {
+                inFlight--;
+                if (tokensPerNano > 0) {
+                    tokens = Math.min(tokenCapacity, tokens + refundedTokens);
+                }
+                if (success) {
+                    concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+                }
+                changed.signalAll();
+                ready = waiters.isEmpty() ? Collections.emptyList() : drainWaiters();
+            } finally {
+                lock.unlock();
+            }
+            // Released from a completion callback; starting the next calls here would nest them
+            // in that callback, so hand them to the scheduler.
+            if (!ready.isEmpty()) {
+                SCHEDULER.execute(() -> Waiter.completeAll(ready));
+            }
+        }
+
+        void onThrottled() {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                // One throttling episode usually fails many calls at once; halve once per interval.
+                if (now - decreasedAtNanos >= DECREASE_INTERVAL_NANOS) {
+                    concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+                    decreasedAtNanos = now;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill(long now) {
+            long elapsed = now - refilledAtNanos;
+            refilledAtNanos = now;
+            if (requestsPerNano > 0) {
+                requests = Math.min(requestCapacity, requests + elapsed * requestsPerNano);
+            }
+            if (tokensPerNano > 0) {
+                tokens = Math.min(tokenCapacity, tokens + elapsed * tokensPerNano);
+            }
+        }
+    }
+
+    /**
+     * An async caller queued for admission. Either {@code permit} or {@code failure} is set when
+     * it leaves the queue.
+     */
+    private static final class Waiter {
+        private final long estimatedTokens;
+        private final long deadlineNanos;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private Permit permit;
+        private SdkClientException failure;
+
+        Waiter(long estimatedTokens, long deadlineNanos) {
+            this.estimatedTokens = estimatedTokens;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        static void completeAll(List<Waiter> waiters) {
+            for (Waiter waiter : waiters) {
+                if (waiter.failure != null) {
+                    waiter.future.completeExceptionally(waiter.failure);
+                } else if (!waiter.future.complete(waiter.permit)) {
+                    // Cancelled while it was being admitted.
+                    waiter.permit.release(false, -1);
+                }
+            }
+        }
+    }
+
+    public static final class Builder {
+        private Limits defaultLimits = Limits.UNLIMITED;
+        private final Map<String, Limits> limitsByKey = new HashMap<>();
+        private int initialConcurrency = 16;
+        private int minConcurrency = 1;
+        private int maxConcurrency = 256;
+        private Duration maxWait = Duration.ofSeconds(30);
+        private int maxRetries = 3;
+        private Duration baseDelay = Duration.ofMillis(100);
+        private Duration throttlingBaseDelay = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(20);
+
+        private Builder() {
+        }
+
+        /**
+         * Limits for every model ID or endpoint without its own limits.
+         */
+        public Builder defaultLimits(Limits defaultLimits) {
+            this.defaultLimits = defaultLimits;
+            return this;
+        }
+
+        public Builder limits(String key, Limits limits) {
+            limitsByKey.put(key, limits);
+            return this;
+        }
+
+        public Builder initialConcurrency(int initialConcurrency) {
+            this.initialConcurrency = initialConcurrency;
+            return this;
+        }
+
+        public Builder minConcurrency(int minConcurrency) {
+            this.minConcurrency = minConcurrency;
+            return this;
+        }
+
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder baseDelay(Duration baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        public Builder throttlingBaseDelay(Duration throttlingBaseDelay) {
+            this.throttlingBaseDelay = throttlingBaseDelay;
+            return this;
+        }
+
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public AdmissionController build() {
+            return new AdmissionController(this);
+        }
+    }
+}
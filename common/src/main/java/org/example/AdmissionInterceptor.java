@@ -0,0 +1,125 @@
+package org.example;
+
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Admits each API call of a sync client through the {@link AdmissionController} and releases it
+ * when the call ends, and reports every throttled attempt to the controller.
+ * <p>
+ * Calls are keyed by the request's {@code modelId} (Bedrock) or {@code EndpointName} (SageMaker);
+ * other calls are not limited. Admission happens once per call, after marshalling, so retries of
+ * an admitted call do not queue again. Admission blocks the calling thread, so async clients
+ * install the interceptor with {@code admit} off and are admitted by
+ * {@link AdmissionController#admitAsync} instead.
+ */
+final class AdmissionInterceptor implements ExecutionInterceptor {
+
+    static final ExecutionAttribute<AdmissionController.Permit> PERMIT = new ExecutionAttribute<>("AdmissionPermit");
+
+    private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "ThrottlingException", "Throttling", "ThrottledException", "TooManyRequestsException",
+            "ProvisionedThroughputExceededException", "RequestLimitExceeded"));
+
+    private final AdmissionController controller;
+    private final boolean admit;
+
+    /**
+     * @param admit whether to admit calls here, blocking the calling thread, or only report throttling
+     */
+    AdmissionInterceptor(AdmissionController controller, boolean admit) {
+        this.controller = controller;
+        this.admit = admit;
+    }
+
+    @Override
+    public void afterMarshalling(Context.AfterMarshalling context, ExecutionAttributes executionAttributes) {
+        String key = AdmissionController.key(context.request());
+        if (!admit || key == null) {
+            return;
+        }
+        Optional<Long> contentLength = context.requestBody().isPresent()
+                ? context.requestBody().get().optionalContentLength()
+                : context.asyncRequestBody().flatMap(body -> body.contentLength());
+        long estimatedTokens = AdmissionController.estimatedTokens(context.request(), contentLength.orElse(0L));
+        executionAttributes.putAttribute(PERMIT, controller.acquire(key, estimatedTokens));
+    }
+
+    /**
+     * Runs once per attempt, so every throttled attempt lowers the concurrency limit, not only
+     * the last one.
+     */
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        String key = AdmissionController.key(context.request());
+        if (key != null && isThrottled(context.httpResponse())) {
+            controller.onThrottled(key);
+        }
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        AdmissionController.Permit permit = executionAttributes.getAttribute(PERMIT);
+        if (permit != null) {
+            permit.release(true, usedTokens(context.response(), context.httpResponse()));
+        }
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        String key = AdmissionController.key(context.request());
+        // Event stream errors arrive in the response body, after afterTransmission has run.
+        if (key != null && context.exception() instanceof SdkException
+                && RetryUtils.isThrottlingException((SdkException) context.exception())) {
+            controller.onThrottled(key);
+        }
+        AdmissionController.Permit permit = executionAttributes.getAttribute(PERMIT);
+        if (permit != null) {
+            permit.release(false, -1);
+        }
+    }
+
+    private static boolean isThrottled(SdkHttpResponse httpResponse) {
+        if (httpResponse.statusCode() == 429) {
+            return true;
+        }
+        // For example "ThrottlingException:http://internal.amazon.com/coral/com.amazon.coral.availability/".
+        return httpResponse.firstMatchingHeader("x-amzn-ErrorType")
+                .map(errorType -> errorType.split(":", 2)[0])
+                .map(THROTTLING_ERROR_CODES::contains)
+                .orElse(false);
+    }
+
+    /**
+     * @return the tokens reported by the response, or -1 if it does not report them
+     */
+    private static long usedTokens(SdkResponse response, SdkHttpResponse httpResponse) {
+        Optional<TokenUsage> usage = response.getValueForField("usage", TokenUsage.class);
+        if (usage.isPresent() && usage.get().totalTokens() != null) {
+            return usage.get().totalTokens();
+        }
+        // InvokeModel reports usage in headers.
+        Optional<String> inputTokens = httpResponse.firstMatchingHeader("X-Amzn-Bedrock-Input-Token-Count");
+        Optional<String> outputTokens = httpResponse.firstMatchingHeader("X-Amzn-Bedrock-Output-Token-Count");
+        if (inputTokens.isPresent() && outputTokens.isPresent()) {
+            try {
+                return Long.parseLong(inputTokens.get()) + Long.parseLong(outputTokens.get());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
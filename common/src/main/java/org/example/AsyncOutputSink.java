@@ -0,0 +1,182 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * An {@link OutputSink} that never blocks the writing thread. Writes go into a bounded ring
+ * buffer and a daemon thread drains it in batches of up to {@value #MAX_BATCH}, so a stream's
+ * tokens cost one queue insertion each on the SDK I/O thread and the destination sees one write
+ * and one flush per batch. When the buffer is full, writes are dropped and counted rather than
+ * stalling the stream.
+ */
+public final class AsyncOutputSink implements OutputSink {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncOutputSink.class);
+
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * Writes one batch to the destination, on the sink's thread.
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(List<String> batch) throws IOException;
+    }
+
+    private final String name;
+    private final BlockingQueue<String> queue;
+    private final BatchWriter batchWriter;
+    private final Closeable resource;
+    private final Thread drainer;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param resource closed after the last batch, or {@code null}
+     */
+    public AsyncOutputSink(String name, int capacity, BatchWriter batchWriter, Closeable resource) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchWriter = batchWriter;
+        this.resource = resource;
+        this.drainer = Thread.ofPlatform().name("output-sink-" + name).daemon(true).start(this::drain);
+    }
+
+    /**
+     * Writes to standard output, which is flushed after each batch but never closed.
+     */
+    public static AsyncOutputSink toConsole(int capacity) {
+        Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        return new AsyncOutputSink("console", capacity, batch -> writeAll(writer, batch), null);
+    }
+
+    /**
+     * Appends to {@code file} as UTF-8, creating it if needed.
+     */
+    public static AsyncOutputSink toFile(Path file, int capacity) throws IOException {
+        Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new AsyncOutputSink(file.getFileName().toString(), capacity, batch -> writeAll(writer, batch), writer);
+    }
+
+    /**
+     * Writes to {@code writer} and closes it with the sink.
+     */
+    public static AsyncOutputSink toWriter(String name, Writer writer, int capacity) {
+        return new AsyncOutputSink(name, capacity, batch -> writeAll(writer, batch), writer);
+    }
+
+    /**
+     * Hands each batch to {@code callback} on the sink's thread, where it may block.
+     */
+    public static AsyncOutputSink toCallback(String name, Consumer<List<String>> callback, int capacity) {
+        return new AsyncOutputSink(name, capacity, callback::accept, null);
+    }
+
+    @Override
+    public void write(String text) {
+        if (closed || !queue.offer(text)) {
+            dropped.increment();
+            return;
+        }
+        accepted.incrementAndGet();
+    }
+
+    @Override
+    public void flush() {
+        long target = accepted.get();
+        while (processed.get() < target && drainer.isAlive()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Writes what is still buffered, then stops the sink's thread and closes the destination.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close output sink {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * @return writes discarded because the buffer was full or the sink closed
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return writes lost because the destination failed
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            String first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = queue.poll();
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                batchWriter.write(batch);
+            } catch (IOException | RuntimeException e) {
+                failed.add(batch.size());
+                logger.warn("Output sink {} failed to write {} entries: {}", name, batch.size(), e.toString());
+            }
+            processed.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    private static void writeAll(Writer writer, List<String> batch) throws IOException {
+        for (String text : batch) {
+            writer.write(text);
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,237 @@
+package org.example;
+
+import org.HdrHistogram.ConcurrentDoubleHistogram;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.DoubleHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps latency histograms per model ID with HdrHistogram and optionally publishes them as
+ * JMX MXBeans under {@code org.example:type=InvocationMetrics,model=<modelId>}.
+ * <p>
+ * Client-observed values (time to first token, inter-chunk gaps, total duration, tokens per
+ * second) are stored next to the latencies the service reports, so the two can be compared.
+ */
+public class HdrMetricsSink implements MetricsSink {
+    private static final Logger logger = LoggerFactory.getLogger(HdrMetricsSink.class);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final boolean registerJmx;
+    private final ConcurrentMap<String, ModelStats> stats = new ConcurrentHashMap<>();
+
+    public HdrMetricsSink(boolean registerJmx) {
+        this.registerJmx = registerJmx;
+    }
+
+    @Override
+    public void recordTimeToFirstToken(String modelId, long nanos) {
+        stats(modelId).timeToFirstTokenMicros.recordValue(toMicros(nanos));
+    }
+
+    @Override
+    public void recordInterChunkGap(String modelId, long nanos) {
+        stats(modelId).interChunkGapMicros.recordValue(toMicros(nanos));
+    }
+
+    @Override
+    public void recordCompletion(String modelId, long durationNanos, long outputTokens) {
+        ModelStats modelStats = stats(modelId);
+        modelStats.completions.increment();
+        modelStats.durationMicros.recordValue(toMicros(durationNanos));
+        if (outputTokens > 0 && durationNanos > 0) {
+            modelStats.tokensPerSecond.recordValue(outputTokens * 1e9 / durationNanos);
+        }
+    }
+
+    @Override
+    public void recordServerLatency(String modelId, long invocationLatencyMillis, long firstByteLatencyMillis) {
+        ModelStats modelStats = stats(modelId);
+        if (invocationLatencyMillis >= 0) {
+            modelStats.serverInvocationLatencyMillis.recordValue(invocationLatencyMillis);
+        }
+        if (firstByteLatencyMillis >= 0) {
+            modelStats.serverFirstByteLatencyMillis.recordValue(firstByteLatencyMillis);
+        }
+    }
+
+    @Override
+    public void recordFailure(String modelId, Throwable error) {
+        stats(modelId).failures.increment();
+    }
+
+    /**
+     * @return the statistics of every model seen so far, keyed by model ID
+     */
+    public Map<String, ModelStats> snapshot() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private ModelStats stats(String modelId) {
+        ModelStats modelStats = stats.get(modelId);
+        if (modelStats == null) {
+            modelStats = stats.computeIfAbsent(modelId, this::newStats);
+        }
+        return modelStats;
+    }
+
+    private ModelStats newStats(String modelId) {
+        ModelStats modelStats = new ModelStats();
+        if (registerJmx) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName("org.example:type=InvocationMetrics,model=" + ObjectName.quote(modelId));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(modelStats, name);
+                }
+            } catch (JMException e) {
+                logger.warn("Failed to register invocation metrics for {} with JMX", modelId, e);
+            }
+        }
+        return modelStats;
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * JMX view of the statistics of one model. Latencies are in milliseconds.
+     */
+    public interface ModelStatsMXBean {
+        long getCompletions();
+
+        long getFailures();
+
+        double getTimeToFirstTokenP50Millis();
+
+        double getTimeToFirstTokenP99Millis();
+
+        double getInterChunkGapP50Millis();
+
+        double getInterChunkGapP99Millis();
+
+        double getDurationP50Millis();
+
+        double getDurationP99Millis();
+
+        double getTokensPerSecondMean();
+
+        double getServerFirstByteLatencyP50Millis();
+
+        double getServerInvocationLatencyP50Millis();
+    }
+
+    public static final class ModelStats implements ModelStatsMXBean {
+        private final LongAdder completions = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final Histogram timeToFirstTokenMicros = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final Histogram interChunkGapMicros = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final Histogram durationMicros = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final DoubleHistogram tokensPerSecond = new ConcurrentDoubleHistogram(SIGNIFICANT_DIGITS);
+        private final Histogram serverFirstByteLatencyMillis = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final Histogram serverInvocationLatencyMillis = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+        private ModelStats() {
+        }
+
+        @Override
+        public long getCompletions() {
+            return completions.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public double getTimeToFirstTokenP50Millis() {
+            return microsPercentile(timeToFirstTokenMicros, 50);
+        }
+
+        @Override
+        public double getTimeToFirstTokenP99Millis() {
+            return microsPercentile(timeToFirstTokenMicros, 99);
+        }
+
+        @Override
+        public double getInterChunkGapP50Millis() {
+            return microsPercentile(interChunkGapMicros, 50);
+        }
+
+        @Override
+        public double getInterChunkGapP99Millis() {
+            return microsPercentile(interChunkGapMicros, 99);
+        }
+
+        @Override
+        public double getDurationP50Millis() {
+            return microsPercentile(durationMicros, 50);
+        }
+
+        @Override
+        public double getDurationP99Millis() {
+            return microsPercentile(durationMicros, 99);
+        }
+
+        @Override
+        public double getTokensPerSecondMean() {
+            return tokensPerSecond.getTotalCount() == 0 ? 0 : tokensPerSecond.getMean();
+        }
+
+        @Override
+        public double getServerFirstByteLatencyP50Millis() {
+            return serverFirstByteLatencyMillis.getValueAtPercentile(50);
+        }
+
+        @Override
+        public double getServerInvocationLatencyP50Millis() {
+            return serverInvocationLatencyMillis.getValueAtPercentile(50);
+        }
+
+        /** @return the raw time-to-first-token histogram in microseconds */
+        public Histogram timeToFirstTokenMicros() {
+            return timeToFirstTokenMicros;
+        }
+
+        /** @return the raw inter-chunk gap histogram in microseconds */
+        public Histogram interChunkGapMicros() {
+            return interChunkGapMicros;
+        }
+
+        /** @return the raw total duration histogram in microseconds */
+        public Histogram durationMicros() {
+            return durationMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("completions=%d failures=%d ttft p50/p99=%.1f/%.1fms gap p50/p99=%.1f/%.1fms "
+                            + "duration p50/p99=%.1f/%.1fms tokens/s=%.1f server firstByte/invocation p50=%.0f/%.0fms",
+                    getCompletions(), getFailures(),
+                    getTimeToFirstTokenP50Millis(), getTimeToFirstTokenP99Millis(),
+                    getInterChunkGapP50Millis(), getInterChunkGapP99Millis(),
+                    getDurationP50Millis(), getDurationP99Millis(),
+                    getTokensPerSecondMean(),
+                    getServerFirstByteLatencyP50Millis(), getServerInvocationLatencyP50Millis());
+        }
+
+        private static double microsPercentile(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.example;
+
+/**
+ * Receives client-side latency measurements for model invocations, keyed by model ID or
+ * endpoint name. Implementations must be thread-safe and must not block, because streaming
+ * measurements are reported from SDK I/O threads.
+ * <p>
+ * {@link HdrMetricsSink} keeps HdrHistogram percentiles and exposes them over JMX; other
+ * backends such as Micrometer can be plugged in by implementing this interface.
+ */
+public interface MetricsSink {
+
+    /** A sink that drops every measurement. */
+    MetricsSink NONE = new MetricsSink() {
+    };
+
+    /**
+     * Time from sending the request to the first response chunk (the full response for unary calls).
+     */
+    default void recordTimeToFirstToken(String modelId, long nanos) {
+    }
+
+    /**
+     * Gap between two consecutive response chunks of a streaming call.
+     */
+    default void recordInterChunkGap(String modelId, long nanos) {
+    }
+
+    /**
+     * Total client-observed duration of a successful call and the output tokens it produced
+     * ({@code outputTokens} is negative when the response does not report usage).
+     */
+    default void recordCompletion(String modelId, long durationNanos, long outputTokens) {
+    }
+
+    /**
+     * Latencies reported by the service itself, in milliseconds; negative values are not reported.
+     */
+    default void recordServerLatency(String modelId, long invocationLatencyMillis, long firstByteLatencyMillis) {
+    }
+
+    default void recordFailure(String modelId, Throwable error) {
+    }
+}
@@ -0,0 +1,58 @@
+package org.example;
+
+import java.util.function.Consumer;
+
+/**
+ * Receives streamed tokens and telemetry events. Implementations must be thread-safe and must not
+ * block, because tokens are written from SDK I/O threads; {@link AsyncOutputSink} queues them and
+ * does the I/O on its own thread.
+ */
+public interface OutputSink extends AutoCloseable {
+
+    /** A sink that drops everything. */
+    OutputSink NONE = text -> {
+    };
+
+    /**
+     * Appends {@code text}, e.g. one token, as is.
+     */
+    void write(String text);
+
+    /**
+     * Writes a telemetry event as one line of {@code key=value} pairs, e.g.
+     * {@code event=usage inputTokens=12 outputTokens=40}. Values with spaces or quotes are quoted.
+     */
+    default void event(String name, Object... keyValues) {
+        StringBuilder line = new StringBuilder(32 + keyValues.length * 16).append("event=").append(name);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            line.append(' ').append(keyValues[i]).append('=');
+            String value = String.valueOf(keyValues[i + 1]);
+            if (value.isEmpty() || value.indexOf(' ') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                line.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                        .append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        write(line.append('\n').toString());
+    }
+
+    /**
+     * Blocks until everything written so far has reached its destination. Never call it from an
+     * SDK I/O thread.
+     */
+    default void flush() {
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * A sink that hands every write to {@code callback} on the writing thread, so the callback
+     * must not block either.
+     */
+    static OutputSink of(Consumer<String> callback) {
+        return callback::accept;
+    }
+}
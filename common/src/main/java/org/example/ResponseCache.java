@@ -0,0 +1,560 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Exact-match cache of model responses.
+ * <p>
+ * Entries are keyed by {@link #key}, a SHA-256 over the endpoint or model ID, the normalized payload
+ * and the inference parameters. The in-heap tier is a Caffeine cache bounded by bytes, which evicts
+ * with W-TinyLFU; the optional disk tier keeps one memory-mapped file per entry, so cached responses
+ * survive restarts. Every entry expires after the TTL it was stored with. Concurrent requests for a
+ * key that is being loaded wait for that load instead of calling the model again.
+ */
+public final class ResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    // Sorted keys make {"a":1,"b":2} and {"b":2,"a":1} hash the same.
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Cache<String, Entry> memory;
+    private final DiskTier disk;
+    private final ConcurrentMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    private final Stats stats = new Stats();
+
+    private ResponseCache(Builder builder) {
+        this.enabled = builder.enabled;
+        this.ttl = builder.ttl;
+        this.memory = !enabled ? null : Caffeine.newBuilder()
+                .maximumWeight(builder.maxBytes)
+                .weigher((String key, Entry entry) -> key.length() + entry.value.length)
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+        this.disk = enabled && builder.diskDirectory != null
+                ? new DiskTier(builder.diskDirectory, builder.diskMaxBytes)
+                : null;
+        if (enabled && builder.registerJmx) {
+            register(builder.name);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads the {@code cache.*} settings; {@code cache.diskDirectory} enables the disk tier.
+     */
+    public static ResponseCache fromProperties(Properties properties, String name) {
+        String diskDirectory = properties.getProperty("cache.diskDirectory", "").trim();
+        return builder()
+                .name(name)
+                .enabled(Boolean.parseBoolean(properties.getProperty("cache.enabled", "false").trim()))
+                .maxBytes(longProperty(properties, "cache.maxBytes", 64L << 20))
+                .ttl(Duration.ofSeconds(longProperty(properties, "cache.ttlSeconds", 300)))
+                .diskDirectory(diskDirectory.isEmpty() ? null : Paths.get(diskDirectory))
+                .diskMaxBytes(longProperty(properties, "cache.diskMaxBytes", 1L << 30))
+                .registerJmx(Boolean.parseBoolean(properties.getProperty("metrics.jmx", "true").trim()))
+                .build();
+    }
+
+    /**
+     * @param target      endpoint name or model ID
+     * @param payload     request payload; JSON is compared by content, other text ignoring surrounding whitespace
+     * @param maxTokens   may be {@code null}, like the other inference parameters
+     * @return the cache key of the request
+     */
+    public static String key(String target, String payload, Integer maxTokens, Float temperature, Float topP) {
+        String material = target + '\n' + normalize(payload) + '\n'
+                + "maxTokens=" + maxTokens + ",temperature=" + temperature + ",topP=" + topP;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(material.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached response for {@code key}, or calls {@code loader} once and caches its result.
+     * Exceptions from the loader are rethrown to every caller waiting for it and are not cached.
+     */
+    public byte[] get(String key, Supplier<byte[]> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry entry = memory.getIfPresent(key);
+        if (entry != null) {
+            return hit(entry, stats.hits);
+        }
+        if (disk != null) {
+            entry = disk.read(key);
+            if (entry != null) {
+                memory.put(key, entry);
+                return hit(entry, stats.diskHits);
+            }
+        }
+
+        CompletableFuture<Entry> load = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            stats.collapsed.increment();
+            try {
+                return hit(existing.join(), stats.hits);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        stats.misses.increment();
+        try {
+            long start = System.nanoTime();
+            byte[] value = loader.get();
+            entry = new Entry(value, System.currentTimeMillis() + ttl.toMillis(), System.nanoTime() - start);
+            stats.bytesLoaded.add(value.length);
+            memory.put(key, entry);
+            if (disk != null) {
+                disk.write(key, entry);
+            }
+            load.complete(entry);
+            return value;
+        } catch (RuntimeException | Error e) {
+            stats.loadFailures.increment();
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    /**
+     * @return live hit, miss and size counters of this cache
+     */
+    public Stats stats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return stats.toString();
+    }
+
+    private byte[] hit(Entry entry, LongAdder counter) {
+        counter.increment();
+        stats.bytesServed.add(entry.value.length);
+        stats.savedNanos.add(entry.loadNanos);
+        return entry.value;
+    }
+
+    private void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.example:type=ResponseCache,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(stats, objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register response cache {} with JMX", name, e);
+        }
+    }
+
+    private static String normalize(String payload) {
+        String trimmed = payload.trim();
+        if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
+            try {
+                JsonNode tree = CANONICAL_MAPPER.readTree(trimmed);
+                return CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.treeToValue(tree, Object.class));
+            } catch (JsonProcessingException e) {
+                // Not JSON after all; compare it as text.
+            }
+        }
+        return trimmed;
+    }
+
+    private static long longProperty(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + key + " in config.properties: " + value, e);
+        }
+    }
+
+    /**
+     * JMX view of the cache. {@code SavedMillis} is the model latency that cache hits avoided.
+     */
+    public interface ResponseCacheMXBean {
+        long getHits();
+
+        long getDiskHits();
+
+        long getMisses();
+
+        long getCollapsedRequests();
+
+        long getLoadFailures();
+
+        long getBytesServed();
+
+        long getBytesLoaded();
+
+        long getSavedMillis();
+
+        long getEntries();
+
+        long getEvictions();
+
+        long getDiskBytes();
+    }
+
+    /**
+     * Counters of one cache, also published over JMX.
+     */
+    public final class Stats implements ResponseCacheMXBean {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder diskHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder collapsed = new LongAdder();
+        private final LongAdder loadFailures = new LongAdder();
+        private final LongAdder bytesServed = new LongAdder();
+        private final LongAdder bytesLoaded = new LongAdder();
+        private final LongAdder savedNanos = new LongAdder();
+
+        private Stats() {
+        }
+
+        @Override
+        public long getHits() {
+            return hits.sum();
+        }
+
+        @Override
+        public long getDiskHits() {
+            return diskHits.sum();
+        }
+
+        @Override
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        @Override
+        public long getCollapsedRequests() {
+            return collapsed.sum();
+        }
+
+        @Override
+        public long getLoadFailures() {
+            return loadFailures.sum();
+        }
+
+        @Override
+        public long getBytesServed() {
+            return bytesServed.sum();
+        }
+
+        @Override
+        public long getBytesLoaded() {
+            return bytesLoaded.sum();
+        }
+
+        @Override
+        public long getSavedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(savedNanos.sum());
+        }
+
+        @Override
+        public long getEntries() {
+            return enabled ? memory.estimatedSize() : 0;
+        }
+
+        @Override
+        public long getEvictions() {
+            return enabled ? memory.stats().evictionCount() : 0;
+        }
+
+        @Override
+        public long getDiskBytes() {
+            return disk != null ? disk.sizeBytes.get() : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d diskHits=%d misses=%d collapsed=%d loadFailures=%d bytesServed=%d"
+                            + " bytesLoaded=%d savedMillis=%d entries=%d evictions=%d diskBytes=%d",
+                    getHits(), getDiskHits(), getMisses(), getCollapsedRequests(), getLoadFailures(), getBytesServed(),
+                    getBytesLoaded(), getSavedMillis(), getEntries(), getEvictions(), getDiskBytes());
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] value;
+        private final long expiresAtMillis;
+        // How long the model took to produce the value; every hit saves about that much.
+        private final long loadNanos;
+
+        Entry(byte[] value, long expiresAtMillis, long loadNanos) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+            this.loadNanos = loadNanos;
+        }
+
+        long remainingNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAtMillis - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Keeps each entry until the expiry it was stored with, also after it is promoted from disk.
+     */
+    private static final class EntryExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            return entry.remainingNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return entry.remainingNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * One file per entry: a header (magic, expiry, load time, length) followed by the value. Files
+     * are written to a temporary name and moved into place, so readers never see a partial entry.
+     * When the directory grows past its budget, the oldest files are deleted.
+     */
+    private static final class DiskTier {
+        private static final int MAGIC = 0x52434831;
+        private static final int HEADER_BYTES = 4 + 8 + 8 + 4;
+        private static final String SUFFIX = ".entry";
+
+        private final Path directory;
+        private final long maxBytes;
+        private final AtomicLong sizeBytes = new AtomicLong();
+
+        DiskTier(Path directory, long maxBytes) {
+            this.directory = directory;
+            this.maxBytes = maxBytes;
+            try {
+                Files.createDirectories(directory);
+                for (Path file : files()) {
+                    sizeBytes.addAndGet(Files.size(file));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to use response cache directory " + directory, e);
+            }
+        }
+
+        Entry read(String key) {
+            Path file = directory.resolve(key + SUFFIX);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                    delete(file);
+                    return null;
+                }
+                long expiresAtMillis = buffer.getLong();
+                long loadNanos = buffer.getLong();
+                int length = buffer.getInt();
+                if (expiresAtMillis <= System.currentTimeMillis() || buffer.remaining() != length) {
+                    delete(file);
+                    return null;
+                }
+                byte[] value = new byte[length];
+                buffer.get(value);
+                return new Entry(value, expiresAtMillis, loadNanos);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                logger.warn("Failed to read cached response {}", file, e);
+                return null;
+            }
+        }
+
+        void write(String key, Entry entry) {
+            Path file = directory.resolve(key + SUFFIX);
+            Path temp = directory.resolve(key + "." + Thread.currentThread().getId() + ".tmp");
+            int size = HEADER_BYTES + entry.value.length;
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    buffer.putInt(MAGIC).putLong(entry.expiresAtMillis).putLong(entry.loadNanos)
+                            .putInt(entry.value.length).put(entry.value);
+                    buffer.force();
+                }
+                long previous = Files.exists(file) ? Files.size(file) : 0;
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (sizeBytes.addAndGet(size - previous) > maxBytes) {
+                    trim();
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to write cached response {}", file, e);
+                delete(temp);
+            }
+        }
+
+        private synchronized void trim() {
+            List<Path> files = files();
+            files.sort((a, b) -> Long.compare(lastModified(a), lastModified(b)));
+            long target = maxBytes - maxBytes / 10;
+            for (Path file : files) {
+                if (sizeBytes.get() <= target) {
+                    break;
+                }
+                delete(file);
+            }
+        }
+
+        private List<Path> files() {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to list response cache directory {}", directory, e);
+            }
+            return files;
+        }
+
+        private void delete(Path file) {
+            try {
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file) && file.toString().endsWith(SUFFIX)) {
+                    sizeBytes.addAndGet(-size);
+                }
+            } catch (IOException e) {
+                // Already gone, or still mapped by a reader on some platforms; retried on the next trim.
+            }
+        }
+
+        private static long lastModified(Path file) {
+            try {
+                return Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private String name = "default";
+        private boolean enabled = true;
+        private long maxBytes = 64L << 20;
+        private Duration ttl = Duration.ofMinutes(5);
+        private Path diskDirectory;
+        private long diskMaxBytes = 1L << 30;
+        private boolean registerJmx;
+
+        private Builder() {
+        }
+
+        /**
+         * Name of the JMX bean, {@code org.example:type=ResponseCache,name=<name>}.
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * A disabled cache calls the loader every time and records nothing.
+         */
+        public Builder enabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        /**
+         * Size bound of the in-heap tier, counting key and value bytes.
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Directory of the disk tier; {@code null} keeps responses in heap only.
+         */
+        public Builder diskDirectory(Path diskDirectory) {
+            this.diskDirectory = diskDirectory;
+            return this;
+        }
+
+        public Builder diskMaxBytes(long diskMaxBytes) {
+            this.diskMaxBytes = diskMaxBytes;
+            return this;
+        }
+
+        public Builder registerJmx(boolean registerJmx) {
+            this.registerJmx = registerJmx;
+            return this;
+        }
+
+        public ResponseCache build() {
+            return new ResponseCache(this);
+        }
+    }
+}
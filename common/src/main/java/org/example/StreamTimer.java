@@ -0,0 +1,64 @@
+package org.example;
+
+/**
+ * Measures one invocation and reports it to a {@link MetricsSink}.
+ * <p>
+ * The SDK delivers the events of a single stream one at a time, so a timer needs no locking;
+ * it must not be shared between invocations.
+ */
+public final class StreamTimer {
+    private final MetricsSink sink;
+    private final String modelId;
+    private final long startNanos;
+    private long lastChunkNanos;
+    private boolean firstChunkSeen;
+    private boolean finished;
+
+    private StreamTimer(MetricsSink sink, String modelId) {
+        this.sink = sink;
+        this.modelId = modelId;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts timing an invocation that is about to be sent.
+     */
+    public static StreamTimer start(MetricsSink sink, String modelId) {
+        return new StreamTimer(sink, modelId);
+    }
+
+    /**
+     * Marks the arrival of a response chunk, or of the whole response for unary calls.
+     */
+    public void onChunk() {
+        long now = System.nanoTime();
+        if (!firstChunkSeen) {
+            firstChunkSeen = true;
+            sink.recordTimeToFirstToken(modelId, now - startNanos);
+        } else {
+            sink.recordInterChunkGap(modelId, now - lastChunkNanos);
+        }
+        lastChunkNanos = now;
+    }
+
+    public void onServerLatency(long invocationLatencyMillis, long firstByteLatencyMillis) {
+        sink.recordServerLatency(modelId, invocationLatencyMillis, firstByteLatencyMillis);
+    }
+
+    /**
+     * Records the end of a successful invocation; later calls to {@link #finish} or {@link #fail} are ignored.
+     */
+    public void finish(long outputTokens) {
+        if (!finished) {
+            finished = true;
+            sink.recordCompletion(modelId, System.nanoTime() - startNanos, outputTokens);
+        }
+    }
+
+    public void fail(Throwable error) {
+        if (!finished) {
+            finished = true;
+            sink.recordFailure(modelId, error);
+        }
+    }
+}
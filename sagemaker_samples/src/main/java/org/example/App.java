@@ -2,26 +2,58 @@ package org.example;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
 public class App {
     private static final Logger logger = LoggerFactory.getLogger(App.class);
 
     public static void main(String... args) {
         logger.info("Application starts - SageMaker endpoint invocation");
 
+        // Build the clients and open their connections before the first request needs them
+        DependencyFactory.warmUp();
+
         Handler handler = new Handler();
 
         // List available endpoints
         handler.listEndpoints();
 
-        // Example 1: Invoke the first available endpoint with a default query
+        // Wait once at startup so that requests without an endpoint name can be routed
+        if (!handler.endpointRegistry().awaitInitialLoad(Duration.ofSeconds(10))) {
+            logger.warn("Endpoint registry not loaded, requests without an endpoint name may be skipped");
+        }
+
+        // Example 1: Invoke a registered InService endpoint with a default query
         handler.sendRequest(null, null);
 
         // Example 2: Invoke a specific endpoint with a custom query
         handler.sendRequest("your-endpoint-name", "Custom query text");
 
-        // Example 3: Invoke the first available endpoint with a custom query
+        // Example 3: Invoke a registered InService endpoint with a custom query
         handler.sendRequest(null, "Another custom query");
 
+        // Example 4: Invoke an endpoint for a batch of queries concurrently
+        List<String> queries = Arrays.asList("First batch query", "Second batch query", "Third batch query");
+        for (BatchInvoker.InvocationResult result : handler.invokeAll("your-endpoint-name", queries)) {
+            logger.info("Batch result {}: {}", result.index(), result.isSuccess() ? result.body() : result.error().toString());
+        }
+
+        // Example 5: Stream an answer into the output sink as it is generated
+        try {
+            handler.invokeEndpointStreaming("your-endpoint-name", "Streamed query").join();
+        } catch (CompletionException e) {
+            logger.error("Streaming request to endpoint failed: {}", e.getCause().toString());
+        }
+
+        if (DependencyFactory.metricsSink() instanceof HdrMetricsSink) {
+            ((HdrMetricsSink) DependencyFactory.metricsSink()).snapshot()
+                    .forEach((endpoint, stats) -> logger.info("Latency for {}: {}", endpoint, stats));
+        }
+        logger.info("Response cache: {}", handler.responseCache().stats());
+
         logger.info("Application ends - SageMaker endpoint invocation complete");
     }
 }
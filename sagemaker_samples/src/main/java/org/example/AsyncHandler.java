@@ -0,0 +1,58 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the blocking {@link Handler} calls on an executor and hands back futures, so a
+ * request-serving tier can keep many model calls outstanding without dedicating a platform
+ * thread to each for the whole model latency.
+ * <p>
+ * By default every call gets its own virtual thread, which leaves its carrier thread while the
+ * SDK waits on the socket. A virtual thread still occupies its carrier while it holds a monitor
+ * or waits in native code, so this mode is paired with {@code http.client=urlconnection} unless
+ * another client is set: the JDK's HttpURLConnection guards its state with
+ * {@code java.util.concurrent} locks and has no connection pool limit to queue on. With
+ * {@code apache}, size {@code http.maxConnections} to the expected concurrency, since callers
+ * beyond it wait for a pooled connection.
+ */
+public class AsyncHandler {
+    private final Handler handler;
+    private final ExecutorService executor;
+
+    /**
+     * Uses the shared executor configured by {@code execution.threads}.
+     */
+    public AsyncHandler(Handler handler) {
+        this(handler, DependencyFactory.handlerExecutor());
+    }
+
+    public AsyncHandler(Handler handler, ExecutorService executor) {
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    /**
+     * @see Handler#invokeEndpoint(String, String)
+     */
+    public CompletableFuture<String> invokeEndpoint(String endpointName, String inputText) {
+        return CompletableFuture.supplyAsync(() -> handler.invokeEndpoint(endpointName, inputText), executor);
+    }
+
+    /**
+     * @see Handler#invokeEndpoint(String, ByteBuffer, String, String)
+     */
+    public CompletableFuture<ByteBuffer> invokeEndpoint(String endpointName, ByteBuffer body, String contentType,
+                                                        String accept) {
+        return CompletableFuture.supplyAsync(
+                () -> handler.invokeEndpoint(endpointName, body, contentType, accept), executor);
+    }
+
+    /**
+     * @see Handler#converse(String, String)
+     */
+    public CompletableFuture<String> converse(String modelId, String inputText) {
+        return CompletableFuture.supplyAsync(() -> handler.converse(modelId, inputText), executor);
+    }
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs several inputs into one endpoint payload and splits the endpoint's answer again, for
+ * {@link MicroBatcher}. Implement it for model containers with other batch formats.
+ */
+public interface BatchCodec {
+
+    /**
+     * @return the content type of the encoded payload
+     */
+    String contentType();
+
+    SdkBytes encode(List<String> inputs);
+
+    /**
+     * @return one output per input, in input order
+     * @throws IllegalArgumentException if the response cannot be split
+     */
+    List<String> decode(SdkBytes response, int inputCount);
+
+    /**
+     * @return the codec that sends a JSON array of strings and expects a JSON array of the same length;
+     *         string outputs are returned as-is, other values as JSON text
+     */
+    static BatchCodec jsonArray() {
+        return JsonArrayCodec.INSTANCE;
+    }
+
+    final class JsonArrayCodec implements BatchCodec {
+        private static final JsonArrayCodec INSTANCE = new JsonArrayCodec();
+        private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+        private JsonArrayCodec() {
+        }
+
+        @Override
+        public String contentType() {
+            return "application/json";
+        }
+
+        @Override
+        public SdkBytes encode(List<String> inputs) {
+            ArrayNode array = OBJECT_MAPPER.createArrayNode();
+            for (String input : inputs) {
+                array.add(input);
+            }
+            try {
+                return SdkBytes.fromByteArrayUnsafe(OBJECT_MAPPER.writeValueAsBytes(array));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException("Failed to encode batch", e);
+            }
+        }
+
+        @Override
+        public List<String> decode(SdkBytes response, int inputCount) {
+            JsonNode array;
+            try {
+                array = OBJECT_MAPPER.readTree(response.asByteArrayUnsafe());
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Batch response is not JSON", e);
+            }
+            if (array == null || !array.isArray() || array.size() != inputCount) {
+                throw new IllegalArgumentException("Expected a JSON array of " + inputCount + " outputs");
+            }
+            List<String> outputs = new ArrayList<>(inputCount);
+            for (JsonNode output : array) {
+                outputs.add(output.isTextual() ? output.textValue() : output.toString());
+            }
+            return outputs;
+        }
+    }
+}
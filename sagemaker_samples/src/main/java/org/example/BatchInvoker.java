@@ -0,0 +1,224 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Invokes a SageMaker endpoint for many inputs at once on the async runtime client.
+ * <p>
+ * At most {@code maxInFlight} requests are outstanding per batch; every completion launches the
+ * next pending input, so the endpoint stays saturated without blocking a thread per request.
+ * Each request is bounded by its own API call timeout, and failures are reported per input
+ * instead of failing the whole batch. With an {@link AdmissionController}, each request waits
+ * for admission without holding a thread. The async client is not owned by the invoker.
+ */
+public class BatchInvoker {
+    private static final Logger logger = LoggerFactory.getLogger(BatchInvoker.class);
+
+    private final SageMakerRuntimeAsyncClient sageMakerRuntimeAsync;
+    private final AdmissionController admissionController;
+    private final int maxInFlight;
+    private final Duration requestTimeout;
+
+    /**
+     * @param admissionController admits each request, or {@code null} to send them unlimited
+     */
+    public BatchInvoker(SageMakerRuntimeAsyncClient sageMakerRuntimeAsync, AdmissionController admissionController,
+                        int maxInFlight, Duration requestTimeout) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.sageMakerRuntimeAsync = sageMakerRuntimeAsync;
+        this.admissionController = admissionController;
+        this.maxInFlight = maxInFlight;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Invokes the endpoint once per input and waits for all of them.
+     *
+     * @return one result per input, in input order
+     */
+    public List<InvocationResult> invokeAll(String endpointName, List<String> inputs) {
+        return invokeAllStreaming(endpointName, inputs, result -> { }).join();
+    }
+
+    /**
+     * Invokes the endpoint once per input without blocking the caller.
+     * <p>
+     * {@code onResult} is called as each invocation finishes, in completion order and possibly
+     * from several SDK threads at once, so it must be thread-safe and must not block. Exceptions
+     * it throws are logged; an {@link Error} stops the batch and fails the returned future.
+     *
+     * @return a future completed with all results in input order once every invocation finished
+     */
+    public CompletableFuture<List<InvocationResult>> invokeAllStreaming(String endpointName, List<String> inputs,
+                                                                        Consumer<InvocationResult> onResult) {
+        Batch batch = new Batch(endpointName, new ArrayList<>(inputs), onResult);
+        batch.start();
+        return batch.done;
+    }
+
+    private CompletableFuture<InvocationResult> invokeOne(String endpointName, int index, String inputText) {
+        InvokeEndpointRequest request = InvokeEndpointRequest.builder()
+                .endpointName(endpointName)
+                .contentType("text/plain")
+                .body(SdkBytes.fromString(inputText, StandardCharsets.UTF_8))
+                .overrideConfiguration(o -> o.apiCallTimeout(requestTimeout))
+                .build();
+
+        long start = System.nanoTime();
+        CompletableFuture<InvocationResult> future;
+        try {
+            future = (admissionController == null
+                    ? sageMakerRuntimeAsync.invokeEndpoint(request)
+                    : admissionController.admitAsync(request, () -> sageMakerRuntimeAsync.invokeEndpoint(request)))
+                    .thenApply(response -> InvocationResult.success(
+                            index, response.body().asUtf8String(), System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.exceptionally(t -> {
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            logger.warn("Invocation {} on endpoint {} failed: {}", index, endpointName, cause.toString());
+            return InvocationResult.failure(index, cause, System.nanoTime() - start);
+        });
+    }
+
+    private final class Batch {
+        private final String endpointName;
+        private final List<String> inputs;
+        private final Consumer<InvocationResult> onResult;
+        private final InvocationResult[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        // Launches requested but not yet made; see launchNext.
+        private final AtomicInteger launches = new AtomicInteger();
+        private final CompletableFuture<List<InvocationResult>> done = new CompletableFuture<>();
+
+        Batch(String endpointName, List<String> inputs, Consumer<InvocationResult> onResult) {
+            this.endpointName = endpointName;
+            this.inputs = inputs;
+            this.onResult = onResult;
+            this.results = new InvocationResult[inputs.size()];
+            this.remaining = new AtomicInteger(inputs.size());
+        }
+
+        void start() {
+            if (inputs.isEmpty()) {
+                done.complete(Collections.<InvocationResult>emptyList());
+                return;
+            }
+            int initial = Math.min(maxInFlight, inputs.size());
+            for (int i = 0; i < initial; i++) {
+                launchNext();
+            }
+        }
+
+        /**
+         * Launches the next pending input. A future that is already complete runs its callback,
+         * and so the next launch, on this thread; instead of recursing, the nested call leaves
+         * its launch to the loop of the outermost one.
+         */
+        private void launchNext() {
+            if (launches.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                launchOne();
+            } while (launches.decrementAndGet() != 0);
+        }
+
+        private void launchOne() {
+            int index = next.getAndIncrement();
+            if (index >= inputs.size() || done.isDone()) {
+                return;
+            }
+            invokeOne(endpointName, index, inputs.get(index))
+                    .thenAccept(result -> onCompleted(index, result))
+                    .whenComplete((ignored, error) -> {
+                        // An Error from onResult would otherwise leave the batch waiting forever.
+                        if (error != null) {
+                            done.completeExceptionally(error);
+                        }
+                    });
+        }
+
+        private void onCompleted(int index, InvocationResult result) {
+            results[index] = result;
+            try {
+                onResult.accept(result);
+            } catch (RuntimeException e) {
+                logger.warn("Result callback failed for invocation {}", index, e);
+            }
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(Collections.unmodifiableList(Arrays.asList(results)));
+            } else {
+                launchNext();
+            }
+        }
+    }
+
+    /**
+     * Outcome of a single invocation within a batch.
+     */
+    public static final class InvocationResult {
+        private final int index;
+        private final String body;
+        private final Throwable error;
+        private final long latencyNanos;
+
+        private InvocationResult(int index, String body, Throwable error, long latencyNanos) {
+            this.index = index;
+            this.body = body;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        static InvocationResult success(int index, String body, long latencyNanos) {
+            return new InvocationResult(index, body, null, latencyNanos);
+        }
+
+        static InvocationResult failure(int index, Throwable error, long latencyNanos) {
+            return new InvocationResult(index, null, error, latencyNanos);
+        }
+
+        /** @return the position of the input this result belongs to */
+        public int index() {
+            return index;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /** @return the response body, or {@code null} if the invocation failed */
+        public String body() {
+            return body;
+        }
+
+        /** @return the failure cause, or {@code null} if the invocation succeeded */
+        public Throwable error() {
+            return error;
+        }
+
+        public long latencyNanos() {
+            return latencyNanos;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Runs a {@link BulkPipeline} from the command line:
+ * <pre>
+ * BulkApp input.jsonl output.jsonl sagemaker:my-endpoint
+ * BulkApp input.jsonl output.jsonl bedrock:anthropic.claude-3-haiku-20240307-v1:0
+ * </pre>
+ * Rerunning the same command after a crash resumes from the last checkpoint.
+ */
+public class BulkApp {
+    private static final Logger logger = LoggerFactory.getLogger(BulkApp.class);
+
+    public static void main(String... args) throws Exception {
+        if (args.length != 3 || args[2].indexOf(':') < 0) {
+            System.err.println("Usage: BulkApp <input.jsonl> <output.jsonl> sagemaker:<endpoint>|bedrock:<modelId>");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        String target = args[2];
+        String backend = target.substring(0, target.indexOf(':'));
+        String name = target.substring(target.indexOf(':') + 1);
+
+        // Every record is sent once, so caching would only fill the heap and the disk tier.
+        Handler handler = new Handler(ResponseCache.builder().enabled(false).build());
+        BulkPipeline.Invoker invoker;
+        if ("sagemaker".equals(backend)) {
+            invoker = inputText -> handler.invokeEndpoint(name, inputText);
+        } else if ("bedrock".equals(backend)) {
+            invoker = inputText -> handler.converse(name, inputText);
+        } else {
+            throw new IllegalArgumentException("Unknown backend " + backend + ", expected sagemaker or bedrock");
+        }
+
+        ClientConfig config = ClientProvider.shared().config();
+        BulkPipeline pipeline = BulkPipeline.builder(invoker)
+                .parallelism(config.intProperty("bulk.parallelism", 32))
+                .maxInFlight(config.intProperty("bulk.maxInFlight", 64))
+                .inputField(config.stringProperty("bulk.inputField", "input"))
+                .checkpointEveryRecords(config.intProperty("bulk.checkpointEveryRecords", 1000))
+                .progressInterval(Duration.ofSeconds(config.intProperty("bulk.progressIntervalSeconds", 10)))
+                .maxRetries(config.intProperty("bulk.maxRetries", 5))
+                .retryBaseDelay(Duration.ofMillis(config.intProperty("bulk.retryBaseDelayMillis", 1000)))
+                .maxRetryDelay(Duration.ofMillis(config.intProperty("bulk.maxRetryDelayMillis", 30_000)))
+                .build();
+
+        logger.info("Bulk run of {} against {} starts", input, target);
+        BulkPipeline.Summary summary = pipeline.run(input, output);
+        logger.info("Bulk run finished: {}", summary);
+    }
+}
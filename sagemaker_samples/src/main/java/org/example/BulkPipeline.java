@@ -0,0 +1,604 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a model over every record of a JSONL file and appends the answers to another JSONL file.
+ * <p>
+ * The pipeline has three stages. A reader streams the input through a {@link FileChannel} one
+ * buffer at a time. A pool of {@code parallelism} workers invokes the model for at most
+ * {@code maxInFlight} records at once, so heap use stays bounded however large the file is.
+ * A writer appends the results in input order and periodically records a checkpoint: the input
+ * offset and output size up to which everything is written. A rerun with the same files resumes
+ * from the checkpoint and drops any output written after it.
+ * <p>
+ * Each input line must be a JSON object. The value of {@code inputField} is sent to the
+ * {@link Invoker}; the output line is the input object plus an {@code output} field, or an
+ * {@code error} field if the record itself was rejected, e.g. invalid input or a validation
+ * error. Blank lines are skipped. Transient failures, such as throttling, server errors, network
+ * errors or admission timeouts, are retried by the worker with exponential backoff and full jitter.
+ * A record that still fails, or a failure outside a single record such as a write error or an
+ * {@link Error} from the invoker, stops the run and is rethrown by {@link #run}; the checkpoint
+ * stays at the last record written before it, so a rerun retries the record.
+ */
+public class BulkPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(BulkPipeline.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int MAX_LINE_BYTES = 16 << 20;
+
+    private final Invoker invoker;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final String inputField;
+    private final int checkpointEveryRecords;
+    private final Duration progressInterval;
+    private final int maxRetries;
+    private final Duration retryBaseDelay;
+    private final Duration maxRetryDelay;
+
+    private BulkPipeline(Builder builder) {
+        this.invoker = builder.invoker;
+        this.parallelism = builder.parallelism;
+        this.maxInFlight = Math.max(builder.maxInFlight, builder.parallelism);
+        this.inputField = builder.inputField;
+        this.checkpointEveryRecords = builder.checkpointEveryRecords;
+        this.progressInterval = builder.progressInterval;
+        this.maxRetries = builder.maxRetries;
+        this.retryBaseDelay = builder.retryBaseDelay;
+        this.maxRetryDelay = builder.maxRetryDelay;
+    }
+
+    public static Builder builder(Invoker invoker) {
+        return new Builder(invoker);
+    }
+
+    /**
+     * Calls the model for one record. Invoked from several worker threads at once.
+     */
+    @FunctionalInterface
+    public interface Invoker {
+        String invoke(String input) throws Exception;
+    }
+
+    /**
+     * Processes {@code input} into {@code output}, resuming from {@code <output>.checkpoint} if present.
+     *
+     * @return the counts of this run; records finished by an earlier run are not included
+     * @throws IOException if reading the input or writing the output or checkpoint failed
+     */
+    public Summary run(Path input, Path output) throws IOException, InterruptedException {
+        Path checkpointFile = Paths.get(output + ".checkpoint");
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+        if (checkpoint.inputOffset > 0) {
+            logger.info("Resuming {} at byte {} (line {}) after {} records",
+                    input, checkpoint.inputOffset, checkpoint.lines, checkpoint.records);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, daemonThreads("bulk-worker-"));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonThreads("bulk-progress-"));
+        try (LineReader reader = new LineReader(input, checkpoint.inputOffset, checkpoint.lines);
+             Writer writer = new Writer(output, checkpointFile, checkpoint)) {
+            long intervalNanos = progressInterval.toNanos();
+            reporter.scheduleAtFixedRate(() -> writer.report(reader.size), intervalNanos, intervalNanos,
+                    TimeUnit.NANOSECONDS);
+
+            Line line;
+            long sequence = 0;
+            while ((line = reader.next()) != null) {
+                writer.permits.acquire();
+                writer.throwIfFailed();
+                Line record = line;
+                long recordSequence = sequence++;
+                if (record.text.trim().isEmpty()) {
+                    writer.complete(recordSequence, record, null, false);
+                    continue;
+                }
+                try {
+                    workers.execute(() -> process(record, recordSequence, writer));
+                } catch (RuntimeException e) {
+                    writer.permits.release();
+                    throw e;
+                }
+            }
+            // Every permit comes back once its record is written, or all at once on a failure.
+            writer.permits.acquire(maxInFlight);
+            writer.permits.release(maxInFlight);
+            writer.throwIfFailed();
+            writer.checkpoint();
+            writer.report(reader.size);
+            return writer.summary();
+        } finally {
+            reporter.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private void process(Line record, long sequence, Writer writer) {
+        try {
+            processRecord(record, sequence, writer);
+        } catch (Throwable t) {
+            writer.fail(t);
+        }
+    }
+
+    private void processRecord(Line record, long sequence, Writer writer) {
+        ObjectNode result;
+        boolean failed = false;
+        try {
+            JsonNode json = OBJECT_MAPPER.readTree(record.text);
+            if (!(json instanceof ObjectNode)) {
+                throw new IllegalArgumentException("line " + record.number + " is not a JSON object");
+            }
+            result = (ObjectNode) json;
+        } catch (IOException | IllegalArgumentException e) {
+            result = OBJECT_MAPPER.createObjectNode();
+            result.put("line", record.number);
+            result.put("error", e.getMessage());
+            writer.complete(sequence, record, result, true);
+            return;
+        }
+
+        JsonNode value = result.get(inputField);
+        try {
+            if (value == null || value.isNull()) {
+                throw new IllegalArgumentException("missing field " + inputField);
+            }
+            result.put("output", invoke(value.isTextual() ? value.textValue() : value.toString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.fail(e);
+            return;
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                // Not the record's fault: stop before it so that a rerun sends it again.
+                writer.fail(e);
+                return;
+            }
+            failed = true;
+            result.put("error", String.valueOf(e.getMessage()));
+        }
+        writer.complete(sequence, record, result, failed);
+    }
+
+    /**
+     * Calls the invoker, retrying transient failures up to {@code maxRetries} times.
+     */
+    private String invoke(String input) throws Exception {
+        for (int retry = 0; ; retry++) {
+            try {
+                return invoker.invoke(input);
+            } catch (Exception e) {
+                if (retry >= maxRetries || !isTransient(e)) {
+                    throw e;
+                }
+                long ceiling = Math.min(maxRetryDelay.toNanos(), retryBaseDelay.toNanos() << Math.min(retry, 20));
+                long delay = ThreadLocalRandom.current().nextLong(Math.max(1, ceiling));
+                logger.debug("Retrying a bulk record in {} ms after: {}", delay / 1_000_000, e.toString());
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code e}, or an exception it wraps, is one that {@link Router} would retry
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (Router.isRetryable(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static java.util.concurrent.ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Counts of one run.
+     */
+    public static final class Summary {
+        private final long records;
+        private final long failures;
+        private final Duration elapsed;
+
+        Summary(long records, long failures, Duration elapsed) {
+            this.records = records;
+            this.failures = failures;
+            this.elapsed = elapsed;
+        }
+
+        public long records() {
+            return records;
+        }
+
+        public long failures() {
+            return failures;
+        }
+
+        public Duration elapsed() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1, elapsed.toMillis()) / 1000.0;
+            return String.format("%d records, %d failed, %.1f s, %.1f records/s",
+                    records, failures, seconds, records / seconds);
+        }
+    }
+
+    private static final class Line {
+        private final String text;
+        private final long number;
+        private final long endOffset;
+
+        Line(String text, long number, long endOffset) {
+            this.text = text;
+            this.number = number;
+            this.endOffset = endOffset;
+        }
+    }
+
+    /**
+     * Splits the file into lines while tracking the byte offset after each one, without reading
+     * more than one buffer ahead.
+     */
+    private static final class LineReader implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private long bufferOffset;
+        private long lineNumber;
+
+        /**
+         * @param lineNumber the number of lines before {@code offset}
+         */
+        LineReader(Path file, long offset, long lineNumber) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+            channel.position(offset);
+            this.bufferOffset = offset;
+            this.lineNumber = lineNumber;
+            buffer.flip();
+        }
+
+        Line next() throws IOException {
+            while (true) {
+                byte[] bytes = buffer.array();
+                int start = buffer.position();
+                for (int i = start; i < buffer.limit(); i++) {
+                    if (bytes[i] == '\n') {
+                        pending.write(bytes, start, i - start);
+                        buffer.position(i + 1);
+                        return line(bufferOffset + i + 1);
+                    }
+                }
+                pending.write(bytes, start, buffer.limit() - start);
+                if (pending.size() > MAX_LINE_BYTES) {
+                    throw new IOException("Line " + (lineNumber + 1) + " is longer than " + MAX_LINE_BYTES + " bytes");
+                }
+
+                bufferOffset += buffer.limit();
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    return pending.size() > 0 ? line(bufferOffset) : null;
+                }
+            }
+        }
+
+        private Line line(long endOffset) {
+            String text = new String(pending.toByteArray(), StandardCharsets.UTF_8);
+            pending.reset();
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            return new Line(text, ++lineNumber, endOffset);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes results in input order. Results that finish early wait in a reorder buffer, which
+     * holds at most {@code maxInFlight} entries because a permit is only returned once its record
+     * is written. After the first failure nothing more is written and all permits are released,
+     * so that the reader never waits for records that will not be written.
+     */
+    private final class Writer implements Closeable {
+        private final Semaphore permits = new Semaphore(maxInFlight);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final FileChannel channel;
+        private final Path checkpointFile;
+        private final Map<Long, Result> reorder = new HashMap<>();
+        private final long startNanos = System.nanoTime();
+        private long nextSequence;
+        private long inputOffset;
+        private long inputLines;
+        private long totalRecords;
+        private long records;
+        private long failures;
+        private long sinceCheckpoint;
+        private long lastReportNanos = startNanos;
+        private long lastReportRecords;
+
+        Writer(Path output, Path checkpointFile, Checkpoint checkpoint) throws IOException {
+            this.channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.checkpointFile = checkpointFile;
+            // Output written after the last checkpoint belongs to records that are read again.
+            channel.truncate(checkpoint.outputBytes);
+            channel.position(checkpoint.outputBytes);
+            this.inputOffset = checkpoint.inputOffset;
+            this.inputLines = checkpoint.lines;
+            this.totalRecords = checkpoint.records;
+        }
+
+        synchronized void complete(long sequence, Line record, ObjectNode result, boolean failed) {
+            if (failure.get() != null) {
+                return;
+            }
+            reorder.put(sequence, new Result(record, result, failed));
+            Result next;
+            while ((next = reorder.remove(nextSequence)) != null) {
+                nextSequence++;
+                try {
+                    if (next.json != null) {
+                        byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(next.json);
+                        ByteBuffer line = ByteBuffer.allocate(bytes.length + 1).put(bytes).put((byte) '\n');
+                        line.flip();
+                        while (line.hasRemaining()) {
+                            channel.write(line);
+                        }
+                        records++;
+                        totalRecords++;
+                        if (next.failed) {
+                            failures++;
+                        }
+                    }
+                    inputOffset = next.endOffset;
+                    inputLines = next.lineNumber;
+                    if (++sinceCheckpoint >= checkpointEveryRecords) {
+                        checkpoint();
+                    }
+                } catch (IOException e) {
+                    fail(new IOException("Failed to write bulk output", e));
+                    return;
+                } catch (UncheckedIOException e) {
+                    fail(e.getCause());
+                    return;
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+
+        /**
+         * Records the first failure of the run and releases every permit.
+         */
+        void fail(Throwable t) {
+            if (failure.compareAndSet(null, t)) {
+                permits.release(maxInFlight);
+            } else if (failure.get() != t) {
+                failure.get().addSuppressed(t);
+            }
+        }
+
+        void throwIfFailed() throws IOException {
+            Throwable t = failure.get();
+            if (t == null) {
+                return;
+            }
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new IOException("Bulk pipeline failed", t);
+        }
+
+        synchronized void checkpoint() {
+            try {
+                channel.force(false);
+                new Checkpoint(inputOffset, inputLines, channel.position(), totalRecords).save(checkpointFile);
+                sinceCheckpoint = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write checkpoint " + checkpointFile, e);
+            }
+        }
+
+        synchronized void report(long inputSize) {
+            long now = System.nanoTime();
+            double intervalSeconds = Math.max(1, now - lastReportNanos) / 1e9;
+            logger.info("Bulk progress: {} records ({} failed), {}% of input, {} records/s",
+                    records, failures,
+                    inputSize == 0 ? 100 : String.format("%.1f", 100.0 * inputOffset / inputSize),
+                    String.format("%.1f", (records - lastReportRecords) / intervalSeconds));
+            lastReportNanos = now;
+            lastReportRecords = records;
+        }
+
+        synchronized Summary summary() {
+            return new Summary(records, failures, Duration.ofNanos(System.nanoTime() - startNanos));
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class Result {
+        private final long endOffset;
+        private final long lineNumber;
+        private final ObjectNode json;
+        private final boolean failed;
+
+        Result(Line line, ObjectNode json, boolean failed) {
+            this.endOffset = line.endOffset;
+            this.lineNumber = line.number;
+            this.json = json;
+            this.failed = failed;
+        }
+    }
+
+    private static final class Checkpoint {
+        private final long inputOffset;
+        private final long lines;
+        private final long outputBytes;
+        private final long records;
+
+        Checkpoint(long inputOffset, long lines, long outputBytes, long records) {
+            this.inputOffset = inputOffset;
+            this.lines = lines;
+            this.outputBytes = outputBytes;
+            this.records = records;
+        }
+
+        static Checkpoint load(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return new Checkpoint(0, 0, 0, 0);
+            }
+            Properties properties = new Properties();
+            try (InputStream input = Files.newInputStream(file)) {
+                properties.load(input);
+            }
+            return new Checkpoint(
+                    Long.parseLong(properties.getProperty("inputOffset", "0")),
+                    Long.parseLong(properties.getProperty("lines", "0")),
+                    Long.parseLong(properties.getProperty("outputBytes", "0")),
+                    Long.parseLong(properties.getProperty("records", "0")));
+        }
+
+        void save(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("inputOffset", Long.toString(inputOffset));
+            properties.setProperty("lines", Long.toString(lines));
+            properties.setProperty("outputBytes", Long.toString(outputBytes));
+            properties.setProperty("records", Long.toString(records));
+            Path temp = Paths.get(file + ".tmp");
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                properties.store(output, "Bulk pipeline checkpoint");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    public static final class Builder {
+        private final Invoker invoker;
+        private int parallelism = 32;
+        private int maxInFlight = 64;
+        private String inputField = "input";
+        private int checkpointEveryRecords = 1000;
+        private Duration progressInterval = Duration.ofSeconds(10);
+        private int maxRetries = 5;
+        private Duration retryBaseDelay = Duration.ofSeconds(1);
+        private Duration maxRetryDelay = Duration.ofSeconds(30);
+
+        private Builder(Invoker invoker) {
+            this.invoker = invoker;
+        }
+
+        /**
+         * Number of worker threads calling the model.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Records read but not yet written; at least {@code parallelism}.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder inputField(String inputField) {
+            this.inputField = inputField;
+            return this;
+        }
+
+        public Builder checkpointEveryRecords(int checkpointEveryRecords) {
+            this.checkpointEveryRecords = checkpointEveryRecords;
+            return this;
+        }
+
+        public Builder progressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+            return this;
+        }
+
+        /**
+         * Retries of a record after a transient failure; once they are used up the run stops.
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Upper bound of the first retry delay, doubled for every further retry.
+         */
+        public Builder retryBaseDelay(Duration retryBaseDelay) {
+            this.retryBaseDelay = retryBaseDelay;
+            return this;
+        }
+
+        public Builder maxRetryDelay(Duration maxRetryDelay) {
+            this.maxRetryDelay = maxRetryDelay;
+            return this;
+        }
+
+        public BulkPipeline build() {
+            return new BulkPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.example;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Settings from {@code config.properties}, read and parsed once per JVM.
+ */
+public final class ClientConfig {
+
+    /**
+     * HTTP client implementation used for the SDK clients.
+     */
+    public enum HttpClientType {
+        APACHE,
+        CRT,
+        /**
+         * The JDK's HttpURLConnection, which blocks without pinning virtual threads on Java 21.
+         */
+        URLCONNECTION
+    }
+
+    private final Properties properties;
+    private final StaticCredentialsProvider credentialsProvider;
+    private final Region region;
+
+    private ClientConfig(Properties properties) {
+        this.properties = properties;
+
+        String accessKeyId = properties.getProperty("aws.accessKeyId");
+        String secretAccessKey = properties.getProperty("aws.secretAccessKey");
+        this.credentialsProvider = accessKeyId == null || secretAccessKey == null
+                ? null
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, secretAccessKey));
+
+        String awsRegion = properties.getProperty("aws.region");
+        this.region = awsRegion == null ? null : Region.of(awsRegion);
+    }
+
+    /**
+     * @return the configuration loaded from {@code config.properties} on the classpath
+     */
+    public static ClientConfig get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return a configuration backed by the given properties, e.g. for tests and benchmarks
+     */
+    public static ClientConfig of(Properties properties) {
+        return new ClientConfig(properties);
+    }
+
+    /**
+     * @return the raw properties, for components that read their own keys
+     */
+    Properties properties() {
+        return properties;
+    }
+
+    public StaticCredentialsProvider credentialsProvider() {
+        if (credentialsProvider == null) {
+            throw new IllegalStateException("AWS credentials not set in config.properties");
+        }
+        return credentialsProvider;
+    }
+
+    public Region region() {
+        if (region == null) {
+            throw new IllegalStateException("AWS region not set in config.properties");
+        }
+        return region;
+    }
+
+    /**
+     * @return the endpoint the runtime clients call instead of the regional one, e.g. a local stub
+     *         server, or {@code null} if {@code aws.endpointOverride} is not set
+     */
+    public URI endpointOverride() {
+        String value = stringProperty("aws.endpointOverride", null);
+        return value == null ? null : URI.create(value);
+    }
+
+    /**
+     * @return {@code http.client}, or if it is not set, {@code urlconnection} when
+     *         {@code execution.threads} is {@code virtual} and {@code apache} otherwise
+     */
+    public HttpClientType httpClientType() {
+        boolean virtualThreads = "virtual".equalsIgnoreCase(stringProperty("execution.threads", "virtual"));
+        String value = stringProperty("http.client", virtualThreads ? "urlconnection" : "apache");
+        try {
+            return HttpClientType.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid http.client in config.properties: " + value, e);
+        }
+    }
+
+    public String stringProperty(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int intProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + key + " in config.properties: " + value, e);
+        }
+    }
+
+    public boolean booleanProperty(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * @return the value of a millisecond property as a duration, or {@code null} if it is not positive
+     */
+    public Duration millisProperty(String key, int defaultMillis) {
+        int millis = intProperty(key, defaultMillis);
+        return millis > 0 ? Duration.ofMillis(millis) : null;
+    }
+
+    private static Properties loadProperties() {
+        Properties prop = new Properties();
+        try (InputStream input = ClientConfig.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (input == null) {
+                throw new IllegalStateException("Unable to find config.properties");
+            }
+            prop.load(input);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load config.properties", e);
+        }
+        return prop;
+    }
+
+    private static final class Holder {
+        private static final ClientConfig INSTANCE = new ClientConfig(loadProperties());
+    }
+}
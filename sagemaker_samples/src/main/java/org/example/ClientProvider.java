@@ -0,0 +1,627 @@
+package org.example;
+
+import org.crac.Core;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.client.builder.SdkClientBuilder;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtHttpClient;
+import software.amazon.awssdk.http.crt.TcpKeepAliveConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.sagemaker.SageMakerClient;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns the SDK clients shared by every {@link Handler} in the JVM.
+ * <p>
+ * SDK clients are thread-safe and expensive to build (connection pool, TLS, endpoint resolution),
+ * so each one is created lazily on first use and then reused. The sync clients share a single
+ * HTTP client. {@link #close()} releases everything, and the next access builds fresh clients;
+ * a shutdown hook closes the shared instance when the JVM exits. {@link #closeConnections()}
+ * only drops the connections, for a checkpoint taken while the clients stay in use.
+ */
+public final class ClientProvider implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ClientProvider.class);
+
+    private final ClientConfig config;
+
+    private SwappableHttpClient httpClient;
+    private SwappableAsyncHttpClient asyncHttpClient;
+    private SageMakerClient sageMakerClient;
+    private SageMakerRuntimeClient sageMakerRuntimeClient;
+    private SageMakerRuntimeAsyncClient sageMakerRuntimeAsyncClient;
+    private BedrockRuntimeClient bedrockRuntimeClient;
+    private EndpointRegistry endpointRegistry;
+    private MetricsSink metricsSink;
+    private AdmissionController admissionController;
+    private ResponseCache responseCache;
+    private final Map<String, MicroBatcher> microBatchers = new HashMap<>();
+    private ExecutorService handlerExecutor;
+    private EndpointStreamer endpointStreamer;
+    private OutputSink outputSink;
+    private final Map<Region, SageMakerRuntimeClient> regionalSageMakerRuntimeClients = new HashMap<>();
+    private final Map<Region, BedrockRuntimeClient> regionalBedrockRuntimeClients = new HashMap<>();
+    private final Map<Region, AdmissionController> regionalAdmissionControllers = new HashMap<>();
+    private Router<SageMakerRuntimeClient> endpointRouter;
+    private Router<BedrockRuntimeClient> bedrockRouter;
+    private WarmUp warmUp;
+
+    public ClientProvider(ClientConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the JVM-wide provider backed by {@code config.properties}
+     */
+    public static ClientProvider shared() {
+        return Holder.INSTANCE;
+    }
+
+    public ClientConfig config() {
+        return config;
+    }
+
+    public synchronized SageMakerClient sageMakerClient() {
+        if (sageMakerClient == null) {
+            sageMakerClient = SageMakerClient.builder()
+                    .region(config.region())
+                    .credentialsProvider(config.credentialsProvider())
+                    .httpClient(httpClient())
+                    .build();
+        }
+        return sageMakerClient;
+    }
+
+    public synchronized SageMakerRuntimeClient sageMakerRuntimeClient() {
+        if (sageMakerRuntimeClient == null) {
+            sageMakerRuntimeClient = runtimeEndpoint(SageMakerRuntimeClient.builder())
+                    .region(config.region())
+                    .credentialsProvider(config.credentialsProvider())
+                    .httpClient(httpClient())
+                    .overrideConfiguration(runtimeOverrideConfiguration())
+                    .build();
+        }
+        return sageMakerRuntimeClient;
+    }
+
+    public synchronized SageMakerRuntimeAsyncClient sageMakerRuntimeAsyncClient() {
+        if (sageMakerRuntimeAsyncClient == null) {
+            sageMakerRuntimeAsyncClient = runtimeEndpoint(SageMakerRuntimeAsyncClient.builder())
+                    .region(config.region())
+                    .credentialsProvider(config.credentialsProvider())
+                    .httpClient(asyncHttpClient())
+                    .overrideConfiguration(asyncRuntimeOverrideConfiguration())
+                    .build();
+        }
+        return sageMakerRuntimeAsyncClient;
+    }
+
+    public synchronized BedrockRuntimeClient bedrockRuntimeClient() {
+        if (bedrockRuntimeClient == null) {
+            bedrockRuntimeClient = runtimeEndpoint(BedrockRuntimeClient.builder())
+                    .region(config.region())
+                    .credentialsProvider(config.credentialsProvider())
+                    .httpClient(httpClient())
+                    .overrideConfiguration(runtimeOverrideConfiguration())
+                    .build();
+        }
+        return bedrockRuntimeClient;
+    }
+
+    /**
+     * @return the runtime client for {@code region}; the one for {@code aws.region} is
+     *         {@link #sageMakerRuntimeClient()}
+     */
+    public synchronized SageMakerRuntimeClient sageMakerRuntimeClient(Region region) {
+        if (region.equals(config.region())) {
+            return sageMakerRuntimeClient();
+        }
+        SageMakerRuntimeClient client = regionalSageMakerRuntimeClients.get(region);
+        if (client == null) {
+            client = runtimeEndpoint(SageMakerRuntimeClient.builder())
+                    .region(region)
+                    .credentialsProvider(config.credentialsProvider())
+                    .httpClient(httpClient())
+                    .overrideConfiguration(runtimeOverrideConfiguration(region))
+                    .build();
+            regionalSageMakerRuntimeClients.put(region, client);
+        }
+        return client;
+    }
+
+    /**
+     * @return the Bedrock runtime client for {@code region}; the one for {@code aws.region} is
+     *         {@link #bedrockRuntimeClient()}
+     */
+    public synchronized BedrockRuntimeClient bedrockRuntimeClient(Region region) {
+        if (region.equals(config.region())) {
+            return bedrockRuntimeClient();
+        }
+        BedrockRuntimeClient client = regionalBedrockRuntimeClients.get(region);
+        if (client == null) {
+            client = runtimeEndpoint(BedrockRuntimeClient.builder())
+                    .region(region)
+                    .credentialsProvider(config.credentialsProvider())
+                    .httpClient(httpClient())
+                    .overrideConfiguration(runtimeOverrideConfiguration(region))
+                    .build();
+            regionalBedrockRuntimeClients.put(region, client);
+        }
+        return client;
+    }
+
+    public synchronized EndpointRegistry endpointRegistry() {
+        if (endpointRegistry == null) {
+            String strategy = config.stringProperty("sagemaker.endpoints.selection", "ROUND_ROBIN");
+            EndpointRegistry.SelectionStrategy selection;
+            try {
+                selection = EndpointRegistry.SelectionStrategy.valueOf(strategy.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid sagemaker.endpoints.selection in config.properties: " + strategy, e);
+            }
+            endpointRegistry = new EndpointRegistry(
+                    sageMakerClient(),
+                    Duration.ofSeconds(config.intProperty("sagemaker.endpoints.refreshSeconds", 60)),
+                    selection).start();
+        }
+        return endpointRegistry;
+    }
+
+    /**
+     * @return the sink that receives invocation latencies; it is not reset by {@link #close()}
+     */
+    public synchronized MetricsSink metricsSink() {
+        if (metricsSink == null) {
+            metricsSink = new HdrMetricsSink(config.booleanProperty("metrics.jmx", true));
+        }
+        return metricsSink;
+    }
+
+    /**
+     * @return the admission controller shared by the runtime clients; like the metrics sink it is
+     *         not reset by {@link #close()}, so the learned concurrency limits survive a rebuild
+     */
+    public synchronized AdmissionController admissionController() {
+        if (admissionController == null) {
+            admissionController = AdmissionController.fromProperties(config.properties());
+        }
+        return admissionController;
+    }
+
+    /**
+     * @return the controller that admits calls on {@link #sageMakerRuntimeAsyncClient()}, or
+     *         {@code null} when {@code throttle.enabled} is off. The async client does not admit
+     *         calls itself; callers start them through {@link AdmissionController#admitAsync}.
+     */
+    public synchronized AdmissionController asyncAdmissionController() {
+        return config.booleanProperty("throttle.enabled", true) ? admissionController() : null;
+    }
+
+    /**
+     * @return the admission controller of the runtime clients for {@code region}. Service quotas
+     *         are per region, so every region learns its own limits from the same
+     *         {@code throttle.*} settings.
+     */
+    public synchronized AdmissionController admissionController(Region region) {
+        if (region.equals(config.region())) {
+            return admissionController();
+        }
+        AdmissionController controller = regionalAdmissionControllers.get(region);
+        if (controller == null) {
+            controller = AdmissionController.fromProperties(config.properties());
+            regionalAdmissionControllers.put(region, controller);
+        }
+        return controller;
+    }
+
+    /**
+     * @return the router over the SageMaker endpoints in {@code router.endpoints}, each given as
+     *         {@code region/endpoint-name}
+     */
+    public synchronized Router<SageMakerRuntimeClient> endpointRouter() {
+        if (endpointRouter == null) {
+            Router.Builder<SageMakerRuntimeClient> builder = routerBuilder();
+            for (String entry : listProperty("router.endpoints")) {
+                int separator = entry.indexOf('/');
+                if (separator <= 0 || separator == entry.length() - 1) {
+                    throw new IllegalStateException(
+                            "Invalid router.endpoints entry in config.properties, expected region/endpoint-name: " + entry);
+                }
+                Region region = Region.of(entry.substring(0, separator));
+                builder.target(new Router.Target<>(entry, sageMakerRuntimeClient(region),
+                        entry.substring(separator + 1), routedAdmissionController(region)));
+            }
+            endpointRouter = builder.build();
+        }
+        return endpointRouter;
+    }
+
+    /**
+     * @return the router over the Bedrock runtime clients of the regions in {@code router.regions}
+     */
+    public synchronized Router<BedrockRuntimeClient> bedrockRouter() {
+        if (bedrockRouter == null) {
+            Router.Builder<BedrockRuntimeClient> builder = routerBuilder();
+            for (String name : listProperty("router.regions")) {
+                Region region = Region.of(name);
+                builder.target(new Router.Target<>(name, bedrockRuntimeClient(region), null,
+                        routedAdmissionController(region)));
+            }
+            bedrockRouter = builder.build();
+        }
+        return bedrockRouter;
+    }
+
+    /**
+     * @return the cache of endpoint responses; it is not reset by {@link #close()}
+     */
+    public synchronized ResponseCache responseCache() {
+        if (responseCache == null) {
+            responseCache = ResponseCache.fromProperties(config.properties(), "sagemaker");
+        }
+        return responseCache;
+    }
+
+    /**
+     * @return the batcher that coalesces requests to {@code endpointName}, created on first use
+     */
+    public synchronized MicroBatcher microBatcher(String endpointName) {
+        MicroBatcher microBatcher = microBatchers.get(endpointName);
+        if (microBatcher == null) {
+            microBatcher = new MicroBatcher(
+                    sageMakerRuntimeAsyncClient(),
+                    asyncAdmissionController(),
+                    endpointName,
+                    batchCodec(),
+                    config.intProperty("sagemaker.microbatch.maxBatchSize", 32),
+                    Duration.ofMillis(config.intProperty("sagemaker.microbatch.maxDelayMillis", 10)),
+                    Duration.ofMillis(config.intProperty("sagemaker.microbatch.requestTimeoutMillis", 30_000)),
+                    metricsSink());
+            microBatchers.put(endpointName, microBatcher);
+        }
+        return microBatcher;
+    }
+
+    /**
+     * @return the streamer for InvokeEndpointWithResponseStream on the async client, reading the
+     *         container's output as {@code sagemaker.stream.format}
+     */
+    public synchronized EndpointStreamer endpointStreamer() {
+        if (endpointStreamer == null) {
+            String format = config.stringProperty("sagemaker.stream.format", "json_lines");
+            PayloadReassembler.Format payloadFormat;
+            try {
+                payloadFormat = PayloadReassembler.Format.valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid sagemaker.stream.format in config.properties: " + format, e);
+            }
+            endpointStreamer = new EndpointStreamer(
+                    sageMakerRuntimeAsyncClient(), asyncAdmissionController(), payloadFormat, metricsSink());
+        }
+        return endpointStreamer;
+    }
+
+    /**
+     * @return where streamed tokens and telemetry events go, as configured by {@code output.sink}
+     */
+    public synchronized OutputSink outputSink() {
+        if (outputSink == null) {
+            String sink = config.stringProperty("output.sink", "console");
+            int capacity = config.intProperty("output.queueCapacity", 65_536);
+            if ("console".equalsIgnoreCase(sink)) {
+                outputSink = AsyncOutputSink.toConsole(capacity);
+            } else if ("file".equalsIgnoreCase(sink)) {
+                String file = config.stringProperty("output.file", "output.log");
+                try {
+                    outputSink = AsyncOutputSink.toFile(Paths.get(file), capacity);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot open output.file " + file, e);
+                }
+            } else if ("none".equalsIgnoreCase(sink)) {
+                outputSink = OutputSink.NONE;
+            } else {
+                throw new IllegalStateException("Invalid output.sink in config.properties: " + sink);
+            }
+        }
+        return outputSink;
+    }
+
+    /**
+     * @return the executor that runs {@link AsyncHandler} calls: a virtual thread per call, or a
+     *         fixed pool of platform threads with {@code execution.threads=platform}
+     */
+    public synchronized ExecutorService handlerExecutor() {
+        if (handlerExecutor == null) {
+            String threads = config.stringProperty("execution.threads", "virtual");
+            if ("platform".equalsIgnoreCase(threads)) {
+                handlerExecutor = Executors.newFixedThreadPool(config.intProperty("execution.platformThreads", 200),
+                        Thread.ofPlatform().name("handler-", 1).daemon(true).factory());
+            } else if ("virtual".equalsIgnoreCase(threads)) {
+                handlerExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("handler-", 1).factory());
+            } else {
+                throw new IllegalStateException("Invalid execution.threads in config.properties: " + threads);
+            }
+        }
+        return handlerExecutor;
+    }
+
+    /**
+     * @return the startup warm-up of this provider's clients. With {@code startup.checkpointHooks}
+     *         it is also registered for CRaC checkpoints, and this provider keeps it reachable
+     *         because the CRaC context only holds it weakly.
+     */
+    public synchronized WarmUp warmUp() {
+        if (warmUp == null) {
+            warmUp = new WarmUp(this);
+            if (config.booleanProperty("startup.checkpointHooks", true)) {
+                Core.getGlobalContext().register(warmUp);
+            }
+        }
+        return warmUp;
+    }
+
+    /**
+     * Stops the background work that would call a service on its own: the endpoint registry's
+     * refreshes and the micro-batchers' delayed flushes.
+     */
+    public synchronized void pauseBackgroundTasks() {
+        if (endpointRegistry != null) {
+            endpointRegistry.pause();
+        }
+        for (MicroBatcher microBatcher : microBatchers.values()) {
+            microBatcher.pause();
+        }
+    }
+
+    /**
+     * Restarts the background work stopped by {@link #pauseBackgroundTasks()}.
+     */
+    public synchronized void resumeBackgroundTasks() {
+        if (endpointRegistry != null) {
+            endpointRegistry.resume();
+        }
+        for (MicroBatcher microBatcher : microBatchers.values()) {
+            microBatcher.resume();
+        }
+    }
+
+    /**
+     * Closes the pooled connections of the HTTP clients but keeps the SDK clients, whose next
+     * requests open new connections.
+     */
+    public synchronized void closeConnections() {
+        if (httpClient != null) {
+            httpClient.closeConnections();
+        }
+        if (asyncHttpClient != null) {
+            asyncHttpClient.closeConnections();
+        }
+    }
+
+    /**
+     * Closes every client built so far. Later calls build new clients.
+     */
+    @Override
+    public synchronized void close() {
+        endpointRouter = closeQuietly(endpointRouter);
+        bedrockRouter = closeQuietly(bedrockRouter);
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdown();
+            handlerExecutor = null;
+        }
+        // Batchers flush into the async client, so they close first.
+        for (MicroBatcher microBatcher : microBatchers.values()) {
+            closeQuietly(microBatcher);
+        }
+        microBatchers.clear();
+        endpointStreamer = null;
+        endpointRegistry = closeQuietly(endpointRegistry);
+        sageMakerClient = closeQuietly(sageMakerClient);
+        sageMakerRuntimeClient = closeQuietly(sageMakerRuntimeClient);
+        sageMakerRuntimeAsyncClient = closeQuietly(sageMakerRuntimeAsyncClient);
+        bedrockRuntimeClient = closeQuietly(bedrockRuntimeClient);
+        regionalSageMakerRuntimeClients.values().forEach(ClientProvider::closeQuietly);
+        regionalSageMakerRuntimeClients.clear();
+        regionalBedrockRuntimeClients.values().forEach(ClientProvider::closeQuietly);
+        regionalBedrockRuntimeClients.clear();
+        // Streams have ended or been cut off with their clients; write out what they produced.
+        outputSink = closeQuietly(outputSink);
+        // SDK clients do not close an HTTP client they were given, so those go last.
+        httpClient = closeQuietly(httpClient);
+        asyncHttpClient = closeQuietly(asyncHttpClient);
+    }
+
+    private BatchCodec batchCodec() {
+        String codec = config.stringProperty("sagemaker.microbatch.codec", "json-array");
+        if ("json-array".equals(codec)) {
+            return BatchCodec.jsonArray();
+        }
+        try {
+            return (BatchCodec) Class.forName(codec).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Invalid sagemaker.microbatch.codec in config.properties: " + codec, e);
+        }
+    }
+
+    private ClientOverrideConfiguration runtimeOverrideConfiguration() {
+        if (!config.booleanProperty("throttle.enabled", true)) {
+            return ClientOverrideConfiguration.builder().build();
+        }
+        return admissionController().overrideConfiguration();
+    }
+
+    private ClientOverrideConfiguration runtimeOverrideConfiguration(Region region) {
+        if (!config.booleanProperty("throttle.enabled", true)) {
+            return ClientOverrideConfiguration.builder().build();
+        }
+        return admissionController(region).overrideConfiguration();
+    }
+
+    private ClientOverrideConfiguration asyncRuntimeOverrideConfiguration() {
+        if (!config.booleanProperty("throttle.enabled", true)) {
+            return ClientOverrideConfiguration.builder().build();
+        }
+        return admissionController().asyncOverrideConfiguration();
+    }
+
+    private AdmissionController routedAdmissionController(Region region) {
+        return config.booleanProperty("throttle.enabled", true) ? admissionController(region) : null;
+    }
+
+    /**
+     * Each router runs its attempts on its own virtual threads. Sharing the handler pool would let
+     * routed calls made from that pool fill it and wait for attempts queued behind them.
+     */
+    private <C> Router.Builder<C> routerBuilder() {
+        return Router.<C>builder()
+                .maxAttempts(config.intProperty("router.maxAttempts", 3))
+                .hedging(config.booleanProperty("router.hedge.enabled", true))
+                .hedgePercentile(config.intProperty("router.hedge.percentile", 95))
+                .minHedgeDelay(Duration.ofMillis(config.intProperty("router.hedge.minDelayMillis", 50)))
+                .initialHedgeDelay(Duration.ofMillis(config.intProperty("router.hedge.initialDelayMillis", 2_000)))
+                .hedgeBudgetPercent(config.intProperty("router.hedge.budgetPercent", 10))
+                .ejectErrorRate(config.intProperty("router.ejectErrorPercent", 50) / 100.0)
+                .ejectDuration(Duration.ofMillis(config.intProperty("router.ejectMillis", 10_000)));
+    }
+
+    private List<String> listProperty(String key) {
+        List<String> values = new ArrayList<>();
+        for (String value : config.stringProperty(key, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        if (values.isEmpty()) {
+            throw new IllegalStateException(key + " not set in config.properties");
+        }
+        return values;
+    }
+
+    private <B extends SdkClientBuilder<B, ?>> B runtimeEndpoint(B builder) {
+        URI endpointOverride = config.endpointOverride();
+        return endpointOverride == null ? builder : builder.endpointOverride(endpointOverride);
+    }
+
+    private SdkHttpClient httpClient() {
+        if (httpClient == null) {
+            httpClient = new SwappableHttpClient(this::buildHttpClient);
+        }
+        return httpClient;
+    }
+
+    private SdkAsyncHttpClient asyncHttpClient() {
+        if (asyncHttpClient == null) {
+            asyncHttpClient = new SwappableAsyncHttpClient(() -> asyncHttpClientBuilder().build());
+        }
+        return asyncHttpClient;
+    }
+
+    private SdkHttpClient buildHttpClient() {
+        int maxConnections = config.intProperty("http.maxConnections", 50);
+        Duration connectionTtl = config.millisProperty("http.connectionTtlMillis", 0);
+        Duration connectionMaxIdle = config.millisProperty("http.connectionMaxIdleMillis", 60_000);
+        boolean tcpKeepAlive = config.booleanProperty("http.tcpKeepAlive", true);
+
+        if (config.httpClientType() == ClientConfig.HttpClientType.URLCONNECTION) {
+            // Connection reuse is governed by the JDK's http.keepAlive and http.maxConnections system properties.
+            return UrlConnectionHttpClient.builder()
+                    .connectionTimeout(config.millisProperty("http.connectionTimeoutMillis", 2_000))
+                    .socketTimeout(config.millisProperty("http.socketTimeoutMillis", 30_000))
+                    .build();
+        }
+        if (config.httpClientType() == ClientConfig.HttpClientType.CRT) {
+            // The CRT client has no connection TTL; idle connections are still reaped.
+            AwsCrtHttpClient.Builder builder = AwsCrtHttpClient.builder()
+                    .maxConcurrency(maxConnections)
+                    .connectionMaxIdleTime(connectionMaxIdle);
+            if (tcpKeepAlive) {
+                builder.tcpKeepAliveConfiguration(crtKeepAlive());
+            }
+            return builder.build();
+        }
+        ApacheHttpClient.Builder builder = ApacheHttpClient.builder()
+                .maxConnections(maxConnections)
+                .connectionMaxIdleTime(connectionMaxIdle)
+                .tcpKeepAlive(tcpKeepAlive);
+        if (connectionTtl != null) {
+            builder.connectionTimeToLive(connectionTtl);
+        }
+        return builder.build();
+    }
+
+    private SdkAsyncHttpClient.Builder<?> asyncHttpClientBuilder() {
+        int maxConcurrency = config.intProperty("sagemaker.async.maxConcurrency", 64);
+        Duration connectionMaxIdle = config.millisProperty("sagemaker.async.connectionMaxIdleMillis", 60_000);
+        boolean tcpKeepAlive = config.booleanProperty("http.tcpKeepAlive", true);
+
+        if (config.httpClientType() == ClientConfig.HttpClientType.CRT) {
+            AwsCrtAsyncHttpClient.Builder builder = AwsCrtAsyncHttpClient.builder()
+                    .maxConcurrency(maxConcurrency)
+                    .connectionMaxIdleTime(connectionMaxIdle);
+            if (tcpKeepAlive) {
+                builder.tcpKeepAliveConfiguration(crtKeepAlive());
+            }
+            return builder;
+        }
+
+        NettyNioAsyncHttpClient.Builder builder = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConcurrency)
+                .maxPendingConnectionAcquires(config.intProperty("sagemaker.async.maxPendingConnectionAcquires", 10_000))
+                .connectionAcquisitionTimeout(
+                        config.millisProperty("sagemaker.async.connectionAcquisitionTimeoutMillis", 10_000))
+                .connectionMaxIdleTime(connectionMaxIdle)
+                .tcpKeepAlive(tcpKeepAlive);
+        Duration connectionTtl = config.millisProperty("http.connectionTtlMillis", 0);
+        if (connectionTtl != null) {
+            builder.connectionTimeToLive(connectionTtl);
+        }
+        return builder;
+    }
+
+    private TcpKeepAliveConfiguration crtKeepAlive() {
+        return TcpKeepAliveConfiguration.builder()
+                .keepAliveInterval(Duration.ofSeconds(config.intProperty("http.tcpKeepAliveIntervalSeconds", 30)))
+                .keepAliveTimeout(Duration.ofSeconds(config.intProperty("http.tcpKeepAliveTimeoutSeconds", 10)))
+                .build();
+    }
+
+    private static <T extends AutoCloseable> T closeQuietly(T closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close {}", closeable.getClass().getSimpleName(), e);
+            }
+        }
+        return null;
+    }
+
+    private static final class Holder {
+        private static final ClientProvider INSTANCE = new ClientProvider(ClientConfig.get());
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::close, "sdk-client-shutdown"));
+        }
+    }
+}
@@ -1,66 +1,107 @@
 package org.example;
 
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.sagemaker.SageMakerClient;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
 import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeClient;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Properties;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * The module containing all dependencies required by the {@link Handler}.
+ * <p>
+ * SDK clients come from the shared {@link ClientProvider}, so every handler reuses the same
+ * connection pools instead of building its own.
+ */
 public class DependencyFactory {
 
     private DependencyFactory() {}
 
     public static SageMakerClient sageMakerClient() {
-        return SageMakerClient.builder()
-                .region(getRegion())
-                .credentialsProvider(getCredentialsProvider())
-                .build();
+        return ClientProvider.shared().sageMakerClient();
     }
 
     public static SageMakerRuntimeClient sageMakerRuntimeClient() {
-        return SageMakerRuntimeClient.builder()
-                .region(getRegion())
-                .credentialsProvider(getCredentialsProvider())
-                .build();
+        return ClientProvider.shared().sageMakerRuntimeClient();
     }
 
-    private static StaticCredentialsProvider getCredentialsProvider() {
-        Properties prop = loadProperties();
-        String accessKeyId = prop.getProperty("aws.accessKeyId");
-        String secretAccessKey = prop.getProperty("aws.secretAccessKey");
+    public static SageMakerRuntimeAsyncClient sageMakerRuntimeAsyncClient() {
+        return ClientProvider.shared().sageMakerRuntimeAsyncClient();
+    }
 
-        if (accessKeyId == null || secretAccessKey == null) {
-            throw new IllegalStateException("AWS credentials not set in config.properties");
-        }
+    public static BedrockRuntimeClient bedrockRuntimeClient() {
+        return ClientProvider.shared().bedrockRuntimeClient();
+    }
 
-        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
-        return StaticCredentialsProvider.create(awsCreds);
+    public static BatchInvoker batchInvoker() {
+        ClientConfig config = ClientProvider.shared().config();
+        return new BatchInvoker(
+                sageMakerRuntimeAsyncClient(),
+                ClientProvider.shared().asyncAdmissionController(),
+                config.intProperty("sagemaker.batch.maxInFlight", 64),
+                Duration.ofMillis(config.intProperty("sagemaker.batch.requestTimeoutMillis", 30_000)));
     }
 
-    private static Region getRegion() {
-        Properties prop = loadProperties();
-        String awsRegion = prop.getProperty("aws.region");
-        if (awsRegion == null) {
-            throw new IllegalStateException("AWS region not set in config.properties");
-        }
+    public static MetricsSink metricsSink() {
+        return ClientProvider.shared().metricsSink();
+    }
+
+    public static AdmissionController admissionController() {
+        return ClientProvider.shared().admissionController();
+    }
+
+    public static ResponseCache responseCache() {
+        return ClientProvider.shared().responseCache();
+    }
+
+    /**
+     * @return the endpoint's micro-batcher, or {@code null} if micro-batching is disabled
+     */
+    public static MicroBatcher microBatcher(String endpointName) {
+        ClientProvider provider = ClientProvider.shared();
+        return provider.config().booleanProperty("sagemaker.microbatch.enabled", false)
+                ? provider.microBatcher(endpointName)
+                : null;
+    }
+
+    public static EndpointStreamer endpointStreamer() {
+        return ClientProvider.shared().endpointStreamer();
+    }
+
+    public static OutputSink outputSink() {
+        return ClientProvider.shared().outputSink();
+    }
+
+    public static PayloadLog payloadLog() {
+        return PayloadLog.fromConfig(ClientProvider.shared().config());
+    }
+
+    public static EndpointRegistry endpointRegistry() {
+        return ClientProvider.shared().endpointRegistry();
+    }
+
+    public static Router<SageMakerRuntimeClient> endpointRouter() {
+        return ClientProvider.shared().endpointRouter();
+    }
+
+    public static Router<BedrockRuntimeClient> bedrockRouter() {
+        return ClientProvider.shared().bedrockRouter();
+    }
 
-        return Region.of(awsRegion);
+    public static ExecutorService handlerExecutor() {
+        return ClientProvider.shared().handlerExecutor();
     }
 
-    private static Properties loadProperties() {
-        Properties prop = new Properties();
-        try (InputStream input = DependencyFactory.class.getClassLoader().getResourceAsStream("config.properties")) {
-            if (input == null) {
-                throw new IllegalStateException("Unable to find config.properties");
-            }
-            prop.load(input);
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to load config.properties", e);
+    /**
+     * Runs the startup warm-up of the shared clients, unless {@code startup.warmUp=false}. Call it
+     * once before serving requests; in a Lambda function with SnapStart, from the handler's static
+     * initializer so that the snapshot already contains its work.
+     */
+    public static void warmUp() {
+        ClientProvider provider = ClientProvider.shared();
+        if (provider.config().booleanProperty("startup.warmUp", true)) {
+            provider.warmUp().run();
         }
-        return prop;
     }
 }
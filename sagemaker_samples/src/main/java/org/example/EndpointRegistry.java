@@ -0,0 +1,255 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sagemaker.SageMakerClient;
+import software.amazon.awssdk.services.sagemaker.model.EndpointStatus;
+import software.amazon.awssdk.services.sagemaker.model.EndpointSummary;
+import software.amazon.awssdk.services.sagemaker.model.ListEndpointsRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches the list of {@code InService} SageMaker endpoints and picks one per request.
+ * <p>
+ * The endpoint list is loaded from the control plane on a background thread, following
+ * {@code nextToken} pagination, and refreshed every {@code ttl}. {@link #select()} only reads the
+ * cached snapshot, so callers on the invocation path never wait for a {@code ListEndpoints} call;
+ * a stale snapshot is served while a refresh runs in the background. {@link #pause()} stops all
+ * refreshes, e.g. while the JVM is checkpointed, until {@link #resume()}.
+ */
+public class EndpointRegistry implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EndpointRegistry.class);
+
+    /** Weight of the newest sample in the per-endpoint latency average. */
+    private static final double EWMA_ALPHA = 0.2;
+
+    /**
+     * Share of {@link SelectionStrategy#LEAST_LATENCY} selections that go round robin instead,
+     * so that an endpoint that was slow once keeps being measured and can win back traffic.
+     */
+    private static final double EXPLORATION_RATE = 0.05;
+
+    public enum SelectionStrategy {
+        ROUND_ROBIN,
+        /**
+         * The endpoint with the lowest average latency, except for a small share of requests
+         * that probe the others.
+         */
+        LEAST_LATENCY
+    }
+
+    private final SageMakerClient sageMakerClient;
+    private final Duration ttl;
+    private final SelectionStrategy strategy;
+    private final ScheduledExecutorService refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final ConcurrentMap<String, Double> latencyEwmaNanos = new ConcurrentHashMap<>();
+    // Completed by the first refresh attempt with whether it succeeded
+    private final CompletableFuture<Boolean> initialLoad = new CompletableFuture<>();
+
+    private volatile List<String> endpointNames = Collections.emptyList();
+    private volatile long loadedAtNanos;
+    private volatile boolean paused;
+    // Guarded by this.
+    private ScheduledFuture<?> scheduledRefresh;
+
+    public EndpointRegistry(SageMakerClient sageMakerClient, Duration ttl, SelectionStrategy strategy) {
+        this.sageMakerClient = sageMakerClient;
+        this.ttl = ttl;
+        this.strategy = strategy;
+        this.loadedAtNanos = System.nanoTime() - ttl.toNanos() - 1;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sagemaker-endpoint-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the initial load and the periodic background refresh.
+     */
+    public synchronized EndpointRegistry start() {
+        paused = false;
+        if (scheduledRefresh == null) {
+            scheduledRefresh = refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, ttl.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Stops the periodic refresh and the refreshes triggered by {@link #select()}, and waits for a
+     * refresh that is already running. {@link #select()} keeps serving the cached snapshot.
+     */
+    public synchronized void pause() {
+        paused = true;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+        try {
+            // The refresher has a single thread, so this runs after any refresh in progress.
+            refresher.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            logger.debug("Endpoint registry not drained", e);
+        }
+    }
+
+    /**
+     * Restarts the refreshes stopped by {@link #pause()}, beginning with one right away since the
+     * snapshot may be arbitrarily old by now.
+     */
+    public void resume() {
+        start();
+    }
+
+    /**
+     * Waits for the first load attempt. Meant for application startup, not the request path.
+     * Returns as soon as the attempt fails, e.g. without credentials or permission, rather than
+     * waiting out the timeout.
+     *
+     * @return {@code true} if the first load succeeded within the timeout
+     */
+    public boolean awaitInitialLoad(Duration timeout) {
+        try {
+            return initialLoad.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Picks an endpoint from the cached snapshot without blocking.
+     *
+     * @return the selected endpoint name, or empty if no {@code InService} endpoint is known yet
+     */
+    public Optional<String> select() {
+        if (!paused && System.nanoTime() - loadedAtNanos > ttl.toNanos()) {
+            refreshAsync();
+        }
+        List<String> names = endpointNames;
+        if (names.isEmpty()) {
+            return Optional.empty();
+        }
+        if (strategy == SelectionStrategy.LEAST_LATENCY
+                && ThreadLocalRandom.current().nextDouble() >= EXPLORATION_RATE) {
+            return Optional.of(leastLatency(names));
+        }
+        int index = Math.floorMod(cursor.getAndIncrement(), names.size());
+        return Optional.of(names.get(index));
+    }
+
+    /**
+     * @return the cached {@code InService} endpoint names
+     */
+    public List<String> endpoints() {
+        return endpointNames;
+    }
+
+    /**
+     * Feeds an observed invocation latency into the endpoint's moving average.
+     */
+    public void recordLatency(String endpointName, long latencyNanos) {
+        latencyEwmaNanos.merge(endpointName, (double) latencyNanos,
+                (previous, sample) -> previous + EWMA_ALPHA * (sample - previous));
+    }
+
+    /**
+     * Reloads the endpoint list from the control plane on the calling thread.
+     */
+    public List<String> refresh() {
+        List<String> names = new ArrayList<>();
+        ListEndpointsRequest request = ListEndpointsRequest.builder()
+                .statusEquals(EndpointStatus.IN_SERVICE)
+                .build();
+        for (EndpointSummary endpoint : sageMakerClient.listEndpointsPaginator(request).endpoints()) {
+            if (endpoint.endpointStatus() == EndpointStatus.IN_SERVICE) {
+                names.add(endpoint.endpointName());
+            }
+        }
+        endpointNames = Collections.unmodifiableList(names);
+        loadedAtNanos = System.nanoTime();
+        latencyEwmaNanos.keySet().retainAll(names);
+        initialLoad.complete(true);
+        logger.debug("Endpoint registry refreshed, {} InService endpoints", names.size());
+        return endpointNames;
+    }
+
+    private void refreshAsync() {
+        if (refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(this::runRefresh);
+            } catch (RuntimeException e) {
+                refreshing.set(false);
+                logger.debug("Endpoint registry refresh not scheduled", e);
+            }
+        }
+    }
+
+    private void refreshQuietly() {
+        if (refreshing.compareAndSet(false, true)) {
+            runRefresh();
+        }
+    }
+
+    private void runRefresh() {
+        try {
+            // A refresh requested by select() just before pause() is dropped.
+            if (paused) {
+                return;
+            }
+            refresh();
+        } catch (RuntimeException e) {
+            // Back off until the next TTL instead of retrying on every lookup.
+            loadedAtNanos = System.nanoTime();
+            initialLoad.complete(false);
+            logger.warn("Failed to refresh SageMaker endpoints, keeping {} cached entries", endpointNames.size(), e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private String leastLatency(List<String> names) {
+        // Endpoints without samples yet count as fastest so that they get probed.
+        String best = null;
+        double bestLatency = Double.MAX_VALUE;
+        int offset = Math.floorMod(cursor.getAndIncrement(), names.size());
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get((offset + i) % names.size());
+            double latency = latencyEwmaNanos.getOrDefault(name, 0.0);
+            if (latency < bestLatency) {
+                best = name;
+                bestLatency = latency;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,188 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.reactivestreams.FlowAdapters;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointWithResponseStreamRequest;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointWithResponseStreamResponseHandler;
+import software.amazon.awssdk.services.sagemakerruntime.model.PayloadPart;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Streams the output of SageMaker endpoints with InvokeEndpointWithResponseStream, so callers
+ * see the first tokens while the model is still generating, as with Bedrock's streaming APIs.
+ * <p>
+ * The payload parts are reassembled into tokens by a {@link PayloadReassembler} per stream.
+ * Callbacks run on an SDK event loop thread and must not block. Time to first token, gaps
+ * between parts and durations go to the {@link MetricsSink} under the endpoint name. With an
+ * {@link AdmissionController}, each stream waits for admission without holding a thread and
+ * keeps its admission until the stream ends. The async client is not owned by the streamer.
+ */
+public class EndpointStreamer {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final SageMakerRuntimeAsyncClient sageMakerRuntimeAsync;
+    private final AdmissionController admissionController;
+    private final PayloadReassembler.Format format;
+    private final MetricsSink metricsSink;
+
+    /**
+     * @param admissionController admits each stream, or {@code null} to start them unlimited
+     */
+    public EndpointStreamer(SageMakerRuntimeAsyncClient sageMakerRuntimeAsync, AdmissionController admissionController,
+                            PayloadReassembler.Format format, MetricsSink metricsSink) {
+        this.sageMakerRuntimeAsync = sageMakerRuntimeAsync;
+        this.admissionController = admissionController;
+        this.format = format;
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * Streams the answer to {@code inputText} without blocking the caller.
+     *
+     * @return a future completed with the full response text when the stream ends
+     */
+    public CompletableFuture<String> stream(String endpointName, String inputText, Consumer<String> onToken) {
+        StringBuilder text = new StringBuilder();
+        return invoke(request(endpointName, payload(inputText)), token -> {
+            text.append(token);
+            onToken.accept(token);
+        }).thenApply(ignored -> text.toString());
+    }
+
+    /**
+     * Returns a publisher of the tokens of the answer to {@code inputText}. Each subscription
+     * sends one request, and demand from the subscriber is propagated to the response stream,
+     * so a slow subscriber slows down reading from the connection instead of buffering tokens.
+     */
+    public Flow.Publisher<String> publish(String endpointName, String inputText) {
+        InvokeEndpointWithResponseStreamRequest request = request(endpointName, payload(inputText));
+        return subscriber -> {
+            AtomicBoolean subscribed = new AtomicBoolean();
+            Consumer<Throwable> failBeforeSubscribe = t -> {
+                if (subscribed.compareAndSet(false, true)) {
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    });
+                    subscriber.onError(t);
+                }
+            };
+            StreamTimer timer = StreamTimer.start(metricsSink, endpointName);
+            PayloadReassembler reassembler = new PayloadReassembler(format);
+            long[] tokenCount = new long[1];
+            InvokeEndpointWithResponseStreamResponseHandler responseStreamHandler =
+                    InvokeEndpointWithResponseStreamResponseHandler.builder()
+                            .onEventStream(events -> {
+                                subscribed.set(true);
+                                SdkPublisher<String> tokens = events
+                                        .filter(PayloadPart.class)
+                                        .flatMapIterable(part -> {
+                                            timer.onChunk();
+                                            List<String> completed = new ArrayList<>(1);
+                                            reassembler.feed(part.bytes().asByteBuffer(), completed::add);
+                                            tokenCount[0] += completed.size();
+                                            return completed;
+                                        })
+                                        .addTrailingData(() -> {
+                                            List<String> completed = new ArrayList<>(1);
+                                            reassembler.finish(completed::add);
+                                            tokenCount[0] += completed.size();
+                                            return completed;
+                                        })
+                                        .doAfterOnComplete(() -> timer.finish(tokenCount[0]))
+                                        .doAfterOnError(timer::fail);
+                                FlowAdapters.toFlowPublisher(tokens).subscribe(subscriber);
+                            })
+                            .onError(t -> {
+                                timer.fail(t);
+                                failBeforeSubscribe.accept(t);
+                            })
+                            .build();
+            send(request, responseStreamHandler)
+                    .exceptionally(t -> {
+                        failBeforeSubscribe.accept(t);
+                        return null;
+                    });
+        };
+    }
+
+    /**
+     * Sends {@code request} and passes every reassembled token to {@code onToken}.
+     */
+    public CompletableFuture<Void> invoke(InvokeEndpointWithResponseStreamRequest request, Consumer<String> onToken) {
+        StreamTimer timer = StreamTimer.start(metricsSink, request.endpointName());
+        PayloadReassembler reassembler = new PayloadReassembler(format);
+        long[] tokenCount = new long[1];
+        Consumer<String> countingOnToken = token -> {
+            tokenCount[0]++;
+            onToken.accept(token);
+        };
+        InvokeEndpointWithResponseStreamResponseHandler responseStreamHandler =
+                InvokeEndpointWithResponseStreamResponseHandler.builder()
+                        .subscriber(InvokeEndpointWithResponseStreamResponseHandler.Visitor.builder()
+                                .onPayloadPart(part -> {
+                                    timer.onChunk();
+                                    reassembler.feed(part.bytes().asByteBuffer(), countingOnToken);
+                                })
+                                .build())
+                        .build();
+        return send(request, responseStreamHandler)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        timer.fail(error);
+                    } else {
+                        reassembler.finish(countingOnToken);
+                        timer.finish(tokenCount[0]);
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> send(InvokeEndpointWithResponseStreamRequest request,
+                                         InvokeEndpointWithResponseStreamResponseHandler responseStreamHandler) {
+        if (admissionController == null) {
+            return sageMakerRuntimeAsync.invokeEndpointWithResponseStream(request, responseStreamHandler);
+        }
+        return admissionController.admitAsync(request,
+                () -> sageMakerRuntimeAsync.invokeEndpointWithResponseStream(request, responseStreamHandler));
+    }
+
+    /**
+     * Builds the streaming payload understood by the TGI and LMI containers.
+     */
+    public static String payload(String inputText) {
+        ObjectNode payload = OBJECT_MAPPER.createObjectNode();
+        payload.put("inputs", inputText);
+        payload.putObject("parameters").put("max_new_tokens", 512);
+        payload.put("stream", true);
+        try {
+            return OBJECT_MAPPER.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InvokeEndpointWithResponseStreamRequest request(String endpointName, String payload) {
+        return InvokeEndpointWithResponseStreamRequest.builder()
+                .endpointName(endpointName)
+                .contentType("application/json")
+                .body(SdkBytes.fromUtf8String(payload))
+                .build();
+    }
+}
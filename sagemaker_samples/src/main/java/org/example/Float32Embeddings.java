@@ -0,0 +1,78 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Decodes embedding responses that carry raw float32 values, such as a NumPy array's
+ * {@code tobytes()}, straight from the response buffer. Unlike parsing a JSON array of numbers,
+ * this allocates nothing per value: the result is one {@code float[]}, a caller-owned array, or a
+ * direct buffer outside the Java heap.
+ * <p>
+ * A batch of embeddings is expected as its vectors back to back. Values are little-endian, the
+ * byte order of NumPy on x86 and ARM, unless another order is given. The body buffer is never
+ * modified; its position and limit select the bytes to decode.
+ */
+public final class Float32Embeddings {
+
+    private Float32Embeddings() {
+    }
+
+    /**
+     * @return the little-endian values in {@code body}
+     * @throws IllegalArgumentException if the body is not a whole number of float32 values
+     */
+    public static float[] toArray(ByteBuffer body) {
+        return toArray(body, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static float[] toArray(ByteBuffer body, ByteOrder order) {
+        FloatBuffer floats = view(body, order);
+        float[] values = new float[floats.remaining()];
+        floats.get(values);
+        return values;
+    }
+
+    /**
+     * Decodes into {@code target} from {@code offset} on, so that a caller decoding many batches
+     * can reuse one array.
+     *
+     * @return the number of values decoded
+     * @throws IndexOutOfBoundsException if {@code target} has no room for them
+     */
+    public static int decodeInto(ByteBuffer body, ByteOrder order, float[] target, int offset) {
+        FloatBuffer floats = view(body, order);
+        int count = floats.remaining();
+        floats.get(target, offset, count);
+        return count;
+    }
+
+    /**
+     * Copies the values into a direct buffer, for batches too large to keep on the heap.
+     */
+    public static FloatBuffer toDirect(ByteBuffer body, ByteOrder order) {
+        view(body, order);
+        ByteBuffer direct = ByteBuffer.allocateDirect(body.remaining()).order(order);
+        direct.put(body.duplicate()).flip();
+        return direct.asFloatBuffer();
+    }
+
+    /**
+     * @return the values in {@code body} as a float view of the same memory, without copying
+     */
+    public static FloatBuffer view(ByteBuffer body, ByteOrder order) {
+        if (body.remaining() % Float.BYTES != 0) {
+            throw new IllegalArgumentException(
+                    "Body of " + body.remaining() + " bytes is not a whole number of float32 values");
+        }
+        return body.duplicate().order(order).asFloatBuffer();
+    }
+
+    /**
+     * @return vector {@code index} of a batch of {@code dimension}-sized vectors, sharing the batch's memory
+     */
+    public static FloatBuffer vector(FloatBuffer batch, int dimension, int index) {
+        return batch.slice(batch.position() + index * dimension, dimension);
+    }
+}
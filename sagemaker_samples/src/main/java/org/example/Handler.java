@@ -3,32 +3,80 @@ package org.example;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
 import software.amazon.awssdk.services.sagemaker.SageMakerClient;
 import software.amazon.awssdk.services.sagemaker.model.ListEndpointsRequest;
-import software.amazon.awssdk.services.sagemaker.model.ListEndpointsResponse;
 import software.amazon.awssdk.services.sagemaker.model.EndpointSummary;
 import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeClient;
 import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
 import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointResponse;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
+/**
+ * Entry point for the samples' calls. Clients, the endpoint registry and the other heavy
+ * dependencies are resolved on first use, so a handler that only ever calls one API does not
+ * build the clients of the others or start the registry's refresh thread.
+ */
 public class Handler {
     private static final Logger logger = LoggerFactory.getLogger(Handler.class);
-    private final SageMakerRuntimeClient sageMakerRuntime;
-    private final SageMakerClient sageMakerClient;
+    private final Lazy<SageMakerRuntimeClient> sageMakerRuntime = new Lazy<>(DependencyFactory::sageMakerRuntimeClient);
+    private final Lazy<SageMakerClient> sageMakerClient = new Lazy<>(DependencyFactory::sageMakerClient);
+    private final Lazy<BedrockRuntimeClient> bedrockRuntimeClient = new Lazy<>(DependencyFactory::bedrockRuntimeClient);
+    private final Lazy<BatchInvoker> batchInvoker = new Lazy<>(DependencyFactory::batchInvoker);
+    private final Lazy<EndpointRegistry> endpointRegistry = new Lazy<>(DependencyFactory::endpointRegistry);
+    private final Lazy<EndpointStreamer> endpointStreamer = new Lazy<>(DependencyFactory::endpointStreamer);
+    private final Lazy<OutputSink> outputSink = new Lazy<>(DependencyFactory::outputSink);
+    private final MetricsSink metricsSink;
+    private final ResponseCache responseCache;
+    private final PayloadLog payloadLog;
 
     public Handler() {
-        this.sageMakerRuntime = DependencyFactory.sageMakerRuntimeClient();
-        this.sageMakerClient = DependencyFactory.sageMakerClient();
+        this(DependencyFactory.responseCache());
+    }
+
+    /**
+     * @param responseCache the cache for text calls; a disabled one sends every call to the model
+     */
+    public Handler(ResponseCache responseCache) {
+        this.metricsSink = DependencyFactory.metricsSink();
+        this.responseCache = responseCache;
+        this.payloadLog = DependencyFactory.payloadLog();
+    }
+
+    /**
+     * @return the endpoint registry, which starts loading the endpoint list on the first call
+     */
+    public EndpointRegistry endpointRegistry() {
+        return endpointRegistry.get();
     }
 
     public List<EndpointSummary> listEndpoints() {
         try {
             ListEndpointsRequest request = ListEndpointsRequest.builder().build();
-            ListEndpointsResponse result = sageMakerClient.listEndpoints(request);
-            List<EndpointSummary> endpoints = result.endpoints();
+            List<EndpointSummary> endpoints = new ArrayList<>();
+            sageMakerClient.get().listEndpointsPaginator(request).endpoints().forEach(endpoints::add);
             
             logger.info("Found {} endpoints", endpoints.size());
             for (EndpointSummary endpoint : endpoints) {
@@ -42,20 +90,30 @@ public class Handler {
         }
     }
 
-    public String invokeEndpoint(String endpointName, String inputText) {
-        try {
-            SdkBytes inputBytes = SdkBytes.fromString(inputText, StandardCharsets.UTF_8);
-
-            InvokeEndpointRequest request = InvokeEndpointRequest.builder()
-                    .endpointName(endpointName)
-                    .contentType("text/plain")
-                    .body(inputBytes)
-                    .build();
+    public ResponseCache responseCache() {
+        return responseCache;
+    }
 
-            InvokeEndpointResponse result = sageMakerRuntime.invokeEndpoint(request);
+    public String invokeEndpoint(String endpointName, String inputText) {
+        return invokeEndpoint(endpointName, inputText, latencyNanos -> { });
+    }
 
-            String responseBody = result.body().asUtf8String();
-            logger.info("SageMaker endpoint response: {}", responseBody);
+    /**
+     * @param onInvoked receives the latency of the invocation, unless the response came from the cache
+     */
+    private String invokeEndpoint(String endpointName, String inputText, LongConsumer onInvoked) {
+        try {
+            String cacheKey = ResponseCache.key(endpointName, inputText, null, null, null);
+            byte[] responseBytes = responseCache.get(cacheKey, () -> {
+                long start = System.nanoTime();
+                byte[] invoked = invokeUncached(endpointName, inputText);
+                onInvoked.accept(System.nanoTime() - start);
+                return invoked;
+            });
+            String responseBody = new String(responseBytes, StandardCharsets.UTF_8);
+            if (payloadLog.sampled()) {
+                logger.info("SageMaker endpoint response: {}", payloadLog.abbreviate(responseBody));
+            }
 
             return responseBody;
 
@@ -65,14 +123,210 @@ public class Handler {
         }
     }
 
+    private byte[] invokeUncached(String endpointName, String inputText) {
+        MicroBatcher microBatcher = DependencyFactory.microBatcher(endpointName);
+        if (microBatcher != null) {
+            Duration timeout = microBatcher.timeout();
+            try {
+                return microBatcher.submit(inputText).get(timeout.toNanos(), TimeUnit.NANOSECONDS)
+                        .getBytes(StandardCharsets.UTF_8);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new CompletionException(e.getCause());
+            } catch (TimeoutException e) {
+                throw ApiCallTimeoutException.create(timeout.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.create("Interrupted while waiting for a micro-batch to " + endpointName, e);
+            }
+        }
+
+        return invokeEndpoint(sageMakerRuntime.get(), endpointName, endpointName, inputText);
+    }
+
+    /**
+     * Streams the endpoint's answer to {@code inputText}, passing each token to {@code onToken} as
+     * it arrives. The callback runs on an SDK event loop thread and must not block.
+     *
+     * @return a future completed with the full response text when the stream ends
+     */
+    public CompletableFuture<String> invokeEndpointStreaming(String endpointName, String inputText,
+                                                           Consumer<String> onToken) {
+        return endpointStreamer.get().stream(endpointName, inputText, onToken);
+    }
+
+    /**
+     * Streams the endpoint's answer to {@code inputText} into the configured {@link OutputSink},
+     * which queues each token without blocking the event loop.
+     */
+    public CompletableFuture<String> invokeEndpointStreaming(String endpointName, String inputText) {
+        return endpointStreamer.get().stream(endpointName, inputText, outputSink.get()::write);
+    }
+
+    /**
+     * @return a publisher of the tokens of the endpoint's answer to {@code inputText}, which reads
+     *         the response stream only as fast as its subscriber requests tokens
+     */
+    public Flow.Publisher<String> publishEndpoint(String endpointName, String inputText) {
+        return endpointStreamer.get().publish(endpointName, inputText);
+    }
+
+    /**
+     * Sends a binary payload, e.g. an image or a tensor, and returns the response body.
+     * <p>
+     * A heap buffer that spans its whole backing array is sent without copying; other buffers
+     * are copied once. The returned buffer is a read-only view of the SDK's response bytes.
+     * Binary calls bypass the response cache and the micro-batcher.
+     */
+    public ByteBuffer invokeEndpoint(String endpointName, ByteBuffer body, String contentType, String accept) {
+        return invokeEndpoint(sageMakerRuntime.get(), endpointName, endpointName, wrap(body), contentType, accept)
+                .asByteBuffer();
+    }
+
+    /**
+     * Like {@link #invokeEndpoint(String, ByteBuffer, String, String)} for a payload read from a
+     * stream. InvokeEndpoint is not a streaming operation, so the stream is read to its end
+     * before the call; the returned stream reads the response bytes in place.
+     */
+    public InputStream invokeEndpoint(String endpointName, InputStream body, String contentType, String accept) {
+        return invokeEndpoint(sageMakerRuntime.get(), endpointName, endpointName, SdkBytes.fromInputStream(body),
+                contentType, accept).asInputStream();
+    }
+
+    /**
+     * Invokes an embedding endpoint that answers with raw little-endian float32 values, for
+     * whichever {@code accept} type its container uses for them, and decodes them without an
+     * intermediate text form. For large batches, decode the {@link ByteBuffer} overload's result
+     * with {@link Float32Embeddings} instead: into a reused array, a direct buffer, or a view
+     * split per vector with {@link Float32Embeddings#vector}.
+     */
+    public float[] invokeEmbedding(String endpointName, ByteBuffer body, String contentType, String accept) {
+        return Float32Embeddings.toArray(invokeEndpoint(endpointName, body, contentType, accept));
+    }
+
+    private SdkBytes invokeEndpoint(SageMakerRuntimeClient client, String endpointName, String metricsKey,
+                                    SdkBytes body, String contentType, String accept) {
+        InvokeEndpointRequest request = InvokeEndpointRequest.builder()
+                .endpointName(endpointName)
+                .contentType(contentType)
+                .accept(accept)
+                .body(body)
+                .build();
+
+        StreamTimer timer = StreamTimer.start(metricsSink, metricsKey);
+        InvokeEndpointResponse result;
+        try {
+            result = client.invokeEndpoint(request);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+        timer.onChunk();
+        timer.finish(-1);
+        return result.body();
+    }
+
+    private static SdkBytes wrap(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return SdkBytes.fromByteArrayUnsafe(buffer.array());
+        }
+        return SdkBytes.fromByteBuffer(buffer);
+    }
+
+    /**
+     * Sends {@code inputText} to whichever endpoint in {@code router.endpoints} is expected to
+     * answer first, failing over to and hedging with the others.
+     */
+    public String invokeRouted(String inputText) {
+        Router<SageMakerRuntimeClient> router = DependencyFactory.endpointRouter();
+        // Every routed endpoint serves the same model, so they share cache entries.
+        String cacheKey = ResponseCache.key("router.endpoints", inputText, null, null, null);
+        byte[] responseBytes = responseCache.get(cacheKey, () -> router.call(null,
+                target -> invokeEndpoint(target.client(), target.resource(), target.name(), inputText)));
+        return new String(responseBytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] invokeEndpoint(SageMakerRuntimeClient client, String endpointName, String metricsKey,
+                                  String inputText) {
+        SdkBytes inputBytes = SdkBytes.fromString(inputText, StandardCharsets.UTF_8);
+        return invokeEndpoint(client, endpointName, metricsKey, inputBytes, "text/plain", null).asByteArrayUnsafe();
+    }
+
+    /**
+     * Sends {@code inputText} as a single user message to a Bedrock model and returns the text of its answer.
+     */
+    public String converse(String modelId, String inputText) {
+        String cacheKey = ResponseCache.key(modelId, inputText, null, null, null);
+        byte[] responseBytes = responseCache.get(cacheKey, () -> converseUncached(modelId, inputText));
+        return new String(responseBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like {@link #converse(String, String)}, but sends the request to whichever region in
+     * {@code router.regions} is expected to answer first, failing over to and hedging with the others.
+     */
+    public String converseRouted(String modelId, String inputText) {
+        Router<BedrockRuntimeClient> router = DependencyFactory.bedrockRouter();
+        String cacheKey = ResponseCache.key(modelId, inputText, null, null, null);
+        byte[] responseBytes = responseCache.get(cacheKey, () -> router.call(modelId,
+                target -> converse(target.client(), modelId, target.name() + "/" + modelId, inputText)));
+        return new String(responseBytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] converseUncached(String modelId, String inputText) {
+        return converse(bedrockRuntimeClient.get(), modelId, modelId, inputText);
+    }
+
+    private byte[] converse(BedrockRuntimeClient client, String modelId, String metricsKey, String inputText) {
+        Message message = Message.builder()
+                .role(ConversationRole.USER)
+                .content(ContentBlock.fromText(inputText))
+                .build();
+
+        StreamTimer timer = StreamTimer.start(metricsSink, metricsKey);
+        ConverseResponse response;
+        try {
+            response = client.converse(request -> request.modelId(modelId).messages(message));
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+        timer.onChunk();
+        timer.finish(response.usage() != null && response.usage().outputTokens() != null
+                ? response.usage().outputTokens() : -1);
+
+        StringBuilder text = new StringBuilder();
+        for (ContentBlock block : response.output().message().content()) {
+            if (block.text() != null) {
+                text.append(block.text());
+            }
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public List<BatchInvoker.InvocationResult> invokeAll(String endpointName, List<String> inputTexts) {
+        List<BatchInvoker.InvocationResult> results = batchInvoker.get().invokeAll(endpointName, inputTexts);
+        long failed = results.stream().filter(r -> !r.isSuccess()).count();
+        logger.info("Batch of {} requests to endpoint {} finished, {} failed", results.size(), endpointName, failed);
+        return results;
+    }
+
+    public CompletableFuture<List<BatchInvoker.InvocationResult>> invokeAllStreaming(
+            String endpointName, List<String> inputTexts, Consumer<BatchInvoker.InvocationResult> onResult) {
+        return batchInvoker.get().invokeAllStreaming(endpointName, inputTexts, onResult);
+    }
+
     public void sendRequest(String endpointName, String inputText) {
-        if (endpointName == null || endpointName.isEmpty()) {
-            List<EndpointSummary> endpoints = listEndpoints();
-            if (!endpoints.isEmpty()) {
-                endpointName = endpoints.get(0).endpointName();
-                logger.info("Using first available endpoint: {}", endpointName);
+        boolean registrySelected = endpointName == null || endpointName.isEmpty();
+        if (registrySelected) {
+            Optional<String> selected = endpointRegistry.get().select();
+            if (selected.isPresent()) {
+                endpointName = selected.get();
+                logger.info("Using registered endpoint: {}", endpointName);
             } else {
-                logger.error("No endpoints available");
+                logger.error("No InService endpoints available");
                 return;
             }
         }
@@ -83,10 +337,45 @@ public class Handler {
         }
 
         try {
-            String response = invokeEndpoint(endpointName, inputText);
-            logger.info("Received response from endpoint {}: {}", endpointName, response);
+            String selectedEndpoint = endpointName;
+            // A cache hit says nothing about the endpoint, so only real invocations are recorded,
+            // and only for endpoints the registry picked.
+            LongConsumer onInvoked = registrySelected
+                    ? latencyNanos -> endpointRegistry.get().recordLatency(selectedEndpoint, latencyNanos)
+                    : latencyNanos -> { };
+            String response = invokeEndpoint(endpointName, inputText, onInvoked);
+            if (payloadLog.sampled()) {
+                logger.info("Received response from endpoint {}: {}", endpointName, payloadLog.abbreviate(response));
+            }
         } catch (Exception e) {
             logger.error("Error sending request to endpoint {}", endpointName, e);
         }
     }
+
+    /**
+     * Resolves a dependency on the first {@link #get()} and returns the same instance afterwards.
+     */
+    private static final class Lazy<T> implements Supplier<T> {
+        private final Supplier<T> factory;
+        private volatile T value;
+
+        Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public T get() {
+            T current = value;
+            if (current == null) {
+                synchronized (this) {
+                    current = value;
+                    if (current == null) {
+                        current = factory.get();
+                        value = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
 }
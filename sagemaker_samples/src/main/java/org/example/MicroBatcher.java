@@ -0,0 +1,213 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces small requests to one endpoint into batched invocations.
+ * <p>
+ * Inputs submitted from any thread are collected until {@code maxBatchSize} are waiting or the
+ * oldest has waited {@code maxDelay}, then sent as one request encoded by the {@link BatchCodec}.
+ * The response is split and each caller's future completes with its own output; if the batch
+ * fails, every future in it fails with the same exception. With an {@link AdmissionController},
+ * a batch waits for admission without holding the scheduler thread. While {@link #pause() paused},
+ * no flush is scheduled, so inputs only go out in full batches. The async client is not owned by
+ * the batcher.
+ */
+public class MicroBatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final SageMakerRuntimeAsyncClient sageMakerRuntimeAsync;
+    private final AdmissionController admissionController;
+    private final String endpointName;
+    private final BatchCodec codec;
+    private final int maxBatchSize;
+    private final Duration maxDelay;
+    private final Duration requestTimeout;
+    private final MetricsSink metricsSink;
+    private final ScheduledExecutorService scheduler;
+
+    private List<Pending> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean paused;
+    private boolean closed;
+
+    /**
+     * @param admissionController admits each batch, or {@code null} to send them unlimited
+     * @param requestTimeout      bounds each batched request, including the SDK's retries
+     */
+    public MicroBatcher(SageMakerRuntimeAsyncClient sageMakerRuntimeAsync, AdmissionController admissionController,
+                        String endpointName, BatchCodec codec, int maxBatchSize, Duration maxDelay,
+                        Duration requestTimeout, MetricsSink metricsSink) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.sageMakerRuntimeAsync = sageMakerRuntimeAsync;
+        this.admissionController = admissionController;
+        this.endpointName = endpointName;
+        this.codec = codec;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.requestTimeout = requestTimeout;
+        this.metricsSink = metricsSink;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "micro-batcher-" + endpointName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return a future completed with the output for {@code input} once its batch returns
+     */
+    public CompletableFuture<String> submit(String input) {
+        Pending request = new Pending(input);
+        List<Pending> full = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("MicroBatcher for " + endpointName + " is closed");
+            }
+            pending.add(request);
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (pending.size() == 1 && !paused) {
+                scheduledFlush = scheduler.schedule(this::flush, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return request.future;
+    }
+
+    /**
+     * @return the longest a submitted input should take: the batching delay, the wait for
+     *         admission and the request timeout
+     */
+    public Duration timeout() {
+        Duration timeout = maxDelay.plus(requestTimeout);
+        return admissionController == null ? timeout : timeout.plus(admissionController.maxWait());
+    }
+
+    /**
+     * Sends whatever is waiting now.
+     */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    /**
+     * Cancels the delayed flush, e.g. while the JVM is checkpointed; waiting inputs stay queued
+     * until {@link #resume()}.
+     */
+    public synchronized void pause() {
+        paused = true;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Schedules the delayed flush again for inputs that arrived while paused.
+     */
+    public synchronized void resume() {
+        paused = false;
+        if (!pending.isEmpty() && scheduledFlush == null && !closed) {
+            scheduledFlush = scheduler.schedule(this::flush, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sends the waiting inputs and stops accepting new ones; batches already sent still complete.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    private List<Pending> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<String> inputs = new ArrayList<>(batch.size());
+        for (Pending request : batch) {
+            inputs.add(request.input);
+        }
+
+        StreamTimer timer = StreamTimer.start(metricsSink, endpointName);
+        CompletableFuture<List<String>> outputs;
+        try {
+            InvokeEndpointRequest request = InvokeEndpointRequest.builder()
+                    .endpointName(endpointName)
+                    .contentType(codec.contentType())
+                    .accept(codec.contentType())
+                    .body(codec.encode(inputs))
+                    .overrideConfiguration(o -> o.apiCallTimeout(requestTimeout))
+                    .build();
+            outputs = (admissionController == null
+                    ? sageMakerRuntimeAsync.invokeEndpoint(request)
+                    : admissionController.admitAsync(request, () -> sageMakerRuntimeAsync.invokeEndpoint(request)))
+                    .thenApply(response -> codec.decode(response.body(), inputs.size()));
+        } catch (RuntimeException e) {
+            outputs = new CompletableFuture<>();
+            outputs.completeExceptionally(e);
+        }
+
+        outputs.whenComplete((results, error) -> {
+            if (error != null) {
+                timer.fail(error);
+                // One line, no stack trace: this runs on the SDK's response thread.
+                logger.warn("Batch of {} inputs to endpoint {} failed: {}", batch.size(), endpointName,
+                        error.toString());
+                for (Pending request : batch) {
+                    request.future.completeExceptionally(error);
+                }
+                return;
+            }
+            timer.onChunk();
+            timer.finish(-1);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+        });
+    }
+
+    private static final class Pending {
+        private final String input;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        Pending(String input) {
+            this.input = input;
+        }
+    }
+}
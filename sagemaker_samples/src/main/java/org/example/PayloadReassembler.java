@@ -0,0 +1,148 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Turns the {@code PayloadPart}s of one InvokeEndpointWithResponseStream response back into
+ * tokens. The parts are cut wherever the container flushed, so a part may end inside a UTF-8
+ * character or a JSON line; the unfinished bytes are kept until the next part completes them.
+ * <p>
+ * Not thread-safe: use one instance per response stream, fed in order.
+ */
+public final class PayloadReassembler {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * How the container frames its output.
+     */
+    public enum Format {
+        /**
+         * Plain UTF-8 text; every decoded piece is a token.
+         */
+        TEXT,
+        /**
+         * One JSON object per line, optionally as server-sent events ({@code data:} prefix), as
+         * sent by the TGI and LMI containers. The token is {@code token.text}, or the first
+         * element of {@code outputs}; lines without either, such as the final summary, are skipped.
+         */
+        JSON_LINES
+    }
+
+    private final Format format;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private ByteBuffer pending = ByteBuffer.allocate(0);
+
+    public PayloadReassembler(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Feeds the next part and passes every token it completes to {@code onToken}.
+     */
+    public void feed(ByteBuffer part, Consumer<String> onToken) {
+        if (format == Format.TEXT) {
+            String text = decode(part, false);
+            if (!text.isEmpty()) {
+                onToken.accept(text);
+            }
+            return;
+        }
+        ByteBuffer bytes = part.duplicate();
+        while (bytes.hasRemaining()) {
+            byte b = bytes.get();
+            if (b == '\n') {
+                emitLine(onToken);
+            } else {
+                line.write(b);
+            }
+        }
+    }
+
+    /**
+     * Ends the stream, passing a last token that was not terminated to {@code onToken}.
+     */
+    public void finish(Consumer<String> onToken) {
+        if (format == Format.TEXT) {
+            String text = decode(ByteBuffer.allocate(0), true);
+            if (!text.isEmpty()) {
+                onToken.accept(text);
+            }
+        } else {
+            emitLine(onToken);
+        }
+    }
+
+    /**
+     * @return the token of one JSON line, or {@code null} if it carries none
+     * @throws IllegalArgumentException if the line is not JSON
+     */
+    static String tokenOf(String jsonLine) {
+        String json = jsonLine.startsWith("data:") ? jsonLine.substring(5).trim() : jsonLine;
+        if (json.isEmpty() || !json.startsWith("{")) {
+            // SSE comments, event names and keep-alives
+            return null;
+        }
+        JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON line in response stream: " + jsonLine, e);
+        }
+        JsonNode text = node.path("token").path("text");
+        if (text.isTextual()) {
+            return text.asText();
+        }
+        JsonNode outputs = node.path("outputs");
+        if (outputs.isArray() && outputs.size() > 0 && outputs.get(0).isTextual()) {
+            return outputs.get(0).asText();
+        }
+        return null;
+    }
+
+    private void emitLine(Consumer<String> onToken) {
+        if (line.size() == 0) {
+            return;
+        }
+        String text = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+        line.reset();
+        String token = tokenOf(text);
+        if (token != null) {
+            onToken.accept(token);
+        }
+    }
+
+    /**
+     * Decodes {@code part} after the bytes left over from the previous part and keeps the bytes
+     * of a character that continues in the next part.
+     */
+    private String decode(ByteBuffer part, boolean endOfInput) {
+        ByteBuffer input;
+        if (pending.hasRemaining()) {
+            input = ByteBuffer.allocate(pending.remaining() + part.remaining());
+            input.put(pending).put(part.duplicate()).flip();
+        } else {
+            input = part.duplicate();
+        }
+        CharBuffer chars = CharBuffer.allocate((int) (input.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        decoder.decode(input, chars, endOfInput);
+        if (endOfInput) {
+            decoder.flush(chars);
+            decoder.reset();
+        }
+        pending = input.hasRemaining() ? ByteBuffer.allocate(input.remaining()).put(input).flip() : ByteBuffer.allocate(0);
+        return chars.flip().toString();
+    }
+}
@@ -0,0 +1,503 @@
+package org.example;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Spreads calls for one model over several deployments of it, e.g. the same Bedrock model in
+ * several regions or SageMaker endpoints in several regions, and fails over and hedges between them.
+ * <p>
+ * Every target keeps an exponentially weighted average of its latency and error rate, and a call
+ * goes to the target with the lowest expected latency, {@code latency / (1 - errorRate)}. Targets
+ * that have not been called yet are tried first; a target whose calls have only failed so far is
+ * scored with {@code initialHedgeDelay} as its latency. A target whose error rate reaches
+ * {@code ejectErrorRate} is tried only as a last resort for {@code ejectDuration}. A target that
+ * already has as many calls in flight as its {@link AdmissionController} admits is tried after
+ * the targets with spare capacity, so calls spill over into other regions' quotas instead of
+ * waiting for admission in one region.
+ * <p>
+ * A call that fails with a throttling, server or connection error is retried on the next target,
+ * up to {@code maxAttempts} targets. If the first attempt is still running after the p95 latency of
+ * its target, a hedged attempt starts on the next target and the first result wins; the other
+ * attempt is cancelled. Hedges are capped at {@code hedgeBudgetPercent} of all calls, so a slow
+ * region cannot double the load on the others.
+ *
+ * @param <C> the SDK client type of the targets
+ */
+public final class Router<C> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(Router.class);
+
+    /** Weight of the newest sample in the latency and error rate averages. */
+    private static final double EWMA_ALPHA = 0.2;
+    /** Successful calls per target between two updates of its hedge delay. */
+    private static final int WINDOW_SAMPLES = 100;
+
+    private final List<Target<C>> targets;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+    private final int maxAttempts;
+    private final boolean hedging;
+    private final double hedgePercentile;
+    private final long minHedgeDelayNanos;
+    private final long initialHedgeDelayNanos;
+    private final double hedgeBudgetPercent;
+    private final double ejectErrorRate;
+    private final long ejectNanos;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+
+    private Router(Builder<C> builder) {
+        if (builder.targets.isEmpty()) {
+            throw new IllegalArgumentException("A router needs at least one target");
+        }
+        this.targets = Collections.unmodifiableList(new ArrayList<>(builder.targets));
+        this.ownsExecutor = builder.executor == null;
+        this.executor = ownsExecutor
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("router-", 1).factory())
+                : builder.executor;
+        this.maxAttempts = builder.maxAttempts;
+        this.hedging = builder.hedging && targets.size() > 1;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.minHedgeDelayNanos = builder.minHedgeDelay.toNanos();
+        this.initialHedgeDelayNanos = builder.initialHedgeDelay.toNanos();
+        this.hedgeBudgetPercent = builder.hedgeBudgetPercent;
+        this.ejectErrorRate = builder.ejectErrorRate;
+        this.ejectNanos = builder.ejectDuration.toNanos();
+        this.hedgeTimer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "router-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most calls finish before their hedge is due, so cancelled timers must not pile up.
+        this.hedgeTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    public static <C> Builder<C> builder() {
+        return new Builder<>();
+    }
+
+    public List<Target<C>> targets() {
+        return targets;
+    }
+
+    /**
+     * Routes one call and waits for its result.
+     *
+     * @param key  the model ID the call is admitted under, for targets without a resource of their own
+     * @param call invokes the target's client; it runs on the router's executor and may be
+     *             interrupted when another attempt wins
+     * @throws RuntimeException the error of the first failed attempt, with the others suppressed,
+     *                          unless that error is an {@link Error}, which is rethrown as is
+     */
+    public <T> T call(String key, Function<Target<C>, T> call) {
+        try {
+            return submit(key, call).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Routes one call without waiting for it.
+     *
+     * @see #call(String, Function)
+     */
+    public <T> CompletableFuture<T> submit(String key, Function<Target<C>, T> call) {
+        calls.incrementAndGet();
+        Routing<T> routing = new Routing<>(key, call, rank(key));
+        routing.start();
+        return routing.result;
+    }
+
+    /**
+     * Stops the hedge timer, and the executor unless it was given to the builder. The clients
+     * belong to the caller.
+     */
+    @Override
+    public void close() {
+        hedgeTimer.shutdownNow();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private List<Target<C>> rank(String key) {
+        // Scores move while calls complete, so they are read once before sorting.
+        long now = System.nanoTime();
+        List<Candidate<C>> candidates = new ArrayList<>(targets.size());
+        for (Target<C> target : targets) {
+            candidates.add(target.candidate(key, now, initialHedgeDelayNanos));
+        }
+        candidates.sort(Comparator.<Candidate<C>>comparingInt(c -> c.tier).thenComparingDouble(c -> c.score));
+        List<Target<C>> ranked = new ArrayList<>(candidates.size());
+        for (Candidate<C> candidate : candidates) {
+            ranked.add(candidate.target);
+        }
+        return ranked;
+    }
+
+    private void record(Target<C> target, boolean success, long elapsedNanos) {
+        synchronized (target) {
+            target.errorRate = EWMA_ALPHA * (success ? 0 : 1) + (1 - EWMA_ALPHA) * target.errorRate;
+            if (success) {
+                target.latencyEwmaNanos = target.latencyEwmaNanos < 0
+                        ? elapsedNanos
+                        : EWMA_ALPHA * elapsedNanos + (1 - EWMA_ALPHA) * target.latencyEwmaNanos;
+                target.window.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+                if (target.window.getTotalCount() >= WINDOW_SAMPLES) {
+                    target.hedgeDelayNanos = Math.max(minHedgeDelayNanos,
+                            TimeUnit.MICROSECONDS.toNanos(target.window.getValueAtPercentile(hedgePercentile)));
+                    target.window.reset();
+                }
+            } else if (target.errorRate >= ejectErrorRate) {
+                long now = System.nanoTime();
+                if (now - target.ejectedUntilNanos >= 0) {
+                    target.ejectedUntilNanos = now + ejectNanos;
+                    logger.warn("Ejecting {} for {} ms, error rate {}", target.name,
+                            TimeUnit.NANOSECONDS.toMillis(ejectNanos), String.format("%.2f", target.errorRate));
+                }
+            }
+        }
+    }
+
+    private long hedgeDelayNanos(Target<C> target) {
+        synchronized (target) {
+            return target.hedgeDelayNanos < 0 ? initialHedgeDelayNanos : target.hedgeDelayNanos;
+        }
+    }
+
+    private boolean withinHedgeBudget() {
+        return hedges.get() < calls.get() * hedgeBudgetPercent / 100;
+    }
+
+    /**
+     * Throttling, server errors and client-side failures such as timeouts or admission timeouts
+     * are the target's fault and are retried elsewhere; other service errors, e.g. validation
+     * errors, would fail on every target.
+     */
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof SdkServiceException) {
+            SdkServiceException serviceException = (SdkServiceException) e;
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkClientException;
+    }
+
+    /**
+     * The attempts of one routed call.
+     */
+    private final class Routing<T> {
+        private final String key;
+        private final Function<Target<C>, T> call;
+        private final List<Target<C>> ranked;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<Future<?>> attempts = new ArrayList<>();
+        private ScheduledFuture<?> hedge;
+        private Throwable failure;
+        private int next;
+        private int running;
+
+        Routing(String key, Function<Target<C>, T> call, List<Target<C>> ranked) {
+            this.key = key;
+            this.call = call;
+            this.ranked = ranked;
+        }
+
+        void start() {
+            result.whenComplete((value, error) -> cancelAttempts());
+            synchronized (this) {
+                Target<C> first = ranked.get(0);
+                if (launch() && hedging) {
+                    hedge = hedgeTimer.schedule(this::hedge, hedgeDelayNanos(first), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (result.isDone() || !withinHedgeBudget() || !launch()) {
+                    return;
+                }
+            }
+            hedges.incrementAndGet();
+        }
+
+        /**
+         * Starts an attempt on the next target.
+         *
+         * @return {@code false} if the call is done or has no attempts left
+         */
+        private synchronized boolean launch() {
+            if (result.isDone() || next >= ranked.size() || next >= maxAttempts) {
+                return false;
+            }
+            Target<C> target = ranked.get(next++);
+            target.inFlight.incrementAndGet();
+            running++;
+            try {
+                attempts.add(executor.submit(() -> attempt(target)));
+            } catch (RuntimeException e) {
+                target.inFlight.decrementAndGet();
+                running--;
+                result.completeExceptionally(e);
+                return false;
+            }
+            return true;
+        }
+
+        private void attempt(Target<C> target) {
+            long start = System.nanoTime();
+            try {
+                T value = call.apply(target);
+                record(target, true, System.nanoTime() - start);
+                result.complete(value);
+            } catch (Throwable e) {
+                // An attempt that lost the race was interrupted; its error says nothing about the target.
+                // An Error is not retryable, so it fails the call instead of leaving it waiting.
+                if (!result.isDone()) {
+                    boolean retryable = isRetryable(e);
+                    if (retryable) {
+                        record(target, false, System.nanoTime() - start);
+                    }
+                    failed(target, e, retryable);
+                }
+            } finally {
+                target.inFlight.decrementAndGet();
+            }
+        }
+
+        private synchronized void failed(Target<C> target, Throwable e, boolean retryable) {
+            running--;
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+            if (retryable && launch()) {
+                logger.debug("Call for {} failed on {}, failing over", key, target.name, e);
+                return;
+            }
+            if (!retryable || running == 0) {
+                result.completeExceptionally(failure);
+            }
+        }
+
+        private synchronized void cancelAttempts() {
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+            for (Future<?> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * One deployment calls can be routed to: an SDK client for a region, and optionally the name of
+     * the resource to call there, such as a SageMaker endpoint.
+     */
+    public static final class Target<C> {
+        private final String name;
+        private final C client;
+        private final String resource;
+        private final AdmissionController admissionController;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        // Guarded by this.
+        private final Histogram window = new Histogram(2);
+        private double latencyEwmaNanos = -1;
+        private double errorRate;
+        private long hedgeDelayNanos = -1;
+        private long ejectedUntilNanos = System.nanoTime();
+
+        /**
+         * @param admissionController the controller of the target's client, whose concurrency limit
+         *                            caps the calls routed to it before it counts as saturated,
+         *                            or {@code null}
+         */
+        public Target(String name, C client, String resource, AdmissionController admissionController) {
+            this.name = name;
+            this.client = client;
+            this.resource = resource;
+            this.admissionController = admissionController;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public C client() {
+            return client;
+        }
+
+        /**
+         * @return the resource to call on this target, or {@code null} if the caller names it
+         */
+        public String resource() {
+            return resource;
+        }
+
+        public synchronized double latencyEwmaMillis() {
+            return latencyEwmaNanos < 0 ? Double.NaN : latencyEwmaNanos / 1_000_000.0;
+        }
+
+        public synchronized double errorRate() {
+            return errorRate;
+        }
+
+        public int inFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @param priorLatencyNanos the latency assumed for a target that has failed but never succeeded
+         */
+        private synchronized Candidate<C> candidate(String key, long now, long priorLatencyNanos) {
+            int tier;
+            if (ejectedUntilNanos - now > 0) {
+                tier = 2;
+            } else if (admissionController != null
+                    && inFlight.get() >= admissionController.concurrencyLimit(resource != null ? resource : key)) {
+                tier = 1;
+            } else {
+                tier = 0;
+            }
+            double score;
+            if (latencyEwmaNanos >= 0) {
+                score = latencyEwmaNanos / Math.max(0.01, 1 - errorRate);
+            } else if (errorRate > 0) {
+                score = priorLatencyNanos / Math.max(0.01, 1 - errorRate);
+            } else {
+                // Never called yet, so it is probed first.
+                score = 0;
+            }
+            return new Candidate<>(this, tier, score);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(latency=%.1fms, errors=%.2f, inFlight=%d)",
+                    name, latencyEwmaMillis(), errorRate(), inFlight());
+        }
+    }
+
+    private static final class Candidate<C> {
+        private final Target<C> target;
+        private final int tier;
+        private final double score;
+
+        Candidate(Target<C> target, int tier, double score) {
+            this.target = target;
+            this.tier = tier;
+            this.score = score;
+        }
+    }
+
+    public static final class Builder<C> {
+        private final List<Target<C>> targets = new ArrayList<>();
+        private ExecutorService executor;
+        private int maxAttempts = 3;
+        private boolean hedging = true;
+        private double hedgePercentile = 95;
+        private Duration minHedgeDelay = Duration.ofMillis(50);
+        private Duration initialHedgeDelay = Duration.ofSeconds(2);
+        private double hedgeBudgetPercent = 10;
+        private double ejectErrorRate = 0.5;
+        private Duration ejectDuration = Duration.ofSeconds(10);
+
+        private Builder() {
+        }
+
+        public Builder<C> target(Target<C> target) {
+            targets.add(target);
+            return this;
+        }
+
+        /**
+         * Runs the attempts, which block on the SDK client; a virtual thread per task by default.
+         * A bounded pool must not be one whose threads call the router: {@link #call} waits for
+         * the attempts it queues there.
+         */
+        public Builder<C> executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Maximum number of targets one call tries, counting the hedged attempt.
+         */
+        public Builder<C> maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder<C> hedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Latency percentile of a target after which a hedged attempt starts.
+         */
+        public Builder<C> hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        public Builder<C> minHedgeDelay(Duration minHedgeDelay) {
+            this.minHedgeDelay = minHedgeDelay;
+            return this;
+        }
+
+        /**
+         * Hedge delay of a target until enough of its calls have been measured.
+         */
+        public Builder<C> initialHedgeDelay(Duration initialHedgeDelay) {
+            this.initialHedgeDelay = initialHedgeDelay;
+            return this;
+        }
+
+        public Builder<C> hedgeBudgetPercent(double hedgeBudgetPercent) {
+            this.hedgeBudgetPercent = hedgeBudgetPercent;
+            return this;
+        }
+
+        public Builder<C> ejectErrorRate(double ejectErrorRate) {
+            this.ejectErrorRate = ejectErrorRate;
+            return this;
+        }
+
+        public Builder<C> ejectDuration(Duration ejectDuration) {
+            this.ejectDuration = ejectDuration;
+            return this;
+        }
+
+        public Router<C> build() {
+            return new Router<>(this);
+        }
+    }
+}
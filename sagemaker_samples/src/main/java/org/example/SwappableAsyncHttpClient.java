@@ -0,0 +1,66 @@
+package org.example;
+
+import software.amazon.awssdk.http.async.AsyncExecuteRequest;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The {@link SdkAsyncHttpClient} counterpart of {@link SwappableHttpClient}. Closing the Netty
+ * client also stops its event loop threads, which are started again with the next client.
+ */
+public final class SwappableAsyncHttpClient implements SdkAsyncHttpClient {
+    private final Supplier<SdkAsyncHttpClient> factory;
+    private volatile SdkAsyncHttpClient delegate;
+    private boolean closed;
+
+    public SwappableAsyncHttpClient(Supplier<SdkAsyncHttpClient> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(AsyncExecuteRequest request) {
+        return delegate().execute(request);
+    }
+
+    @Override
+    public String clientName() {
+        return delegate().clientName();
+    }
+
+    /**
+     * Closes the current HTTP client and its pooled connections. Requests still running on them
+     * fail, so call it while the application is idle.
+     */
+    public synchronized void closeConnections() {
+        SdkAsyncHttpClient current = delegate;
+        delegate = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeConnections();
+    }
+
+    private SdkAsyncHttpClient delegate() {
+        SdkAsyncHttpClient current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("HTTP client is closed");
+                }
+                current = delegate;
+                if (current == null) {
+                    current = factory.get();
+                    delegate = current;
+                }
+            }
+        }
+        return current;
+    }
+}
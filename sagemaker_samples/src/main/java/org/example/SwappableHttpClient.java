@@ -0,0 +1,70 @@
+package org.example;
+
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.SdkHttpClient;
+
+import java.util.function.Supplier;
+
+/**
+ * An {@link SdkHttpClient} whose connections can be dropped and reopened while the SDK clients
+ * built on it stay in place. The real HTTP client is built on first use; {@link #closeConnections()}
+ * closes it, and the next request builds a new one.
+ * <p>
+ * This is what a JVM checkpoint needs: no open sockets while the process is snapshotted and no
+ * stale ones after it is restored, without rebuilding the clients that handlers already hold.
+ */
+public final class SwappableHttpClient implements SdkHttpClient {
+    private final Supplier<SdkHttpClient> factory;
+    private volatile SdkHttpClient delegate;
+    private boolean closed;
+
+    public SwappableHttpClient(Supplier<SdkHttpClient> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+        return delegate().prepareRequest(request);
+    }
+
+    @Override
+    public String clientName() {
+        return delegate().clientName();
+    }
+
+    /**
+     * Closes the current HTTP client and its pooled connections. Requests still running on them
+     * fail, so call it while the application is idle.
+     */
+    public synchronized void closeConnections() {
+        SdkHttpClient current = delegate;
+        delegate = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeConnections();
+    }
+
+    private SdkHttpClient delegate() {
+        SdkHttpClient current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("HTTP client is closed");
+                }
+                current = delegate;
+                if (current == null) {
+                    current = factory.get();
+                    delegate = current;
+                }
+            }
+        }
+        return current;
+    }
+}
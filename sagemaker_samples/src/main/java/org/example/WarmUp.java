@@ -0,0 +1,314 @@
+package org.example;
+
+import org.crac.Context;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Moves the one-time costs of the first invocation to startup. {@link #run()} builds the SDK
+ * clients, runs the JSON and request-building paths until the JIT has compiled them, opens
+ * {@code startup.connections} pooled connections (DNS, TCP and TLS) with concurrent calls to
+ * {@code startup.endpointName}, if one is set, and waits for the endpoint registry's first
+ * ListEndpoints.
+ * <p>
+ * It is also a CRaC resource: before a checkpoint the background refreshes and flushes are paused
+ * and the connections are closed, and after a restore both start again, so a restored JVM neither
+ * holds dead sockets nor pays for new ones on its first request. On JVMs without CRaC the hooks
+ * are never called.
+ */
+public final class WarmUp implements Resource {
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    private final ClientProvider provider;
+    private final List<String> clients;
+    private final int connections;
+    private final int asyncConnections;
+    private final int iterations;
+    private final String endpointName;
+    private final Duration timeout;
+
+    /**
+     * Reads the {@code startup.*} settings of {@code provider}'s configuration.
+     */
+    public WarmUp(ClientProvider provider) {
+        ClientConfig config = provider.config();
+        this.provider = provider;
+        this.clients = new ArrayList<>();
+        for (String client : config.stringProperty("startup.clients", "runtime,async,sagemaker").split(",")) {
+            String name = client.trim().toLowerCase(Locale.ROOT);
+            if (!name.isEmpty()) {
+                if (!Arrays.asList("runtime", "async", "sagemaker", "bedrock").contains(name)) {
+                    throw new IllegalStateException("Invalid startup.clients entry in config.properties: " + client);
+                }
+                clients.add(name);
+            }
+        }
+        this.connections = config.intProperty("startup.connections", 8);
+        this.asyncConnections = config.intProperty("startup.asyncConnections", 8);
+        this.iterations = config.intProperty("startup.iterations", 1_000);
+        this.endpointName = config.stringProperty("startup.endpointName", null);
+        this.timeout = Duration.ofMillis(config.intProperty("startup.timeoutMillis", 10_000));
+    }
+
+    /**
+     * Runs every phase. Failures are logged, not thrown: a warm-up that could not reach the
+     * service leaves the first request as slow as it would have been anyway.
+     */
+    public Report run() {
+        long start = System.nanoTime();
+        buildClients();
+        long clientsDone = System.nanoTime();
+        long checksum = exercise();
+        long exerciseDone = System.nanoTime();
+        int opened = openConnections();
+        long connectionsDone = System.nanoTime();
+        boolean registryLoaded = loadRegistry();
+        long registryDone = System.nanoTime();
+
+        Report report = new Report(
+                TimeUnit.NANOSECONDS.toMillis(clientsDone - start),
+                TimeUnit.NANOSECONDS.toMillis(exerciseDone - clientsDone),
+                opened,
+                connectionCount(),
+                TimeUnit.NANOSECONDS.toMillis(connectionsDone - exerciseDone),
+                registryLoaded,
+                TimeUnit.NANOSECONDS.toMillis(registryDone - connectionsDone));
+        logger.info("Warm-up done: {}", report);
+        logger.debug("Warm-up checksum {}", checksum);
+        return report;
+    }
+
+    /**
+     * Opens the pooled connections with concurrent calls to {@code startup.endpointName}. A
+     * service error, such as the 4xx for an endpoint that does not exist, still counts: the
+     * connection it came over is open and back in the pool. Without an endpoint name no call is
+     * made, so that an unconfigured application does not send requests it knows will fail.
+     *
+     * @return the number of calls that got a response within {@code startup.timeoutMillis}
+     */
+    public int openConnections() {
+        if (endpointName == null) {
+            return 0;
+        }
+        InvokeEndpointRequest request = InvokeEndpointRequest.builder()
+                .endpointName(endpointName)
+                .contentType("text/plain")
+                .body(SdkBytes.fromString("ping", StandardCharsets.UTF_8))
+                .build();
+        List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+        if (clients.contains("runtime")) {
+            for (int i = 0; i < connections; i++) {
+                calls.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        provider.sageMakerRuntimeClient().invokeEndpoint(request);
+                        return true;
+                    } catch (RuntimeException e) {
+                        return connected(e);
+                    }
+                }, provider.handlerExecutor()));
+            }
+        }
+        if (clients.contains("async")) {
+            for (int i = 0; i < asyncConnections; i++) {
+                calls.add(provider.sageMakerRuntimeAsyncClient().invokeEndpoint(request)
+                        .handle((response, error) -> error == null || connected(error)));
+            }
+        }
+        try {
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0]))
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Warm-up connections not all open after {} ms", timeout.toMillis());
+        } catch (ExecutionException e) {
+            logger.warn("Warm-up connection failed: {}", e.getCause().toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int opened = 0;
+        for (CompletableFuture<Boolean> call : calls) {
+            if (call.isDone() && !call.isCompletedExceptionally() && call.join()) {
+                opened++;
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Pauses the background tasks and closes the pooled connections before the JVM is snapshotted.
+     */
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        provider.pauseBackgroundTasks();
+        provider.closeConnections();
+        logger.info("Paused background tasks and closed connections for checkpoint");
+    }
+
+    /**
+     * Resumes the background tasks and opens the pooled connections again in the restored JVM.
+     */
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        long start = System.nanoTime();
+        provider.resumeBackgroundTasks();
+        int opened = openConnections();
+        logger.info("Reopened {}/{} connections after restore in {} ms", opened, connectionCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void buildClients() {
+        provider.metricsSink();
+        provider.responseCache();
+        for (String client : clients) {
+            switch (client) {
+                case "runtime":
+                    provider.sageMakerRuntimeClient();
+                    break;
+                case "async":
+                    provider.sageMakerRuntimeAsyncClient();
+                    break;
+                case "sagemaker":
+                    provider.sageMakerClient();
+                    break;
+                case "bedrock":
+                    provider.bedrockRuntimeClient();
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid startup.clients entry: " + client);
+            }
+        }
+    }
+
+    /**
+     * Loads and runs the classes every request goes through: Jackson reading and writing, the
+     * cache key hash, stream reassembly, batch encoding, float32 decoding and the SDK's request
+     * builders.
+     *
+     * @return a value derived from every result, so that none of the work can be optimized away
+     */
+    private long exercise() {
+        BatchCodec codec = BatchCodec.jsonArray();
+        List<String> batch = Arrays.asList("warm-up", "input");
+        byte[] streamed = "{\"token\":{\"text\":\"warm\"}}\ndata: {\"token\":{\"text\":\"up\"}}\n"
+                .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer embedding = ByteBuffer.allocate(64 * Float.BYTES);
+        long checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            String payload = EndpointStreamer.payload("warm-up " + i);
+            checksum += ResponseCache.key("warm-up", payload, 512, 0.5f, 0.9f).length();
+            PayloadReassembler reassembler = new PayloadReassembler(PayloadReassembler.Format.JSON_LINES);
+            reassembler.feed(ByteBuffer.wrap(streamed), token -> { });
+            checksum += PayloadReassembler.tokenOf("data: {\"token\":{\"text\":\"warm\"}}").length();
+            checksum += codec.decode(codec.encode(batch), batch.size()).size();
+            checksum += Float32Embeddings.toArray(embedding).length;
+            checksum += InvokeEndpointRequest.builder()
+                    .endpointName("warm-up")
+                    .contentType("text/plain")
+                    .body(SdkBytes.fromString(payload, StandardCharsets.UTF_8))
+                    .build()
+                    .hashCode();
+        }
+        return checksum;
+    }
+
+    private boolean loadRegistry() {
+        if (!clients.contains("sagemaker")) {
+            return false;
+        }
+        boolean loaded = provider.endpointRegistry().awaitInitialLoad(timeout);
+        if (!loaded) {
+            logger.warn("Endpoint registry not loaded: the first ListEndpoints failed or took over {} ms",
+                    timeout.toMillis());
+        }
+        return loaded;
+    }
+
+    private int connectionCount() {
+        if (endpointName == null) {
+            return 0;
+        }
+        return (clients.contains("runtime") ? connections : 0) + (clients.contains("async") ? asyncConnections : 0);
+    }
+
+    private static boolean connected(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof AwsServiceException) {
+            return true;
+        }
+        logger.debug("Warm-up call failed: {}", cause.toString());
+        return false;
+    }
+
+    /**
+     * How long each phase of {@link #run()} took.
+     */
+    public static final class Report {
+        private final long clientsMillis;
+        private final long exerciseMillis;
+        private final int openedConnections;
+        private final int requestedConnections;
+        private final long connectionsMillis;
+        private final boolean registryLoaded;
+        private final long registryMillis;
+
+        Report(long clientsMillis, long exerciseMillis, int openedConnections, int requestedConnections,
+               long connectionsMillis, boolean registryLoaded, long registryMillis) {
+            this.clientsMillis = clientsMillis;
+            this.exerciseMillis = exerciseMillis;
+            this.openedConnections = openedConnections;
+            this.requestedConnections = requestedConnections;
+            this.connectionsMillis = connectionsMillis;
+            this.registryLoaded = registryLoaded;
+            this.registryMillis = registryMillis;
+        }
+
+        public long clientsMillis() {
+            return clientsMillis;
+        }
+
+        public long exerciseMillis() {
+            return exerciseMillis;
+        }
+
+        public int openedConnections() {
+            return openedConnections;
+        }
+
+        public long connectionsMillis() {
+            return connectionsMillis;
+        }
+
+        public boolean registryLoaded() {
+            return registryLoaded;
+        }
+
+        public long totalMillis() {
+            return clientsMillis + exerciseMillis + connectionsMillis + registryMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "clients=" + clientsMillis + "ms"
+                    + " exercise=" + exerciseMillis + "ms"
+                    + " connections=" + openedConnections + "/" + requestedConnections + " in " + connectionsMillis + "ms"
+                    + " registry=" + (registryLoaded ? "loaded" : "not loaded") + " in " + registryMillis + "ms"
+                    + " total=" + totalMillis() + "ms";
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkPipelineTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int LINES = 200;
+    private static final int INVALID_LINE = 187;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rerunResumesAfterAFailureWithEveryRecordWrittenOnce() throws Exception {
+        Path input = writeInput();
+        Path output = directory.resolve("output.jsonl");
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(AssertionError.class, () -> pipeline(text -> {
+            if (calls.incrementAndGet() == 100) {
+                throw new AssertionError("invoker failed");
+            }
+            return text.toUpperCase(Locale.ROOT);
+        }).run(input, output));
+        assertTrue(Files.exists(directory.resolve("output.jsonl.checkpoint")));
+
+        BulkPipeline.Summary summary = pipeline(text -> text.toUpperCase(Locale.ROOT)).run(input, output);
+
+        List<JsonNode> records = readOutput(output);
+        List<Integer> expectedLines = new ArrayList<>();
+        for (int line = 1; line <= LINES; line++) {
+            if (line % 10 != 0) {
+                expectedLines.add(line);
+            }
+        }
+        assertEquals(expectedLines.size(), records.size());
+        assertTrue(summary.records() < records.size());
+        for (int i = 0; i < records.size(); i++) {
+            int line = expectedLines.get(i);
+            JsonNode record = records.get(i);
+            if (line == INVALID_LINE) {
+                // Line numbers count from the start of the file, not from where the rerun resumed.
+                assertEquals(INVALID_LINE, record.get("line").asInt());
+                assertTrue(record.has("error"));
+            } else {
+                assertEquals("record-" + line, record.get("input").asText());
+                assertEquals("RECORD-" + line, record.get("output").asText());
+            }
+        }
+    }
+
+    @Test
+    void invokerExceptionsBecomeErrorRecords() throws Exception {
+        Path input = writeInput();
+        Path output = directory.resolve("output.jsonl");
+
+        BulkPipeline.Summary summary = pipeline(text -> {
+            throw new IllegalStateException("no answer for " + text);
+        }).run(input, output);
+
+        List<JsonNode> records = readOutput(output);
+        assertEquals(records.size(), summary.records());
+        assertEquals(records.size(), summary.failures());
+        assertEquals("no answer for record-1", records.get(0).get("error").asText());
+    }
+
+    @Test
+    void throttledRecordStopsTheRunAndIsRetriedOnResume() throws Exception {
+        Path input = writeInput();
+        Path output = directory.resolve("output.jsonl");
+        AtomicInteger throttledCalls = new AtomicInteger();
+
+        RuntimeException failure = assertThrows(RuntimeException.class, () -> pipeline(text -> {
+            if ("record-55".equals(text)) {
+                throttledCalls.incrementAndGet();
+                // Wrapped the way Handler wraps SDK exceptions
+                throw new RuntimeException("Failed to invoke SageMaker endpoint", throttling());
+            }
+            return text.toUpperCase(Locale.ROOT);
+        }).run(input, output));
+        assertTrue(failure.getCause() instanceof AwsServiceException);
+        // The first call and two retries
+        assertEquals(3, throttledCalls.get());
+        for (JsonNode record : readOutput(output)) {
+            assertFalse(record.has("error"), record.toString());
+        }
+
+        pipeline(text -> text.toUpperCase(Locale.ROOT)).run(input, output);
+
+        List<JsonNode> records = readOutput(output);
+        assertEquals(1, records.stream().filter(record -> record.has("error")).count());
+        assertEquals(1, records.stream()
+                .filter(record -> "RECORD-55".equals(record.path("output").asText()))
+                .count());
+    }
+
+    @Test
+    void transientFailuresAreRetriedByTheWorker() throws Exception {
+        Path input = writeInput();
+        Path output = directory.resolve("output.jsonl");
+        AtomicInteger throttledCalls = new AtomicInteger();
+
+        BulkPipeline.Summary summary = pipeline(text -> {
+            if ("record-55".equals(text) && throttledCalls.incrementAndGet() <= 2) {
+                throw throttling();
+            }
+            return text.toUpperCase(Locale.ROOT);
+        }).run(input, output);
+
+        assertEquals(1, summary.failures());
+        assertEquals(1, readOutput(output).stream()
+                .filter(record -> "RECORD-55".equals(record.path("output").asText()))
+                .count());
+    }
+
+    private static AwsServiceException throttling() {
+        return AwsServiceException.builder().statusCode(429).message("Rate exceeded").build();
+    }
+
+    private static BulkPipeline pipeline(BulkPipeline.Invoker invoker) {
+        return BulkPipeline.builder(invoker)
+                .parallelism(4)
+                .maxInFlight(8)
+                .checkpointEveryRecords(5)
+                .maxRetries(2)
+                .retryBaseDelay(Duration.ofMillis(1))
+                .build();
+    }
+
+    /**
+     * Every tenth line is blank and one line is not JSON.
+     */
+    private Path writeInput() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int line = 1; line <= LINES; line++) {
+            if (line % 10 == 0) {
+                input.append('\n');
+            } else if (line == INVALID_LINE) {
+                input.append("not json\n");
+            } else {
+                input.append("{\"input\":\"record-").append(line).append("\"}\n");
+            }
+        }
+        return Files.write(directory.resolve("input.jsonl"), input.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<JsonNode> readOutput(Path output) throws IOException {
+        List<JsonNode> records = new ArrayList<>();
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            records.add(OBJECT_MAPPER.readTree(line));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,141 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeClient;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the SDK clients add on top of the network, against a {@link StubRuntimeServer}
+ * that answers immediately. Each HTTP client is measured with and without the admission
+ * controller; throughput and the p50/p99 of the sampled latencies are reported per configuration.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.example.ClientOverheadBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ClientOverheadBenchmark {
+
+    @Param({"apache", "crt"})
+    public String httpClient;
+
+    @Param({"true", "false"})
+    public boolean admission;
+
+    private StubRuntimeServer server;
+    private ClientProvider clientProvider;
+    private SageMakerRuntimeClient sageMakerRuntimeClient;
+    private SageMakerRuntimeAsyncClient sageMakerRuntimeAsyncClient;
+    private AdmissionController asyncAdmissionController;
+    private BedrockRuntimeClient bedrockRuntimeClient;
+    private InvokeEndpointRequest invokeEndpointRequest;
+    private Message converseMessage;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = StubRuntimeServer.builder()
+                .latency(Duration.ZERO)
+                .chunkCount(1)
+                .chunkInterval(Duration.ZERO)
+                .start();
+        clientProvider = new ClientProvider(ClientConfig.of(stubProperties(server, httpClient, admission)));
+        sageMakerRuntimeClient = clientProvider.sageMakerRuntimeClient();
+        sageMakerRuntimeAsyncClient = clientProvider.sageMakerRuntimeAsyncClient();
+        asyncAdmissionController = clientProvider.asyncAdmissionController();
+        bedrockRuntimeClient = clientProvider.bedrockRuntimeClient();
+        invokeEndpointRequest = InvokeEndpointRequest.builder()
+                .endpointName("benchmark-endpoint")
+                .contentType("application/json")
+                .body(SdkBytes.fromUtf8String("{\"inputs\":\"What is the capital of France?\"}"))
+                .build();
+        converseMessage = Message.builder()
+                .role(ConversationRole.USER)
+                .content(ContentBlock.fromText("What is the capital of France?"))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        clientProvider.close();
+        server.close();
+    }
+
+    @Benchmark
+    public InvokeEndpointResponse invokeEndpoint() {
+        return sageMakerRuntimeClient.invokeEndpoint(invokeEndpointRequest);
+    }
+
+    @Benchmark
+    public InvokeEndpointResponse invokeEndpointAsync() {
+        if (asyncAdmissionController == null) {
+            return sageMakerRuntimeAsyncClient.invokeEndpoint(invokeEndpointRequest).join();
+        }
+        return asyncAdmissionController.admitAsync(invokeEndpointRequest,
+                () -> sageMakerRuntimeAsyncClient.invokeEndpoint(invokeEndpointRequest)).join();
+    }
+
+    @Benchmark
+    public ConverseResponse converse() {
+        return bedrockRuntimeClient.converse(request -> request.modelId("benchmark-model").messages(converseMessage));
+    }
+
+    /**
+     * @return the configuration of a client provider that calls {@code server} with dummy credentials
+     */
+    static Properties stubProperties(StubRuntimeServer server, String httpClient, boolean admission) {
+        Properties properties = new Properties();
+        properties.setProperty("aws.accessKeyId", "stub");
+        properties.setProperty("aws.secretAccessKey", "stub");
+        properties.setProperty("aws.region", "us-east-1");
+        properties.setProperty("aws.endpointOverride", server.endpoint().toString());
+        properties.setProperty("http.client", httpClient);
+        properties.setProperty("http.maxConnections", "64");
+        properties.setProperty("sagemaker.async.maxConcurrency", "64");
+        properties.setProperty("metrics.jmx", "false");
+        properties.setProperty("throttle.enabled", Boolean.toString(admission));
+        properties.setProperty("throttle.maxConcurrency", "1024");
+        return properties;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ClientOverheadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,97 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a batch of embeddings from the usual JSON array of arrays with decoding the
+ * same batch sent as raw float32 values through {@link Float32Embeddings}. Run with the GC
+ * profiler's {@code gc.alloc.rate.norm} in mind: it is the garbage per decoded batch.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.example.EmbeddingDecodeBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingDecodeBenchmark {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Param({"32"})
+    public int batchSize;
+
+    @Param({"1024"})
+    public int dimension;
+
+    private byte[] json;
+    private ByteBuffer float32;
+    private float[] reused;
+
+    @Setup
+    public void prepare() throws IOException {
+        Random random = new Random(42);
+        float[][] batch = new float[batchSize][dimension];
+        float32 = ByteBuffer.allocate(batchSize * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float[] vector : batch) {
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = random.nextFloat() * 2 - 1;
+                float32.putFloat(vector[i]);
+            }
+        }
+        float32.flip();
+        json = OBJECT_MAPPER.writeValueAsBytes(batch);
+        reused = new float[batchSize * dimension];
+    }
+
+    @Benchmark
+    public float[][] json() throws IOException {
+        return OBJECT_MAPPER.readValue(json, float[][].class);
+    }
+
+    @Benchmark
+    public float[] float32Array() {
+        return Float32Embeddings.toArray(float32);
+    }
+
+    @Benchmark
+    public float[] float32Reused() {
+        Float32Embeddings.decodeInto(float32, ByteOrder.LITTLE_ENDIAN, reused, 0);
+        return reused;
+    }
+
+    @Benchmark
+    public FloatBuffer float32View() {
+        return Float32Embeddings.view(float32, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingDecodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
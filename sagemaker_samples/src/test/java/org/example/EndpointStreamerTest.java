@@ -0,0 +1,94 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Streams from a {@link StubRuntimeServer}, whose event-stream frames carry payload parts cut in
+ * the middle of the JSON lines, through the real async client.
+ */
+public class EndpointStreamerTest {
+    private static final int CHUNKS = 25;
+
+    private static StubRuntimeServer server;
+    private static ClientProvider clientProvider;
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = StubRuntimeServer.builder()
+                .latency(Duration.ZERO)
+                .chunkCount(CHUNKS)
+                .chunkInterval(Duration.ZERO)
+                .start();
+        clientProvider = new ClientProvider(
+                ClientConfig.of(ClientOverheadBenchmark.stubProperties(server, "apache", false)));
+    }
+
+    @AfterAll
+    static void stop() {
+        clientProvider.close();
+        server.close();
+    }
+
+    @Test
+    void streamReassemblesTokensCutAcrossPayloadParts() throws Exception {
+        List<String> tokens = Collections.synchronizedList(new ArrayList<>());
+
+        String text = clientProvider.endpointStreamer()
+                .stream("stub-endpoint", "hello", tokens::add)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(StubRuntimeServer.text(CHUNKS), text);
+        assertEquals(CHUNKS, tokens.size());
+        assertEquals(" The", tokens.get(0));
+        assertEquals(text, String.join("", tokens));
+    }
+
+    @Test
+    void publishDeliversEveryTokenOnDemand() throws Exception {
+        CompletableFuture<List<String>> done = new CompletableFuture<>();
+        clientProvider.endpointStreamer().publish("stub-endpoint", "hello").subscribe(new Flow.Subscriber<String>() {
+            private final List<String> tokens = new ArrayList<>();
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(String token) {
+                tokens.add(token);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(tokens);
+            }
+        });
+
+        List<String> tokens = done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(CHUNKS, tokens.size());
+        assertEquals(StubRuntimeServer.text(CHUNKS), String.join("", tokens));
+    }
+}
@@ -0,0 +1,173 @@
+package org.example;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeAsyncClient;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeClient;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link StubRuntimeServer} with a fixed number of concurrent callers, once per client
+ * configuration, and prints throughput and latency percentiles for each. Unlike
+ * {@link ClientOverheadBenchmark} the stub can be slow and can throttle, so the numbers include
+ * retries and admission control.
+ * <p>
+ * Arguments are {@code key=value} pairs, all optional:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="org.example.LoadGenerator" \
+ *     -Dexec.args="operation=converse clients=apache,crt concurrency=64 seconds=30 latencyMillis=200 maxConcurrent=32"
+ * </pre>
+ * {@code operation} is {@code invokeEndpoint}, {@code invokeEndpointAsync}, {@code invokeEndpointStream}
+ * or {@code converse}.
+ * Each entry of {@code clients} is an HTTP client, optionally suffixed with {@code +noadmission}.
+ */
+public class LoadGenerator {
+
+    public static void main(String... args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String operation = options.getOrDefault("operation", "invokeEndpoint");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmupSeconds", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("seconds", "20")));
+
+        System.out.printf("%-24s %10s %8s %10s %9s %9s %9s %9s%n",
+                "configuration", "ok/s", "failed", "throttled", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (String configuration : options.getOrDefault("clients", "apache,crt").split(",")) {
+            try (StubRuntimeServer server = StubRuntimeServer.builder()
+                    .latency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latencyMillis", "20"))))
+                    .chunkCount(Integer.parseInt(options.getOrDefault("chunks", "20")))
+                    .chunkInterval(Duration.ofMillis(Long.parseLong(options.getOrDefault("chunkIntervalMillis", "5"))))
+                    .throttleRate(Double.parseDouble(options.getOrDefault("throttleRate", "0")))
+                    .maxConcurrentRequests(Integer.parseInt(options.getOrDefault("maxConcurrent", "0")))
+                    .start()) {
+                String httpClient = configuration.replace("+noadmission", "");
+                boolean admission = !configuration.endsWith("+noadmission");
+                ClientProvider clientProvider = new ClientProvider(ClientConfig.of(
+                        ClientOverheadBenchmark.stubProperties(server, httpClient, admission)));
+                try {
+                    Runnable call = call(clientProvider, operation);
+                    run(call, concurrency, warmup);
+                    long throttledBefore = server.throttled();
+                    Result result = run(call, concurrency, duration);
+                    Histogram histogram = result.latencies;
+                    System.out.printf("%-24s %10.1f %8d %10d %9.1f %9.1f %9.1f %9.1f%n",
+                            configuration,
+                            histogram.getTotalCount() / (double) duration.getSeconds(),
+                            result.failures,
+                            server.throttled() - throttledBefore,
+                            histogram.getValueAtPercentile(50) / 1000.0,
+                            histogram.getValueAtPercentile(90) / 1000.0,
+                            histogram.getValueAtPercentile(99) / 1000.0,
+                            histogram.getMaxValue() / 1000.0);
+                } finally {
+                    clientProvider.close();
+                }
+            }
+        }
+    }
+
+    private static Runnable call(ClientProvider clientProvider, String operation) {
+        switch (operation) {
+            case "invokeEndpoint": {
+                SageMakerRuntimeClient client = clientProvider.sageMakerRuntimeClient();
+                InvokeEndpointRequest request = invokeEndpointRequest();
+                return () -> client.invokeEndpoint(request);
+            }
+            case "invokeEndpointAsync": {
+                SageMakerRuntimeAsyncClient client = clientProvider.sageMakerRuntimeAsyncClient();
+                AdmissionController admissionController = clientProvider.asyncAdmissionController();
+                InvokeEndpointRequest request = invokeEndpointRequest();
+                if (admissionController == null) {
+                    return () -> client.invokeEndpoint(request).join();
+                }
+                return () -> admissionController.admitAsync(request, () -> client.invokeEndpoint(request)).join();
+            }
+            case "invokeEndpointStream": {
+                EndpointStreamer streamer = clientProvider.endpointStreamer();
+                return () -> streamer.stream("load-test-endpoint", "What is the capital of France?", token -> { })
+                        .join();
+            }
+            case "converse": {
+                BedrockRuntimeClient client = clientProvider.bedrockRuntimeClient();
+                Message message = Message.builder()
+                        .role(ConversationRole.USER)
+                        .content(ContentBlock.fromText("What is the capital of France?"))
+                        .build();
+                return () -> client.converse(request -> request.modelId("load-test-model").messages(message));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private static InvokeEndpointRequest invokeEndpointRequest() {
+        return InvokeEndpointRequest.builder()
+                .endpointName("load-test-endpoint")
+                .contentType("application/json")
+                .body(SdkBytes.fromUtf8String("{\"inputs\":\"What is the capital of France?\"}"))
+                .build();
+    }
+
+    /**
+     * Calls {@code call} from {@code concurrency} threads until {@code duration} has passed.
+     * Only successful calls are recorded in the latency histogram.
+     */
+    private static Result run(Runnable call, int concurrency, Duration duration) throws InterruptedException {
+        Recorder recorder = new Recorder(3);
+        AtomicLong failures = new AtomicLong();
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService callers = Executors.newFixedThreadPool(concurrency);
+        List<Runnable> loops = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            loops.add(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        call.run();
+                        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    } catch (CompletionException | SdkException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        loops.forEach(callers::execute);
+        callers.shutdown();
+        callers.awaitTermination(duration.getSeconds() + 60, TimeUnit.SECONDS);
+        return new Result(recorder.getIntervalHistogram(), failures.get());
+    }
+
+    private static final class Result {
+        private final Histogram latencies;
+        private final long failures;
+
+        Result(Histogram latencies, long failures) {
+            this.latencies = latencies;
+            this.failures = failures;
+        }
+    }
+}
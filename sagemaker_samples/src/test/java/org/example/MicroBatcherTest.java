@@ -0,0 +1,112 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends batches to a {@link StubRuntimeServer}, which echoes the request body, so every input
+ * must come back as its own output.
+ */
+public class MicroBatcherTest {
+    private static StubRuntimeServer server;
+    private static ClientProvider clientProvider;
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = StubRuntimeServer.builder()
+                .latency(Duration.ZERO)
+                .chunkCount(1)
+                .chunkInterval(Duration.ZERO)
+                .start();
+        clientProvider = new ClientProvider(
+                ClientConfig.of(ClientOverheadBenchmark.stubProperties(server, "apache", false)));
+    }
+
+    @AfterAll
+    static void stop() {
+        clientProvider.close();
+        server.close();
+    }
+
+    @Test
+    void fullBatchIsSentAsOneRequestAndSplitPerInput() throws Exception {
+        List<String> inputs = Arrays.asList("plain", "with \"quotes\"", "多字节 ✓", "");
+        MicroBatcher batcher = new MicroBatcher(clientProvider.sageMakerRuntimeAsyncClient(), null,
+                "stub-endpoint", BatchCodec.jsonArray(), inputs.size(), Duration.ofMinutes(1),
+                Duration.ofSeconds(10), MetricsSink.NONE);
+        long requestsBefore = server.requests();
+
+        List<CompletableFuture<String>> outputs = new ArrayList<>();
+        for (String input : inputs) {
+            outputs.add(batcher.submit(input));
+        }
+
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(inputs.get(i), outputs.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, server.requests() - requestsBefore);
+        batcher.close();
+    }
+
+    @Test
+    void partialBatchIsSentAfterMaxDelay() throws Exception {
+        MicroBatcher batcher = new MicroBatcher(clientProvider.sageMakerRuntimeAsyncClient(), null,
+                "stub-endpoint", BatchCodec.jsonArray(), 32, Duration.ofMillis(10),
+                Duration.ofSeconds(10), MetricsSink.NONE);
+
+        CompletableFuture<String> first = batcher.submit("first");
+        CompletableFuture<String> second = batcher.submit("second");
+
+        assertEquals("first", first.get(10, TimeUnit.SECONDS));
+        assertEquals("second", second.get(10, TimeUnit.SECONDS));
+        batcher.close();
+    }
+
+    @Test
+    void batchThatOutlivesTheRequestTimeoutFails() throws Exception {
+        try (StubRuntimeServer slowServer = StubRuntimeServer.builder().latency(Duration.ofSeconds(10)).start();
+             ClientProvider slowProvider = new ClientProvider(
+                     ClientConfig.of(ClientOverheadBenchmark.stubProperties(slowServer, "apache", false)))) {
+            MicroBatcher batcher = new MicroBatcher(slowProvider.sageMakerRuntimeAsyncClient(), null,
+                    "stub-endpoint", BatchCodec.jsonArray(), 1, Duration.ofMillis(10),
+                    Duration.ofMillis(200), MetricsSink.NONE);
+
+            ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> batcher.submit("slow").get(5, TimeUnit.SECONDS));
+
+            assertTrue(failure.getCause() instanceof ApiCallTimeoutException, failure.toString());
+            batcher.close();
+        }
+    }
+
+    @Test
+    void jsonArrayDecodeRejectsAResponseOfTheWrongLength() {
+        SdkBytes response = SdkBytes.fromUtf8String("[\"a\",\"b\"]");
+
+        assertThrows(IllegalArgumentException.class, () -> BatchCodec.jsonArray().decode(response, 3));
+    }
+
+    @Test
+    void jsonArrayDecodeReturnsNonStringOutputsAsJson() {
+        SdkBytes response = SdkBytes.fromUtf8String("[\"text\",{\"score\":0.5},[1,2]]");
+
+        assertEquals(Arrays.asList("text", "{\"score\":0.5}", "[1,2]"),
+                BatchCodec.jsonArray().decode(response, 3));
+    }
+}
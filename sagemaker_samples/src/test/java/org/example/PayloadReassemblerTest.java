@@ -0,0 +1,74 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Feeds each stream in three parts, cut at every pair of byte offsets, so every character and
+ * every line is split at every position at least once.
+ */
+public class PayloadReassemblerTest {
+    // Two-, three- and four-byte characters next to ASCII
+    private static final String TEXT = "héllo ✓ 世界 🙂!";
+    private static final String JSON_LINES = "data: {\"token\":{\"text\":\"héllo\"}}\n"
+            + "\n"
+            + ":keep-alive\n"
+            + "data:{\"token\":{\"text\":\" 世界\"}}\r\n"
+            + "{\"outputs\":[\"🙂\"]}\n"
+            + "data: {\"generated_text\":\"héllo 世界🙂\",\"details\":null}\n"
+            + "{\"token\":{\"text\":\" ✓\"}}";
+
+    @Test
+    void textSurvivesEverySplit() {
+        byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+        for (int first = 0; first <= bytes.length; first++) {
+            for (int second = first; second <= bytes.length; second++) {
+                List<String> tokens = feed(PayloadReassembler.Format.TEXT, bytes, first, second);
+
+                String split = " split at " + first + " and " + second;
+                assertEquals(TEXT, String.join("", tokens), "text" + split);
+                for (String token : tokens) {
+                    assertEquals(-1, token.indexOf('�'), "replacement character" + split);
+                }
+            }
+        }
+    }
+
+    @Test
+    void jsonLinesSurviveEverySplit() {
+        byte[] bytes = JSON_LINES.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = Arrays.asList("héllo", " 世界", "🙂", " ✓");
+        for (int first = 0; first <= bytes.length; first++) {
+            for (int second = first; second <= bytes.length; second++) {
+                assertEquals(expected, feed(PayloadReassembler.Format.JSON_LINES, bytes, first, second),
+                        "tokens split at " + first + " and " + second);
+            }
+        }
+    }
+
+    @Test
+    void invalidJsonLineIsRejected() {
+        PayloadReassembler reassembler = new PayloadReassembler(PayloadReassembler.Format.JSON_LINES);
+        ByteBuffer part = ByteBuffer.wrap("data: {\"token\":\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, () -> reassembler.feed(part, token -> { }));
+    }
+
+    private static List<String> feed(PayloadReassembler.Format format, byte[] bytes, int first, int second) {
+        PayloadReassembler reassembler = new PayloadReassembler(format);
+        List<String> tokens = new ArrayList<>();
+        reassembler.feed(ByteBuffer.wrap(bytes, 0, first), tokens::add);
+        reassembler.feed(ByteBuffer.wrap(bytes, first, second - first), tokens::add);
+        reassembler.feed(ByteBuffer.wrap(bytes, second, bytes.length - second), tokens::add);
+        reassembler.finish(tokens::add);
+        return tokens;
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to the first successful invocation in a fresh JVM, against a
+ * {@link StubRuntimeServer}, with and without {@link WarmUp} having run at startup. Every fork is
+ * one cold start and is measured once; the warm-up itself happens in the setup and is not counted,
+ * its duration is logged by {@link WarmUp#run()}.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.example.StartupBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    @Param({"none", "warmUp"})
+    public String startup;
+
+    @Param({"apache", "crt"})
+    public String httpClient;
+
+    private StubRuntimeServer server;
+    private ClientProvider clientProvider;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = StubRuntimeServer.builder()
+                .latency(Duration.ZERO)
+                .chunkCount(1)
+                .chunkInterval(Duration.ZERO)
+                .start();
+        Properties properties = ClientOverheadBenchmark.stubProperties(server, httpClient, true);
+        // The stub only serves the runtime APIs.
+        properties.setProperty("startup.clients", "runtime,async");
+        properties.setProperty("startup.endpointName", "warm-up");
+        properties.setProperty("startup.checkpointHooks", "false");
+        clientProvider = new ClientProvider(ClientConfig.of(properties));
+        if ("warmUp".equals(startup)) {
+            clientProvider.warmUp().run();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        clientProvider.close();
+        server.close();
+    }
+
+    @Benchmark
+    public InvokeEndpointResponse firstInvocation() {
+        return clientProvider.sageMakerRuntimeClient().invokeEndpoint(InvokeEndpointRequest.builder()
+                .endpointName("benchmark-endpoint")
+                .contentType("text/plain")
+                .body(SdkBytes.fromString("What is the capital of France?", StandardCharsets.UTF_8))
+                .build());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StartupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,421 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An in-process HTTP server that answers the runtime operations used by the samples, so client
+ * overhead can be measured without calling AWS. Point a client at {@link #endpoint()} with
+ * {@code endpointOverride}; any credentials and region are accepted.
+ * <p>
+ * Supported operations and their wire formats:
+ * <ul>
+ *     <li>SageMaker {@code InvokeEndpoint}: echoes the request body.</li>
+ *     <li>SageMaker {@code InvokeEndpointWithResponseStream}: {@code chunkCount} TGI-style JSON lines
+ *     ({@code {"token":{"text":...}}}) in {@code PayloadPart} events that are cut in the middle of
+ *     the lines, as containers flush them.</li>
+ *     <li>Bedrock {@code Converse}: a JSON message made of {@code chunkCount} words.</li>
+ *     <li>Bedrock {@code ConverseStream} and {@code InvokeModelWithResponseStream}: the same words
+ *     as {@code application/vnd.amazon.eventstream} frames, one every {@code chunkInterval}.
+ *     InvokeModelWithResponseStream wraps Nova messages-v1 chunks in base64 {@code bytes} payloads.</li>
+ * </ul>
+ * Every response waits {@code latency} before its first byte. Non-streaming responses also wait
+ * for the chunks they would have streamed. A request is answered with HTTP 429
+ * {@code ThrottlingException} when more than {@code maxConcurrentRequests} are in progress, or
+ * at random with probability {@code throttleRate}.
+ */
+public final class StubRuntimeServer implements AutoCloseable {
+    private static final String EVENT_STREAM = "application/vnd.amazon.eventstream";
+    private static final String[] WORDS = {
+            " The", " quick", " brown", " fox", " jumps", " over", " the", " lazy", " dog", "."
+    };
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration latency;
+    private final int chunkCount;
+    private final Duration chunkInterval;
+    private final double throttleRate;
+    private final int maxConcurrentRequests;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private StubRuntimeServer(Builder builder) throws IOException {
+        this.latency = builder.latency;
+        this.chunkCount = Math.max(1, builder.chunkCount);
+        this.chunkInterval = builder.chunkInterval;
+        this.throttleRate = builder.throttleRate;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+
+        // Every exchange sleeps through its latency, so each gets a virtual thread.
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stub-runtime-", 1).factory());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the base URI to pass to {@code endpointOverride}
+     */
+    public URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    /** @return requests received so far, including throttled ones */
+    public long requests() {
+        return requests.get();
+    }
+
+    /** @return requests answered with a ThrottlingException so far */
+    public long throttled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the text of a response with {@code chunkCount} chunks, as the client should see it
+     */
+    static String text(int chunkCount) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < chunkCount; i++) {
+            text.append(word(i));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int concurrent = inFlight.incrementAndGet();
+        try {
+            byte[] body = readFully(exchange.getRequestBody());
+            if ((maxConcurrentRequests > 0 && concurrent > maxConcurrentRequests)
+                    || (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate)) {
+                throttled.incrementAndGet();
+                sendError(exchange, 429, "ThrottlingException", "Rate exceeded");
+                return;
+            }
+
+            String[] path = exchange.getRequestURI().getRawPath().split("/");
+            if (path.length == 4 && "endpoints".equals(path[1]) && "invocations".equals(path[3])) {
+                invokeEndpoint(exchange, body);
+            } else if (path.length == 4 && "endpoints".equals(path[1])
+                    && "invocations-response-stream".equals(path[3])) {
+                invokeEndpointWithResponseStream(exchange);
+            } else if (path.length == 4 && "model".equals(path[1]) && "converse".equals(path[3])) {
+                converse(exchange);
+            } else if (path.length == 4 && "model".equals(path[1]) && "converse-stream".equals(path[3])) {
+                converseStream(exchange);
+            } else if (path.length == 4 && "model".equals(path[1]) && "invoke-with-response-stream".equals(path[3])) {
+                invokeModelWithResponseStream(exchange, decode(path[2]));
+            } else {
+                sendError(exchange, 404, "UnknownOperationException", "No stub for " + exchange.getRequestURI());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void invokeEndpoint(HttpExchange exchange, byte[] body) throws IOException, InterruptedException {
+        sleep(latency.plus(chunkInterval.multipliedBy(chunkCount - 1)));
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        exchange.getResponseHeaders().set("Content-Type", contentType != null ? contentType : "application/json");
+        exchange.getResponseHeaders().set("x-Amzn-Invoked-Production-Variant", "AllTraffic");
+        send(exchange, 200, body);
+    }
+
+    private void invokeEndpointWithResponseStream(HttpExchange exchange) throws IOException, InterruptedException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (int i = 0; i < chunkCount; i++) {
+            byte[] line = ("{\"token\":{\"text\":" + quote(word(i)) + "}}\n").getBytes(StandardCharsets.UTF_8);
+            lines.write(line, 0, line.length);
+        }
+        byte[] bytes = lines.toByteArray();
+        // An empty part first, like the other streams' start frame, then one part per token, each
+        // cut halfway through a line.
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(event("PayloadPart", "application/octet-stream", new byte[0]));
+        int start = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            int end = i == chunkCount - 1 ? bytes.length : bytes.length * (2 * i + 1) / (2 * chunkCount);
+            byte[] part = new byte[end - start];
+            System.arraycopy(bytes, start, part, 0, part.length);
+            frames.add(event("PayloadPart", "application/octet-stream", part));
+            start = end;
+        }
+        exchange.getResponseHeaders().set("X-Amzn-Invoked-Production-Variant", "AllTraffic");
+        stream(exchange, frames);
+    }
+
+    private void converse(HttpExchange exchange) throws IOException, InterruptedException {
+        sleep(latency.plus(chunkInterval.multipliedBy(chunkCount - 1)));
+        String json = "{\"output\":{\"message\":{\"role\":\"assistant\",\"content\":[{\"text\":" + quote(text(chunkCount))
+                + "}]}},\"stopReason\":\"end_turn\",\"usage\":" + usage()
+                + ",\"metrics\":{\"latencyMs\":" + serverLatencyMillis() + "}}";
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void converseStream(HttpExchange exchange) throws IOException, InterruptedException {
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(event("messageStart", "{\"role\":\"assistant\"}"));
+        for (int i = 0; i < chunkCount; i++) {
+            frames.add(event("contentBlockDelta",
+                    "{\"contentBlockIndex\":0,\"delta\":{\"text\":" + quote(word(i)) + "}}"));
+        }
+        frames.add(event("contentBlockStop", "{\"contentBlockIndex\":0}"));
+        frames.add(event("messageStop", "{\"stopReason\":\"end_turn\"}"));
+        frames.add(event("metadata", "{\"usage\":" + usage() + ",\"metrics\":{\"latencyMs\":" + serverLatencyMillis() + "}}"));
+        stream(exchange, frames);
+    }
+
+    private void invokeModelWithResponseStream(HttpExchange exchange, String modelId)
+            throws IOException, InterruptedException {
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(chunk("{\"messageStart\":{\"role\":\"assistant\"}}"));
+        for (int i = 0; i < chunkCount; i++) {
+            frames.add(chunk("{\"contentBlockDelta\":{\"delta\":{\"text\":" + quote(word(i)) + "},\"contentBlockIndex\":0}}"));
+        }
+        frames.add(chunk("{\"contentBlockStop\":{\"contentBlockIndex\":0}}"));
+        frames.add(chunk("{\"messageStop\":{\"stopReason\":\"end_turn\"}}"));
+        frames.add(chunk("{\"metadata\":{\"usage\":{\"inputTokens\":10,\"outputTokens\":" + chunkCount + "}},"
+                + "\"amazon-bedrock-invocationMetrics\":{\"inputTokenCount\":10,\"outputTokenCount\":" + chunkCount
+                + ",\"invocationLatency\":" + serverLatencyMillis()
+                + ",\"firstByteLatency\":" + latency.toMillis() + "}}"));
+        exchange.getResponseHeaders().set("X-Amzn-Bedrock-Content-Type", "application/json");
+        exchange.getResponseHeaders().set("X-Amzn-Bedrock-Model-Id", modelId);
+        stream(exchange, frames);
+    }
+
+    /**
+     * Sends the first frame after {@code latency} and each further frame after {@code chunkInterval},
+     * flushing every frame so the client sees the cadence.
+     */
+    private void stream(HttpExchange exchange, List<byte[]> frames) throws IOException, InterruptedException {
+        sleep(latency);
+        exchange.getResponseHeaders().set("Content-Type", EVENT_STREAM);
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream output = exchange.getResponseBody();
+        for (int i = 0; i < frames.size(); i++) {
+            // Only the text frames are paced; the frames around them follow immediately.
+            if (i > 1 && i <= chunkCount) {
+                sleep(chunkInterval);
+            }
+            output.write(frames.get(i));
+            output.flush();
+        }
+        output.close();
+    }
+
+    private String usage() {
+        return "{\"inputTokens\":10,\"outputTokens\":" + chunkCount + ",\"totalTokens\":" + (10 + chunkCount) + "}";
+    }
+
+    private long serverLatencyMillis() {
+        return latency.plus(chunkInterval.multipliedBy(chunkCount - 1)).toMillis();
+    }
+
+    private static byte[] chunk(String novaChunk) {
+        String bytes = Base64.getEncoder().encodeToString(novaChunk.getBytes(StandardCharsets.UTF_8));
+        return event("chunk", "{\"bytes\":\"" + bytes + "\"}");
+    }
+
+    /**
+     * Encodes one event-stream message: a prelude with the total and header lengths and its CRC32,
+     * the string headers, the payload, and a CRC32 of everything before it.
+     */
+    static byte[] event(String eventType, String payload) {
+        return event(eventType, "application/json", payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] event(String eventType, String contentType, byte[] payloadBytes) {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        header(headers, ":event-type", eventType);
+        header(headers, ":content-type", contentType);
+        header(headers, ":message-type", "event");
+        byte[] headerBytes = headers.toByteArray();
+
+        int totalLength = 12 + headerBytes.length + payloadBytes.length + 4;
+        ByteBuffer frame = ByteBuffer.allocate(totalLength);
+        frame.putInt(totalLength).putInt(headerBytes.length);
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, 8);
+        frame.putInt((int) crc.getValue());
+        frame.put(headerBytes).put(payloadBytes);
+        crc.reset();
+        crc.update(frame.array(), 0, totalLength - 4);
+        frame.putInt((int) crc.getValue());
+        return frame.array();
+    }
+
+    private static void header(ByteArrayOutputStream headers, String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        headers.write(nameBytes.length);
+        headers.write(nameBytes, 0, nameBytes.length);
+        // Header value type 7 is a string with a two-byte length.
+        headers.write(7);
+        headers.write(valueBytes.length >>> 8);
+        headers.write(valueBytes.length);
+        headers.write(valueBytes, 0, valueBytes.length);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String errorType, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("x-amzn-ErrorType", errorType);
+        send(exchange, status, ("{\"message\":" + quote(message) + "}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("x-amzn-RequestId", Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    private static String word(int index) {
+        return WORDS[index % WORDS.length];
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String decode(String pathSegment) {
+        try {
+            return URLDecoder.decode(pathSegment, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero()) {
+            TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+        }
+    }
+
+    public static final class Builder {
+        private int port;
+        private Duration latency = Duration.ofMillis(20);
+        private int chunkCount = 20;
+        private Duration chunkInterval = Duration.ofMillis(5);
+        private double throttleRate;
+        private int maxConcurrentRequests;
+
+        private Builder() {
+        }
+
+        /**
+         * Port to listen on; 0, the default, picks a free one.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Time before the first byte of every response.
+         */
+        public Builder latency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Number of text chunks, and output tokens, per response.
+         */
+        public Builder chunkCount(int chunkCount) {
+            this.chunkCount = chunkCount;
+            return this;
+        }
+
+        /**
+         * Time between two text chunks of a stream.
+         */
+        public Builder chunkInterval(Duration chunkInterval) {
+            this.chunkInterval = chunkInterval;
+            return this;
+        }
+
+        /**
+         * Fraction of requests answered with a ThrottlingException regardless of load.
+         */
+        public Builder throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        /**
+         * Requests in progress beyond which new requests are throttled; 0 means no limit.
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public StubRuntimeServer start() throws IOException {
+            return new StubRuntimeServer(this);
+        }
+    }
+}
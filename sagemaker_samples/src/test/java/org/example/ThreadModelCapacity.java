@@ -0,0 +1,131 @@
+package org.example;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sagemakerruntime.SageMakerRuntimeClient;
+import software.amazon.awssdk.services.sagemakerruntime.model.InvokeEndpointRequest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares how many blocking InvokeEndpoint calls one JVM sustains with a fixed pool of platform
+ * threads, the thread-per-request model, and with a virtual thread per call, as
+ * {@link AsyncHandler} does. A {@link StubRuntimeServer} holds every call for {@code latencyMillis},
+ * standing in for model latency, and each concurrency level keeps that many calls outstanding.
+ * <p>
+ * With a pool, throughput stops growing at {@code platformThreads / latency} and the rest of the
+ * calls queue, which shows up as p99 latency. With virtual threads throughput keeps growing with
+ * concurrency while the number of platform threads stays flat.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="org.example.ThreadModelCapacity" \
+ *     -Dexec.args="concurrency=100,1000,5000 latencyMillis=1000 platformThreads=200 httpClient=urlconnection"
+ * </pre>
+ */
+public class ThreadModelCapacity {
+
+    public static void main(String... args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String httpClient = options.getOrDefault("httpClient", "urlconnection");
+        int platformThreads = Integer.parseInt(options.getOrDefault("platformThreads", "200"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("seconds", "20")));
+        // HttpURLConnection keeps only this many idle connections per host for reuse.
+        System.setProperty("http.maxConnections", options.getOrDefault("keepAliveConnections", "10000"));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.printf("%-10s %11s %10s %9s %9s %9s %15s%n",
+                "threads", "concurrency", "calls/s", "failed", "p50 ms", "p99 ms", "platform peak");
+        try (StubRuntimeServer server = StubRuntimeServer.builder()
+                .latency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latencyMillis", "1000"))))
+                .chunkCount(1)
+                .start()) {
+            for (String level : options.getOrDefault("concurrency", "100,1000,5000").split(",")) {
+                int concurrency = Integer.parseInt(level);
+                for (String mode : new String[]{"platform", "virtual"}) {
+                    Properties properties = ClientOverheadBenchmark.stubProperties(server, httpClient, false);
+                    properties.setProperty("http.maxConnections", Integer.toString(concurrency));
+                    properties.setProperty("execution.threads", mode);
+                    properties.setProperty("execution.platformThreads", Integer.toString(platformThreads));
+                    ClientProvider clientProvider = new ClientProvider(ClientConfig.of(properties));
+                    try {
+                        threads.resetPeakThreadCount();
+                        Result result = run(clientProvider.sageMakerRuntimeClient(), clientProvider.handlerExecutor(),
+                                concurrency, duration);
+                        Histogram latencies = result.latencies;
+                        System.out.printf("%-10s %11d %10.1f %9d %9.1f %9.1f %15d%n",
+                                mode, concurrency,
+                                latencies.getTotalCount() / (double) duration.getSeconds(),
+                                result.failures,
+                                latencies.getValueAtPercentile(50) / 1000.0,
+                                latencies.getValueAtPercentile(99) / 1000.0,
+                                threads.getPeakThreadCount());
+                    } finally {
+                        clientProvider.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps {@code concurrency} calls submitted to {@code executor} until {@code duration} has
+     * passed. Latency is measured from submission, so time spent queued for a pool thread counts;
+     * calls that finish after the deadline are not recorded.
+     */
+    private static Result run(SageMakerRuntimeClient client, ExecutorService executor, int concurrency,
+                              Duration duration) throws InterruptedException {
+        InvokeEndpointRequest request = InvokeEndpointRequest.builder()
+                .endpointName("capacity-endpoint")
+                .contentType("application/json")
+                .body(SdkBytes.fromUtf8String("{\"inputs\":\"What is the capital of France?\"}"))
+                .build();
+        Recorder recorder = new Recorder(3);
+        AtomicLong failures = new AtomicLong();
+        Semaphore outstanding = new Semaphore(concurrency);
+        long deadline = System.nanoTime() + duration.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!outstanding.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            CompletableFuture.supplyAsync(() -> client.invokeEndpoint(request), executor)
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            failures.incrementAndGet();
+                        } else if (System.nanoTime() <= deadline) {
+                            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        }
+                        outstanding.release();
+                    });
+        }
+        outstanding.acquire(concurrency);
+        return new Result(recorder.getIntervalHistogram(), failures.get());
+    }
+
+    private static final class Result {
+        private final Histogram latencies;
+        private final long failures;
+
+        Result(Histogram latencies, long failures) {
+            this.latencies = latencies;
+            this.failures = failures;
+        }
+    }
+}